@@ -2,6 +2,7 @@ plugins {
     alias(libs.plugins.android.application)
     alias(libs.plugins.kotlin.android)
     alias(libs.plugins.kotlin.compose)
+    alias(libs.plugins.androidx.baselineprofile)
 }
 
 android {
@@ -39,6 +40,13 @@ android {
     }
 }
 
+// Baseline Profile由benchmark模块的BaselineProfileGenerator生成：
+// ./gradlew :app:generateBaselineProfile，结果写入src/release/generated/baselineProfiles
+baselineProfile {
+    // 启动阶段收集到的规则同时用于dex布局（Startup Profile），启动时要读的类集中在主dex
+    dexLayoutOptimization = true
+}
+
 dependencies {
 
     implementation(libs.androidx.core.ktx)
@@ -51,7 +59,15 @@ dependencies {
     implementation(libs.androidx.material3)
     implementation(libs.okhttp)
     implementation("androidx.cardview:cardview:1.0.0")
+    implementation(libs.androidx.recyclerview)
+    // 非应用商店安装时也在首次启动后按Baseline Profile编译
+    implementation(libs.androidx.profileinstaller)
+    baselineProfile(project(":benchmark"))
     testImplementation(libs.junit)
+    // 单元测试在JVM上运行，android.jar里的org.json只有空实现
+    testImplementation(libs.json)
+    testImplementation(libs.mockwebserver)
+    testImplementation(libs.okhttp.tls)
     androidTestImplementation(libs.androidx.junit)
     androidTestImplementation(libs.androidx.espresso.core)
     androidTestImplementation(platform(libs.androidx.compose.bom))
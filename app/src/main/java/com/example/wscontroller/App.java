@@ -2,6 +2,10 @@ package com.example.wscontroller;
 
 import android.app.Application;
 import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
 
 public class App extends Application {
     private static Context context;
@@ -9,10 +13,25 @@ public class App extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
-        context = getApplicationContext();
+        // 关键阶段只保存Context，通知渠道在服务启动前台时创建，其余工作放到后台线程
+        StartupTracer.section("app.onCreate", () -> context = getApplicationContext());
+        new Thread(this::initDeferred, "startup-deferred").start();
+    }
+
+    // 非关键的初始化：打开磁盘日志、预先读取设备编号。
+    // 在这之前的日志只写logcat；界面或服务先用到设备编号时会等这里读完
+    private void initDeferred() {
+        StartupTracer.section("app.deferred", () -> {
+            try {
+                DiskLog.init(new File(getFilesDir(), "logs"));
+            } catch (IOException e) {
+                Log.e("App", "打开磁盘日志失败", e);
+            }
+            DeviceNumberManager.get(this).getDeviceNumber();
+        });
     }
 
     public static Context getContext() {
         return context;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,46 @@
+package com.example.wscontroller;
+
+import android.util.Log;
+
+// 同时写logcat和磁盘日志，磁盘日志未初始化时只写logcat
+public final class AppLog {
+    private AppLog() {
+    }
+
+    public static void d(String tag, String message) {
+        Log.d(tag, message);
+        persist('D', tag, message);
+    }
+
+    public static void d(String tag, String message, Throwable error) {
+        Log.d(tag, message, error);
+        persist('D', tag, message + ": " + error);
+    }
+
+    public static void i(String tag, String message) {
+        Log.i(tag, message);
+        persist('I', tag, message);
+    }
+
+    public static void w(String tag, String message) {
+        Log.w(tag, message);
+        persist('W', tag, message);
+    }
+
+    public static void e(String tag, String message) {
+        Log.e(tag, message);
+        persist('E', tag, message);
+    }
+
+    public static void e(String tag, String message, Throwable error) {
+        Log.e(tag, message, error);
+        persist('E', tag, message + ": " + error);
+    }
+
+    private static void persist(char level, String tag, String message) {
+        DiskLog diskLog = DiskLog.get();
+        if (diskLog != null) {
+            diskLog.append(System.currentTimeMillis(), level, tag, message);
+        }
+    }
+}
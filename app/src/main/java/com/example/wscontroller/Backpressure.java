@@ -0,0 +1,43 @@
+package com.example.wscontroller;
+
+// 发送队列背压控制
+// OkHttp的queueSize()是已经入队、还没写入网络的字节数，超过高水位后进入拥塞状态，
+// 降到低水位以下才恢复。拥塞期间心跳、状态这类可以重新生成的帧不再入队。
+class Backpressure {
+    static final long HIGH_WATERMARK = 64 * 1024;
+    static final long LOW_WATERMARK = 16 * 1024;
+
+    private final long highWatermark;
+    private final long lowWatermark;
+    private boolean saturated = false;
+
+    Backpressure() {
+        this(HIGH_WATERMARK, LOW_WATERMARK);
+    }
+
+    Backpressure(long highWatermark, long lowWatermark) {
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+    }
+
+    // 根据当前队列长度更新状态，返回是否拥塞
+    synchronized boolean update(long queued) {
+        if (saturated) {
+            if (queued <= lowWatermark) {
+                saturated = false;
+            }
+        } else if (queued >= highWatermark) {
+            saturated = true;
+        }
+        return saturated;
+    }
+
+    synchronized boolean isSaturated() {
+        return saturated;
+    }
+
+    // 新连接的队列是空的
+    synchronized void reset() {
+        saturated = false;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.wscontroller;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import okhttp3.Dns;
+
+// 带缓存的域名解析
+// 系统的DNS缓存按网络区分，飞行模式切换后新网络的缓存是空的，重连前要多一次解析；
+// 这里的缓存跨网络共享，并且在网络刚恢复、解析失败时使用过期的结果
+public class CachingDns implements Dns {
+    static final long DEFAULT_TTL_MS = 10 * 60 * 1000;
+
+    private static class Entry {
+        final List<InetAddress> addresses;
+        final long resolvedAt;
+
+        Entry(List<InetAddress> addresses, long resolvedAt) {
+            this.addresses = addresses;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+
+    private final Dns delegate;
+    private final ConcurrentHashMap<String, Entry> cache;
+    private final long ttlMs;
+    private final LongSupplier clock;
+
+    public CachingDns(Dns delegate) {
+        this(delegate, DEFAULT_TTL_MS, System::currentTimeMillis);
+    }
+
+    CachingDns(Dns delegate, long ttlMs, LongSupplier clock) {
+        this(delegate, new ConcurrentHashMap<>(), ttlMs, clock);
+    }
+
+    private CachingDns(Dns delegate, ConcurrentHashMap<String, Entry> cache, long ttlMs, LongSupplier clock) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.ttlMs = ttlMs;
+        this.clock = clock;
+    }
+
+    // 使用另一个解析器（如绑定到指定网络的解析器），共用同一份缓存
+    public CachingDns withDelegate(Dns delegate) {
+        return new CachingDns(delegate, cache, ttlMs, clock);
+    }
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        long now = clock.getAsLong();
+        Entry entry = cache.get(hostname);
+        if (entry != null && now - entry.resolvedAt < ttlMs) {
+            return entry.addresses;
+        }
+        try {
+            List<InetAddress> addresses = delegate.lookup(hostname);
+            cache.put(hostname, new Entry(addresses, now));
+            return addresses;
+        } catch (UnknownHostException e) {
+            if (entry != null) {
+                return entry.addresses;
+            }
+            throw e;
+        }
+    }
+
+    // 连接失败时清除缓存，下次重新解析
+    public void invalidate(String hostname) {
+        cache.remove(hostname);
+    }
+}
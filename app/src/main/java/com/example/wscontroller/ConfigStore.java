@@ -0,0 +1,227 @@
+package com.example.wscontroller;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// 进程内共用的配置文件，内容全部缓存在内存中。
+// 创建时在自己的后台线程上读取文件，读取完成前调用get会等待；put只修改内存，
+// 并在FLUSH_DELAY后把这段时间内的所有修改一次写入：先写临时文件并fsync，再改名覆盖正式文件。
+// 改名在同一目录内是原子的，进程在任何时刻被杀，正式文件要么是旧内容要么是新内容，不会只写了一半。
+// 不依赖Android，文件格式为java.util.Properties（UTF-8）。
+final class ConfigStore {
+    static final long FLUSH_DELAY = 200;
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File file;
+    private final File tmp;
+    private final long flushDelay;
+    private final ScheduledExecutorService io;
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final Map<String, String> values = new HashMap<>();
+    private boolean existed = false;
+    private ScheduledFuture<?> pendingFlush;
+    private int generation = 0; // 每次修改加一，写入时记录写到了哪一次
+    private int flushedGeneration = 0;
+    private int writes = 0;
+
+    ConfigStore(File file) {
+        this(file, FLUSH_DELAY);
+    }
+
+    ConfigStore(File file, long flushDelay) {
+        this.file = file;
+        this.tmp = new File(file.getPath() + TMP_SUFFIX);
+        this.flushDelay = flushDelay;
+        this.io = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "config-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        io.execute(this::load);
+    }
+
+    // 读取完成前返回false，调用方可以据此决定是否值得等待
+    boolean isLoaded() {
+        return loaded.getCount() == 0;
+    }
+
+    // 创建前文件是否已经存在，用于判断是否需要从旧的存储迁移；文件存在但无法解析也算存在，
+    // 否则损坏的配置会被旧位置里过时的值覆盖
+    boolean existed() {
+        awaitLoaded();
+        synchronized (this) {
+            return existed;
+        }
+    }
+
+    String get(String key, String defaultValue) {
+        awaitLoaded();
+        synchronized (this) {
+            String value = values.get(key);
+            return value != null ? value : defaultValue;
+        }
+    }
+
+    long getLong(String key, long defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    // 返回以prefix开头的所有项，键中去掉prefix
+    Map<String, String> getAll(String prefix) {
+        awaitLoaded();
+        Map<String, String> result = new HashMap<>();
+        synchronized (this) {
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                if (entry.getKey().startsWith(prefix)) {
+                    result.put(entry.getKey().substring(prefix.length()), entry.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    void put(String key, String value) {
+        Map<String, String> changes = new HashMap<>();
+        changes.put(key, value);
+        putAll(changes);
+    }
+
+    // 一组修改对读取方同时可见，也在同一次写入中落盘；值为null表示删除
+    void putAll(Map<String, String> changes) {
+        awaitLoaded();
+        synchronized (this) {
+            boolean changed = false;
+            for (Map.Entry<String, String> entry : changes.entrySet()) {
+                String previous = entry.getValue() != null
+                        ? values.put(entry.getKey(), entry.getValue())
+                        : values.remove(entry.getKey());
+                changed |= previous == null ? entry.getValue() != null : !previous.equals(entry.getValue());
+            }
+            if (!changed) {
+                return;
+            }
+            generation++;
+            if (pendingFlush == null) {
+                pendingFlush = io.schedule(this::write, flushDelay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    // 立即写入尚未落盘的修改并等待完成，进程即将退出时调用
+    void flush() {
+        try {
+            io.submit(this::write).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // 实际写入文件的次数
+    synchronized int writeCount() {
+        return writes;
+    }
+
+    private void awaitLoaded() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                loaded.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void load() {
+        try {
+            // 上次写临时文件时进程被杀，正式文件仍是完整的旧内容，临时文件丢弃
+            if (tmp.exists() && !tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+            if (!file.exists()) {
+                return;
+            }
+            synchronized (this) {
+                existed = true;
+            }
+            Properties properties = new Properties();
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException | IllegalArgumentException e) {
+                return; // 按空配置处理，下次写入时覆盖
+            }
+            synchronized (this) {
+                for (String key : properties.stringPropertyNames()) {
+                    values.put(key, properties.getProperty(key));
+                }
+            }
+        } finally {
+            loaded.countDown();
+        }
+    }
+
+    // 只在io线程上执行
+    private void write() {
+        Properties snapshot = new Properties();
+        int snapshotGeneration;
+        synchronized (this) {
+            pendingFlush = null;
+            if (generation == flushedGeneration) {
+                return;
+            }
+            snapshot.putAll(values);
+            snapshotGeneration = generation;
+        }
+
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            snapshot.store(writer, null);
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            // 保留内存中的修改，下一次put或flush时重试
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            return;
+        }
+        synchronized (this) {
+            flushedGeneration = snapshotGeneration;
+            writes++;
+        }
+    }
+}
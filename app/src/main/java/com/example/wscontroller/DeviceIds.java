@@ -0,0 +1,33 @@
+package com.example.wscontroller;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// 设备编号格式：[租户-]数字编号
+// 租户以小写字母开头，最长16个字符；数字编号3到10位。不带租户的三位数字编号（旧格式）继续有效。
+// 与服务器 relay/deviceId.js 使用同一个规则，修改时两边需要同步。
+public final class DeviceIds {
+    public static final int MAX_LENGTH = 27; // 16位租户 + 短横线 + 10位数字
+    public static final String FORMAT_HINT = "设备编号应为3到10位数字，可带租户前缀（如 acme-0001）";
+
+    private static final Pattern DEVICE_ID = Pattern.compile("(?:([a-z][a-z0-9_]{0,15})-)?(\\d{3,10})");
+
+    private DeviceIds() {
+    }
+
+    public static boolean isValid(String id) {
+        return id != null && DEVICE_ID.matcher(id).matches();
+    }
+
+    // 取编号所属租户，旧格式编号返回空字符串；格式无效返回null
+    public static String tenantOf(String id) {
+        if (id == null) {
+            return null;
+        }
+        Matcher matcher = DEVICE_ID.matcher(id);
+        if (!matcher.matches()) {
+            return null;
+        }
+        return matcher.group(1) != null ? matcher.group(1) : "";
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.wscontroller;
+
+/**
+ * 设备端性能指标采集，每个序列使用固定大小的环形缓冲，定期取出后上报给中转服务器。
+ * 所有方法线程安全：pong在OkHttp线程上记录，上报在主线程上执行。
+ */
+public class DeviceMetrics {
+    public enum Series {
+        HEARTBEAT_RTT("heartbeatRtt"),
+        RECONNECT_DURATION("reconnectDuration"),
+        ROTATION_LATENCY("rotationLatency"),
+        EVENT_DISPATCH("eventDispatch"), // 微秒
+        WAKE_DURATION("wakeDuration");
+
+        private final String key;
+
+        Series(String key) {
+            this.key = key;
+        }
+
+        // 上报协议中的字段名，与relay/metrics.js中的SERIES保持一致
+        public String key() {
+            return key;
+        }
+    }
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final long[][] rings;
+    private final int[] sizes;
+    private final int[] nexts;
+
+    public DeviceMetrics() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public DeviceMetrics(int capacity) {
+        int count = Series.values().length;
+        rings = new long[count][capacity];
+        sizes = new int[count];
+        nexts = new int[count];
+    }
+
+    // 记录一个样本，缓冲写满时覆盖最旧的样本
+    public synchronized void record(Series series, long value) {
+        if (value < 0) {
+            return;
+        }
+        int i = series.ordinal();
+        long[] ring = rings[i];
+        ring[nexts[i]] = value;
+        nexts[i] = (nexts[i] + 1) % ring.length;
+        if (sizes[i] < ring.length) {
+            sizes[i]++;
+        }
+    }
+
+    // 取出某个序列的所有样本（按记录顺序）并清空
+    public synchronized long[] drain(Series series) {
+        int i = series.ordinal();
+        long[] ring = rings[i];
+        int size = sizes[i];
+        long[] out = new long[size];
+        int start = (nexts[i] - size + ring.length) % ring.length;
+        for (int k = 0; k < size; k++) {
+            out[k] = ring[(start + k) % ring.length];
+        }
+        sizes[i] = 0;
+        nexts[i] = 0;
+        return out;
+    }
+
+    // 上报失败时把drain取出的样本放回，排在取出之后新记录的样本前面；总数超过容量时丢弃最旧的
+    public synchronized void restore(Series series, long[] samples) {
+        int i = series.ordinal();
+        long[] ring = rings[i];
+        int newer = sizes[i];
+        int keepOld = Math.min(samples.length, ring.length - newer);
+        if (keepOld == 0) {
+            return;
+        }
+        long[] merged = new long[keepOld + newer];
+        System.arraycopy(samples, samples.length - keepOld, merged, 0, keepOld);
+        int start = (nexts[i] - newer + ring.length) % ring.length;
+        for (int k = 0; k < newer; k++) {
+            merged[keepOld + k] = ring[(start + k) % ring.length];
+        }
+        System.arraycopy(merged, 0, ring, 0, merged.length);
+        sizes[i] = merged.length;
+        nexts[i] = merged.length % ring.length;
+    }
+
+    // 是否有待上报的样本
+    public synchronized boolean hasSamples() {
+        for (int size : sizes) {
+            if (size > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
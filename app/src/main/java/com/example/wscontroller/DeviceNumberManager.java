@@ -6,96 +6,267 @@ import android.util.Log;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+// 设备编号、分组、中转服务器地址和运行参数，统一保存在内部存储的config.properties中，
+// 由ConfigStore缓存并原子写入。旧版本保存在外部存储device_number.txt和SharedPreferences中，
+// 配置文件不存在时读取一次旧数据迁移过来，同时写入迁移标记，保证配置文件一定会创建，之后不再读写旧位置。
 public class DeviceNumberManager {
-    private static final String DEVICE_NUMBER_FILE = "device_number.txt";
-    private static final String DEVICE_NUMBER_PREF_KEY = "device_number";
-    private static final String PREFS_NAME = "device_prefs";
+    private static final String CONFIG_FILE = "config.properties";
+    private static final String KEY_DEVICE_NUMBER = "device_number";
+    private static final String KEY_GROUPS = "device_groups";
+    private static final String KEY_RELAY_ENDPOINTS = "relay_endpoints";
+    private static final String TUNING_PREFIX = "tuning.";
+    private static final String ROTATION_PREFIX = "rotation.";
+    private static final String KEY_ROTATION_HISTORY = "rotation_history";
+    private static final String KEY_LEGACY_MIGRATED = "legacy_migrated";
 
-    private Context context;
-    private SharedPreferences prefs;
-    private String deviceNumber;
+    // 旧版本的存储位置，只用于迁移
+    private static final String LEGACY_NUMBER_FILE = "device_number.txt";
+    private static final String LEGACY_PREFS_NAME = "device_prefs";
 
-    public DeviceNumberManager(Context context) {
+    private static DeviceNumberManager instance;
+
+    private final Context context;
+    private final ConfigStore store;
+    private boolean migrated = false;
+
+    private DeviceNumberManager(Context context) {
         this.context = context;
-        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        this.deviceNumber = loadDeviceNumber();
+        this.store = new ConfigStore(new File(context.getFilesDir(), CONFIG_FILE));
     }
 
-    // 加载设备编号
-    private String loadDeviceNumber() {
-        // 先尝试从文件读取
-        String number = readDeviceNumberFromFile();
-
-        // 如果文件中没有，从SharedPreferences中读取
-        if (number == null || number.isEmpty()) {
-            number = prefs.getString(DEVICE_NUMBER_PREF_KEY, "");
+    // 进程内共用一个实例，界面保存的编号服务和WebSocketManager立即可见。
+    // 创建时只在后台线程上开始读文件，第一次用到配置时才等待读取完成，不占用启动关键路径
+    public static synchronized DeviceNumberManager get(Context context) {
+        if (instance == null) {
+            instance = new DeviceNumberManager(context.getApplicationContext());
+        }
+        return instance;
+    }
 
-            // 如果SharedPreferences中有，写入文件保持一致
-            if (!number.isEmpty()) {
-                writeDeviceNumberToFile(number);
+    private synchronized ConfigStore store() {
+        if (!migrated) {
+            migrated = true;
+            if (!store.existed()) {
+                migrateLegacy();
             }
-        } else {
-            // 如果文件中有，更新SharedPreferences保持一致
-            prefs.edit().putString(DEVICE_NUMBER_PREF_KEY, number).apply();
         }
+        return store;
+    }
 
-        return number;
+    // 从旧版本的文件和SharedPreferences迁移，文件优先。
+    // 旧位置没有任何数据时也写入迁移时间，否则配置文件一直不存在，每次启动都会重新读取旧位置
+    private void migrateLegacy() {
+        SharedPreferences prefs = context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE);
+        String number = readLegacyNumberFile();
+        if (number.isEmpty()) {
+            number = prefs.getString(KEY_DEVICE_NUMBER, "");
+        }
+        Map<String, String> values = new HashMap<>();
+        values.put(KEY_DEVICE_NUMBER, DeviceIds.isValid(number) ? number : null);
+        values.put(KEY_GROUPS, emptyToNull(prefs.getString(KEY_GROUPS, "")));
+        values.put(KEY_RELAY_ENDPOINTS, emptyToNull(prefs.getString(KEY_RELAY_ENDPOINTS, "")));
+        values.put(KEY_LEGACY_MIGRATED, String.valueOf(System.currentTimeMillis()));
+        store.putAll(values);
+        Log.i("DeviceNumberManager", "已从旧版本存储迁移配置，设备编号: " + number);
     }
 
-    // 从文件读取设备编号
-    private String readDeviceNumberFromFile() {
-        File file = new File(context.getExternalFilesDir(null), DEVICE_NUMBER_FILE);
+    private String readLegacyNumberFile() {
+        File file = new File(context.getExternalFilesDir(null), LEGACY_NUMBER_FILE);
         if (!file.exists()) {
             return "";
         }
-
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(file));
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
             String number = reader.readLine();
-            reader.close();
             return number != null ? number.trim() : "";
         } catch (IOException e) {
-            Log.e("DeviceNumberManager", "读取设备编号文件失败", e);
+            Log.e("DeviceNumberManager", "读取旧的设备编号文件失败", e);
             return "";
         }
     }
 
-    // 写入设备编号到文件
-    private void writeDeviceNumberToFile(String number) {
-        File file = new File(context.getExternalFilesDir(null), DEVICE_NUMBER_FILE);
-        try {
-            FileWriter writer = new FileWriter(file);
-            writer.write(number);
-            writer.close();
-        } catch (IOException e) {
-            Log.e("DeviceNumberManager", "写入设备编号文件失败", e);
-        }
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
     }
 
     // 保存新的设备编号
     public void saveDeviceNumber(String number) {
-        // 验证编号格式 (三位数字)
-        if (!number.matches("\\d{3}")) {
-            throw new IllegalArgumentException("设备编号必须是三位数字");
+        // 验证编号格式 ([租户-]数字编号)
+        if (!DeviceIds.isValid(number)) {
+            throw new IllegalArgumentException(DeviceIds.FORMAT_HINT);
         }
 
-        // 保存到内存、文件和SharedPreferences
-        this.deviceNumber = number;
-        writeDeviceNumberToFile(number);
-        prefs.edit().putString(DEVICE_NUMBER_PREF_KEY, number).apply();
+        store().put(KEY_DEVICE_NUMBER, number);
     }
 
-    // 获取当前设备编号
+    // 获取当前设备编号，没有设置时返回空字符串
     public String getDeviceNumber() {
-        return deviceNumber;
+        return store().get(KEY_DEVICE_NUMBER, "");
+    }
+
+    // 获取设备所属分组，注册时上报给服务器
+    public List<String> getGroups() {
+        List<String> groups = new ArrayList<>();
+        String value = store().get(KEY_GROUPS, "");
+        for (String name : value.split(",")) {
+            if (!name.trim().isEmpty()) {
+                groups.add(name.trim());
+            }
+        }
+        return groups;
+    }
+
+    // 保存设备所属分组 (分组名只允许字母、数字、下划线和短横线)
+    public void saveGroups(List<String> groups) {
+        StringBuilder value = new StringBuilder();
+        for (String name : groups) {
+            if (name == null || !name.matches("[\\w-]{1,32}")) {
+                continue;
+            }
+            if (value.length() > 0) {
+                value.append(',');
+            }
+            value.append(name);
+        }
+        store().put(KEY_GROUPS, value.toString());
+    }
+
+    // 获取保存的中转服务器地址列表，没有保存时返回空列表
+    public List<String> getRelayEndpoints() {
+        List<String> endpoints = new ArrayList<>();
+        String value = store().get(KEY_RELAY_ENDPOINTS, "");
+        for (String url : value.split(",")) {
+            if (!url.trim().isEmpty()) {
+                endpoints.add(url.trim());
+            }
+        }
+        return endpoints;
+    }
+
+    // 保存中转服务器地址列表 (只接受ws://或wss://地址)
+    public void saveRelayEndpoints(List<String> endpoints) {
+        StringBuilder value = new StringBuilder();
+        for (String url : endpoints) {
+            if (url == null || !url.matches("wss?://[^,\\s]+/")) {
+                continue;
+            }
+            if (value.length() > 0) {
+                value.append(',');
+            }
+            value.append(url);
+        }
+        store().put(KEY_RELAY_ENDPOINTS, value.toString());
     }
 
     // 检查是否已设置设备编号
     public boolean hasDeviceNumber() {
-        return deviceNumber != null && !deviceNumber.isEmpty();
+        return !getDeviceNumber().isEmpty();
+    }
+
+    // 上次保存的运行参数，没有保存过或内容无效时返回null
+    public TuningConfig getTuning() {
+        Map<String, Long> values = getTuningValues();
+        if (values.isEmpty()) {
+            return null;
+        }
+        try {
+            return TuningConfig.fromMap(values);
+        } catch (IllegalArgumentException e) {
+            Log.w("DeviceNumberManager", "保存的运行参数无效: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void saveTuning(TuningConfig tuning) {
+        saveTuningValues(tuning.toMap());
+    }
+
+    // 运行参数（心跳间隔、重连延迟等），键为参数名，没有保存过时返回空表
+    public Map<String, Long> getTuningValues() {
+        return getLongValues(TUNING_PREFIX);
+    }
+
+    // 整体替换运行参数，不在values中的旧参数被删除，一次写入
+    public void saveTuningValues(Map<String, Long> values) {
+        saveLongValues(TUNING_PREFIX, values);
+    }
+
+    // 上次下发并保存的定时切换策略，没有保存过或内容无效时返回null
+    RotationPolicy getRotationPolicy() {
+        Map<String, Long> values = getLongValues(ROTATION_PREFIX);
+        if (values.isEmpty()) {
+            return null;
+        }
+        try {
+            return RotationPolicy.fromMap(values);
+        } catch (IllegalArgumentException e) {
+            Log.w("DeviceNumberManager", "保存的定时切换策略无效: " + e.getMessage());
+            return null;
+        }
+    }
+
+    void saveRotationPolicy(RotationPolicy policy) {
+        saveLongValues(ROTATION_PREFIX, policy.toMap());
+    }
+
+    // 最近一小时内定时切换的开始时间，用于进程重启后继续遵守每小时上限
+    List<Long> getRotationHistory() {
+        List<Long> history = new ArrayList<>();
+        for (String value : store().get(KEY_ROTATION_HISTORY, "").split(",")) {
+            try {
+                history.add(Long.parseLong(value.trim()));
+            } catch (NumberFormatException e) {
+                // 空字符串或损坏的项
+            }
+        }
+        return history;
+    }
+
+    void saveRotationHistory(List<Long> history) {
+        StringBuilder value = new StringBuilder();
+        for (long at : history) {
+            if (value.length() > 0) {
+                value.append(',');
+            }
+            value.append(at);
+        }
+        store().put(KEY_ROTATION_HISTORY, value.length() > 0 ? value.toString() : null);
+    }
+
+    private Map<String, Long> getLongValues(String prefix) {
+        Map<String, Long> result = new HashMap<>();
+        for (Map.Entry<String, String> entry : store().getAll(prefix).entrySet()) {
+            try {
+                result.put(entry.getKey(), Long.parseLong(entry.getValue()));
+            } catch (NumberFormatException e) {
+                // 忽略损坏的项，使用默认值
+            }
+        }
+        return result;
+    }
+
+    private void saveLongValues(String prefix, Map<String, Long> values) {
+        Map<String, String> changes = new HashMap<>();
+        for (String key : store().getAll(prefix).keySet()) {
+            changes.put(prefix + key, null);
+        }
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            changes.put(prefix + entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        store().putAll(changes);
+    }
+
+    // 把尚未落盘的修改立即写入文件，服务销毁时调用
+    public void flush() {
+        store().flush();
     }
 }
\ No newline at end of file
@@ -0,0 +1,229 @@
+package com.example.wscontroller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+// 持久化的滚动日志
+// 每个分段文件是一块固定大小的内存映射区，写日志只是往映射区里复制字节，不产生系统调用；
+// 进程被杀后已写入的内容仍在页缓存中，由内核写回文件。分段写满后新建下一个，
+// 超过数量上限时删除最旧的分段。
+//
+// 每条记录一行：毫秒时间戳\t级别\t标签\t内容\n，内容中的换行替换为空格。
+// 映射区未写入的部分是0，打开已有分段时扫描到第一个0字节即为写入位置。
+public final class DiskLog {
+    static final int SEGMENT_SIZE = 1024 * 1024;
+    static final int MAX_SEGMENTS = 8;
+    private static final String PREFIX = "seg-";
+    private static final String SUFFIX = ".log";
+
+    private static volatile DiskLog instance;
+
+    private final File dir;
+    private final int segmentSize;
+    private final int maxSegments;
+    private MappedByteBuffer buffer;
+    private long segmentIndex; // 分段文件名中的序号，递增
+
+    public DiskLog(File dir) throws IOException {
+        this(dir, SEGMENT_SIZE, MAX_SEGMENTS);
+    }
+
+    DiskLog(File dir, int segmentSize, int maxSegments) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("无法创建日志目录: " + dir);
+        }
+        File[] segments = segments();
+        if (segments.length > 0) {
+            File latest = segments[segments.length - 1];
+            openSegment(latest, indexOf(latest));
+        } else {
+            rotate();
+        }
+    }
+
+    // 在App启动的后台线程中调用
+    public static void init(File dir) throws IOException {
+        instance = new DiskLog(dir);
+    }
+
+    public static DiskLog get() {
+        return instance;
+    }
+
+    public synchronized void append(long time, char level, String tag, String message) {
+        byte[] record = encode(time, level, tag, message);
+        if (record.length > buffer.remaining()) {
+            try {
+                rotate();
+            } catch (IOException e) {
+                return;
+            }
+        }
+        buffer.put(record);
+    }
+
+    // 读取时间范围内的记录，按chunkBytes分块交给sink，每块都以完整的行结束
+    // 最多读取maxBytes字节，返回是否因为超过上限而截断
+    public boolean read(long from, long to, int chunkBytes, long maxBytes, Consumer<String> sink) {
+        File[] segments = segments();
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(chunkBytes);
+        long total = 0;
+
+        for (int i = 0; i < segments.length; i++) {
+            // 下一个分段的第一条记录早于from，说明这个分段的记录都早于from
+            if (i + 1 < segments.length && firstTimeOf(segments[i + 1]) < from) {
+                continue;
+            }
+            byte[] data;
+            try {
+                data = Files.readAllBytes(segments[i].toPath());
+            } catch (IOException e) {
+                continue; // 读取期间被滚动删除
+            }
+            if (data.length > 0 && data[0] != 0 && parseTime(data, 0, data.length) > to) {
+                break;
+            }
+            int lineStart = 0;
+            for (int pos = 0; pos < data.length && data[pos] != 0; pos++) {
+                if (data[pos] != '\n') {
+                    continue;
+                }
+                long time = parseTime(data, lineStart, pos);
+                int length = pos + 1 - lineStart;
+                if (time >= from && time <= to) {
+                    if (total + length > maxBytes) {
+                        flushChunk(chunk, sink);
+                        return true;
+                    }
+                    if (chunk.size() + length > chunkBytes) {
+                        flushChunk(chunk, sink);
+                    }
+                    chunk.write(data, lineStart, length);
+                    total += length;
+                }
+                lineStart = pos + 1;
+            }
+        }
+        flushChunk(chunk, sink);
+        return false;
+    }
+
+    // 关机或长时间不写入前调用，把映射区同步到磁盘
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    private void rotate() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+        }
+        long index = segmentIndex + 1;
+        openSegment(new File(dir, String.format(Locale.ROOT, "%s%010d%s", PREFIX, index, SUFFIX)), index);
+
+        File[] segments = segments();
+        for (int i = 0; i < segments.length - maxSegments; i++) {
+            segments[i].delete();
+        }
+    }
+
+    private void openSegment(File file, long index) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            // 映射在通道关闭后仍然有效
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segmentIndex = index;
+        int position = 0;
+        while (position < segmentSize && buffer.get(position) != 0) {
+            position++;
+        }
+        buffer.position(position);
+    }
+
+    private byte[] encode(long time, char level, String tag, String message) {
+        StringBuilder line = new StringBuilder(message.length() + tag.length() + 20);
+        line.append(time).append('\t').append(level).append('\t').append(tag).append('\t');
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            line.append(c == '\n' || c == '\r' || c == '\0' ? ' ' : c);
+        }
+        line.append('\n');
+        byte[] record = line.toString().getBytes(StandardCharsets.UTF_8);
+        if (record.length > segmentSize) {
+            // 超长的记录截断，保证一个分段至少能放下一条
+            record = Arrays.copyOf(record, segmentSize);
+            record[segmentSize - 1] = '\n';
+        }
+        return record;
+    }
+
+    private File[] segments() {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files); // 文件名中的序号定长，按名称排序即按写入顺序排序
+        return files;
+    }
+
+    private static long indexOf(File segment) {
+        String name = segment.getName();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // 分段第一条记录的时间，空分段返回Long.MAX_VALUE
+    private static long firstTimeOf(File segment) {
+        byte[] head = new byte[20];
+        int length;
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "r")) {
+            length = Math.max(raf.read(head), 0);
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
+        }
+        if (length == 0 || head[0] == 0) {
+            return Long.MAX_VALUE;
+        }
+        return parseTime(head, 0, length);
+    }
+
+    private static long parseTime(byte[] data, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end && data[i] != '\t'; i++) {
+            if (data[i] < '0' || data[i] > '9') {
+                return -1;
+            }
+            value = value * 10 + (data[i] - '0');
+        }
+        return value;
+    }
+
+    private static void flushChunk(ByteArrayOutputStream chunk, Consumer<String> sink) {
+        if (chunk.size() > 0) {
+            sink.accept(new String(chunk.toByteArray(), StandardCharsets.UTF_8));
+            chunk.reset();
+        }
+    }
+
+    // 供测试使用
+    List<File> segmentFiles() {
+        return new ArrayList<>(Arrays.asList(segments()));
+    }
+}
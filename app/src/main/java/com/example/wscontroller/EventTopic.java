@@ -0,0 +1,120 @@
+package com.example.wscontroller;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+
+// 进程内事件主题，替代应用内的全局广播
+// 发布时在调用线程上直接分发给监听器，不经过Intent序列化和ActivityManager。
+// 监听器列表写时复制，发布时遍历不加锁；每个主题保留最近replay个事件，
+// 新订阅者先收到这些事件。每次发布的分发耗时（微秒）交给dispatchRecorder，监听器抛出的异常交给errorHandler。
+public final class EventTopic<T> {
+    public interface Listener<T> {
+        void onEvent(T event);
+    }
+
+    public interface ErrorHandler {
+        void onListenerError(String topic, RuntimeException error);
+    }
+
+    private static final class Entry<T> {
+        final long seq;
+        final T event;
+
+        Entry(long seq, T event) {
+            this.seq = seq;
+            this.event = event;
+        }
+    }
+
+    private final String name;
+    private final int replay;
+    private final LongConsumer dispatchRecorder;
+    private final ErrorHandler errorHandler;
+    private final CopyOnWriteArrayList<Subscription> subscribers = new CopyOnWriteArrayList<>();
+    private final ArrayDeque<Entry<T>> history = new ArrayDeque<>();
+    private long lastSeq = 0;
+
+    public EventTopic(String name, int replay, LongConsumer dispatchRecorder, ErrorHandler errorHandler) {
+        this.name = name;
+        this.replay = replay;
+        this.dispatchRecorder = dispatchRecorder;
+        this.errorHandler = errorHandler;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void publish(T event) {
+        long startedAt = System.nanoTime();
+        long seq;
+        synchronized (this) {
+            seq = ++lastSeq;
+            if (replay > 0) {
+                if (history.size() == replay) {
+                    history.removeFirst();
+                }
+                history.addLast(new Entry<>(seq, event));
+            }
+        }
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        for (Subscription subscription : subscribers) {
+            subscription.deliver(seq, event);
+        }
+        dispatchRecorder.accept((System.nanoTime() - startedAt) / 1000);
+    }
+
+    // 订阅并立即重放保留的事件，回调在发布者的线程上执行
+    public Subscription subscribe(Listener<? super T> listener) {
+        Subscription subscription = new Subscription(listener);
+        // 重放完成前，并发发布的新事件在deliver上等待，保证按序号顺序到达
+        synchronized (subscription) {
+            List<Entry<T>> backlog;
+            synchronized (this) {
+                subscribers.add(subscription);
+                backlog = new ArrayList<>(history);
+            }
+            for (Entry<T> entry : backlog) {
+                subscription.deliver(entry.seq, entry.event);
+            }
+        }
+        return subscription;
+    }
+
+    int subscriberCount() {
+        return subscribers.size();
+    }
+
+    public final class Subscription {
+        private final Listener<? super T> listener;
+        private long delivered = 0; // 已分发的最大序号，重放和并发发布不会重复分发
+        private volatile boolean cancelled = false;
+
+        private Subscription(Listener<? super T> listener) {
+            this.listener = listener;
+        }
+
+        private synchronized void deliver(long seq, T event) {
+            if (cancelled || seq <= delivered) {
+                return;
+            }
+            delivered = seq;
+            try {
+                listener.onEvent(event);
+            } catch (RuntimeException e) {
+                // 单个监听器出错不影响发布者和其他监听器
+                errorHandler.onListenerError(name, e);
+            }
+        }
+
+        public void cancel() {
+            cancelled = true;
+            subscribers.remove(this);
+        }
+    }
+}
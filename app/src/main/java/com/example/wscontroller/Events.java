@@ -0,0 +1,37 @@
+package com.example.wscontroller;
+
+import java.util.function.LongConsumer;
+
+// 应用内的事件主题，WebSocketManager、服务和界面之间通过这些主题通信
+public final class Events {
+    private static volatile LongConsumer dispatchRecorder = latencyMicros -> { };
+
+    private Events() {
+    }
+
+    // WebSocketManager收到的消息和给界面的提示，界面重建后可以看到最近20条
+    public static final EventTopic<String> MESSAGE = new EventTopic<>("message", 20, Events::recordDispatch, Events::recordError);
+
+    // 连接状态，新订阅者立即收到当前状态
+    public static final EventTopic<Boolean> CONNECTION_STATE = new EventTopic<>("connection_state", 1, Events::recordDispatch, Events::recordError);
+
+    // 无障碍服务未启用，需要提示用户；不重放，避免界面重建时重复弹窗
+    public static final EventTopic<String> ACCESSIBILITY_REQUIRED = new EventTopic<>("accessibility_required", 0, Events::recordDispatch, Events::recordError);
+
+    // 无障碍服务切换完网络，值为是否强制重连；不重放，避免重复重连
+    public static final EventTopic<Boolean> NETWORK_STATE_CHANGED = new EventTopic<>("network_state_changed", 0, Events::recordDispatch, Events::recordError);
+
+    // 记录分发耗时，由WebSocketManager接入指标上报
+    public static void setDispatchRecorder(LongConsumer recorder) {
+        dispatchRecorder = recorder;
+    }
+
+    private static void recordDispatch(long latencyMicros) {
+        dispatchRecorder.accept(latencyMicros);
+    }
+
+    // 单个监听器出错不影响其他监听器，只记录日志
+    private static void recordError(String topic, RuntimeException error) {
+        AppLog.e("Events", "主题" + topic + "的监听器出错", error);
+    }
+}
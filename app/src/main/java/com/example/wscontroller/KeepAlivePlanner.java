@@ -0,0 +1,91 @@
+package com.example.wscontroller;
+
+import java.util.function.LongSupplier;
+
+// 保活心跳的时间计划，只做时间计算，不依赖Android，时钟可注入
+// 心跳周期随设备状态变化：亮屏时短，灭屏后放长，Doze期间按allow-while-idle闹钟的最小间隔。
+// 只在主线程使用，不做同步。
+final class KeepAlivePlanner {
+    enum Mode {
+        INTERACTIVE,
+        SCREEN_OFF,
+        DEVICE_IDLE
+    }
+
+    private long interactiveInterval;
+    private long screenOffInterval;
+    private long idleInterval;
+    private final LongSupplier clock;
+    private Mode mode = Mode.INTERACTIVE;
+    private long lastBeatAt;
+    private long beats = 0;
+    private long missedBeats = 0;
+
+    KeepAlivePlanner(long interactiveInterval, long screenOffInterval, long idleInterval, LongSupplier clock) {
+        this.interactiveInterval = interactiveInterval;
+        this.screenOffInterval = screenOffInterval;
+        this.idleInterval = idleInterval;
+        this.clock = clock;
+        this.lastBeatAt = clock.getAsLong();
+    }
+
+    // 运行参数更新后调整周期，上一次心跳的时间不变，下一次按新周期计算
+    void setIntervals(long interactiveInterval, long screenOffInterval, long idleInterval) {
+        this.interactiveInterval = interactiveInterval;
+        this.screenOffInterval = screenOffInterval;
+        this.idleInterval = idleInterval;
+    }
+
+    // 连接刚建立，从现在开始计时
+    void reset() {
+        lastBeatAt = clock.getAsLong();
+    }
+
+    void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    Mode mode() {
+        return mode;
+    }
+
+    long interval() {
+        switch (mode) {
+            case DEVICE_IDLE:
+                return idleInterval;
+            case SCREEN_OFF:
+                return screenOffInterval;
+            default:
+                return interactiveInterval;
+        }
+    }
+
+    long nextBeatAt() {
+        return lastBeatAt + interval();
+    }
+
+    // 被唤醒时（闹钟到期、Doze维护窗口、亮屏）是否发送心跳：已经到期，
+    // 或者离到期不足四分之一个周期——顺便提前发送，省掉之后单独的一次唤醒
+    boolean isDue() {
+        return clock.getAsLong() >= nextBeatAt() - interval() / 4;
+    }
+
+    // 记录一次心跳。计时器被系统挂起很久时只补发这一次，错过的次数只做统计，不再逐个补发
+    void onBeat() {
+        long now = clock.getAsLong();
+        long late = now - nextBeatAt();
+        if (late >= interval()) {
+            missedBeats += late / interval();
+        }
+        lastBeatAt = now;
+        beats++;
+    }
+
+    long beats() {
+        return beats;
+    }
+
+    long missedBeats() {
+        return missedBeats;
+    }
+}
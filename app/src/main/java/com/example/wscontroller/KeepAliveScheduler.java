@@ -0,0 +1,186 @@
+package com.example.wscontroller;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+import androidx.core.content.ContextCompat;
+
+// 保活调度：心跳由AlarmManager的allow-while-idle闹钟唤醒，而不是主线程Handler。
+// Handler计时在CPU休眠和Doze期间停住，醒来后心跳、超时检查和重连一起触发；
+// 闹钟不精确，Doze期间由系统对齐到维护窗口，退出Doze时顺便发送已接近到期的心跳。
+// 闹钟到期后只在发送心跳、等待pong（或重连握手）这段时间持有部分唤醒锁，
+// 每次持有的时长记录到wakeDuration指标。所有方法在主线程调用。
+final class KeepAliveScheduler {
+    interface Callback {
+        // 唤醒锁已持有，处理完成（收到pong、连接建立或失败）后调用endWake
+        void onKeepAlive();
+    }
+
+    private static final String ACTION_KEEP_ALIVE = "com.example.wscontroller.action.KEEP_ALIVE";
+    // 三种状态下的心跳周期来自运行参数，默认亮屏15秒；灭屏60秒，服务器每30秒的ping帧仍会维持连接；
+    // Doze期间9分钟，即allow-while-idle闹钟的最小间隔
+    private static final long WAKE_TIMEOUT = 20000; // 唤醒锁最长持有时间，超时未收到回应也释放
+
+    private final Context context;
+    private final Callback callback;
+    private final DeviceMetrics metrics;
+    private final AlarmManager alarmManager;
+    private final PowerManager powerManager;
+    private final PowerManager.WakeLock wakeLock;
+    private final PendingIntent alarmIntent;
+    private final KeepAlivePlanner planner;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean started = false;
+    private long wakeStartedAt = 0; // 0表示当前没有持有唤醒锁
+
+    private final Runnable wakeTimeoutRunnable = () -> {
+        AppLog.d("KeepAlive", "唤醒超时，释放唤醒锁");
+        endWake();
+    };
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            if (ACTION_KEEP_ALIVE.equals(action)) {
+                onWake("闹钟");
+                return;
+            }
+            KeepAlivePlanner.Mode previous = planner.mode();
+            updateMode();
+            AppLog.d("KeepAlive", "设备状态: " + previous + " -> " + planner.mode());
+            if (planner.mode().ordinal() < previous.ordinal()) {
+                // 退出Doze（维护窗口）或亮屏，网络可用，对齐在这次唤醒里发送心跳
+                onWake("设备唤醒");
+            } else {
+                schedule();
+            }
+        }
+    };
+
+    KeepAliveScheduler(Context context, DeviceMetrics metrics, Callback callback) {
+        this.context = context.getApplicationContext();
+        this.metrics = metrics;
+        this.callback = callback;
+        this.alarmManager = (AlarmManager) this.context.getSystemService(Context.ALARM_SERVICE);
+        this.powerManager = (PowerManager) this.context.getSystemService(Context.POWER_SERVICE);
+        this.wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "wscontroller:keepalive");
+        this.wakeLock.setReferenceCounted(false);
+        Intent intent = new Intent(ACTION_KEEP_ALIVE).setPackage(this.context.getPackageName());
+        this.alarmIntent = PendingIntent.getBroadcast(this.context, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        TuningConfig tuning = TuningConfig.current();
+        this.planner = new KeepAlivePlanner(
+                tuning.get(TuningConfig.Key.HEARTBEAT_INTERACTIVE),
+                tuning.get(TuningConfig.Key.HEARTBEAT_SCREEN_OFF),
+                tuning.get(TuningConfig.Key.HEARTBEAT_IDLE),
+                SystemClock::elapsedRealtime);
+    }
+
+    // 开始调度，重复调用无影响
+    void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        IntentFilter filter = new IntentFilter(ACTION_KEEP_ALIVE);
+        filter.addAction(PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED);
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        ContextCompat.registerReceiver(context, receiver, filter, ContextCompat.RECEIVER_NOT_EXPORTED);
+        updateMode();
+        planner.reset();
+        schedule();
+        AppLog.d("KeepAlive", "开始保活调度，模式: " + planner.mode());
+    }
+
+    void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        alarmManager.cancel(alarmIntent);
+        context.unregisterReceiver(receiver);
+        endWake();
+        AppLog.d("KeepAlive", "停止保活调度，共心跳" + planner.beats() + "次，错过" + planner.missedBeats() + "次");
+    }
+
+    // 连接刚建立，下一次心跳从现在开始计时
+    void onConnected() {
+        if (!started) {
+            return;
+        }
+        planner.reset();
+        schedule();
+    }
+
+    // 运行参数更新，按新的周期重新设置闹钟
+    void applyTuning(TuningConfig tuning) {
+        planner.setIntervals(
+                tuning.get(TuningConfig.Key.HEARTBEAT_INTERACTIVE),
+                tuning.get(TuningConfig.Key.HEARTBEAT_SCREEN_OFF),
+                tuning.get(TuningConfig.Key.HEARTBEAT_IDLE));
+        schedule();
+    }
+
+    // 心跳或重连的收发完成，释放唤醒锁并记录持有时长
+    void endWake() {
+        if (wakeStartedAt == 0) {
+            return;
+        }
+        handler.removeCallbacks(wakeTimeoutRunnable);
+        metrics.record(DeviceMetrics.Series.WAKE_DURATION, SystemClock.elapsedRealtime() - wakeStartedAt);
+        wakeStartedAt = 0;
+        if (wakeLock.isHeld()) {
+            wakeLock.release();
+        }
+    }
+
+    private void onWake(String reason) {
+        if (!started) {
+            return;
+        }
+        if (planner.isDue()) {
+            planner.onBeat();
+            // 上一次心跳还在等待回应时不再重复发送，只顺延计划
+            if (wakeStartedAt == 0) {
+                AppLog.d("KeepAlive", reason + "触发心跳，模式: " + planner.mode());
+                beginWake();
+                callback.onKeepAlive();
+            }
+        }
+        schedule();
+    }
+
+    private void beginWake() {
+        wakeLock.acquire(WAKE_TIMEOUT);
+        wakeStartedAt = SystemClock.elapsedRealtime();
+        handler.postDelayed(wakeTimeoutRunnable, WAKE_TIMEOUT);
+    }
+
+    private void updateMode() {
+        if (powerManager.isDeviceIdleMode()) {
+            planner.setMode(KeepAlivePlanner.Mode.DEVICE_IDLE);
+        } else if (!powerManager.isInteractive()) {
+            planner.setMode(KeepAlivePlanner.Mode.SCREEN_OFF);
+        } else {
+            planner.setMode(KeepAlivePlanner.Mode.INTERACTIVE);
+        }
+    }
+
+    // 不用精确闹钟：精确闹钟在Android 12以上需要额外权限，而且会绕开系统对唤醒的合并
+    private void schedule() {
+        if (!started) {
+            return;
+        }
+        alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, planner.nextBeatAt(), alarmIntent);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.wscontroller;
+
+// 连接失效判定和重连等待，只做计数和匹配，不依赖Android，时间由调用方传入。
+// 心跳：发送ping时记下时间戳，服务器的pong回显这个时间戳（echo），只有回显最近一次ping的pong才算按时收到，
+// 迟到的pong（回显更早的ping）不会被算到下一次心跳上；没有回显的pong（旧版服务器）算作回复当前的ping。
+// pong超时内没有收到算一次失败，连续requiredFailedChecks次失败判定连接失效。
+// 重连：连接异常关闭后按ReconnectBackoff退避，连接建立后清零。
+// WebSocketManager用它代替原来分散的计数字段，FaultScenarioTest通过故障注入代理驱动同一个类。不做同步。
+final class LinkMonitor {
+    enum Verdict {
+        ALIVE,   // 按时收到了pong，或者没有等待中的ping
+        SUSPECT, // 本次超时，失败次数还没达到上限
+        DEAD     // 连续超时达到上限，应当断开重连
+    }
+
+    private long outstandingPing = 0; // 等待pong的ping时间戳，0表示没有
+    private int failedChecks = 0;
+    private int reconnectAttempts = 0;
+
+    // 新连接建立：清除上一个连接的心跳状态和重连次数
+    void onConnected() {
+        outstandingPing = 0;
+        failedChecks = 0;
+        reconnectAttempts = 0;
+    }
+
+    void onPingSent(long sentAt) {
+        outstandingPing = sentAt;
+    }
+
+    // 收到pong，echo为pong回显的ping时间戳（没有回显时为0）；返回是否是当前等待的那次ping的回复
+    boolean onPong(long echo) {
+        if (outstandingPing == 0 || (echo != 0 && echo != outstandingPing)) {
+            return false;
+        }
+        outstandingPing = 0;
+        failedChecks = 0;
+        return true;
+    }
+
+    // 最近一次ping发出后经过pong超时调用
+    Verdict onPongTimeout(int requiredFailedChecks) {
+        if (outstandingPing == 0) {
+            failedChecks = 0;
+            return Verdict.ALIVE;
+        }
+        outstandingPing = 0;
+        return recordFailure(requiredFailedChecks) ? Verdict.DEAD : Verdict.SUSPECT;
+    }
+
+    // 其他检查（发送心跳出错、状态冷却期内的断开）也计入同一个失败次数，返回是否达到上限
+    boolean recordFailure(int requiredFailedChecks) {
+        failedChecks++;
+        return failedChecks >= requiredFailedChecks;
+    }
+
+    void clearFailures() {
+        failedChecks = 0;
+    }
+
+    int failedChecks() {
+        return failedChecks;
+    }
+
+    // 连接异常关闭后的重连等待，每调用一次尝试次数加一
+    long nextReconnectDelay(long baseDelay) {
+        return ReconnectBackoff.reconnectDelay(reconnectAttempts++, baseDelay);
+    }
+
+    // 断开期间自动重连的等待，每调用一次尝试次数加一
+    long nextAutoReconnectDelay(long baseDelay, long maxDelay) {
+        return ReconnectBackoff.autoReconnectDelay(reconnectAttempts++, baseDelay, maxDelay);
+    }
+
+    int reconnectAttempts() {
+        return reconnectAttempts;
+    }
+
+    void resetReconnectAttempts() {
+        reconnectAttempts = 0;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.wscontroller;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+// 日志列表，只为屏幕上可见的几行创建和绑定视图
+class LogAdapter extends RecyclerView.Adapter<LogAdapter.LineHolder> {
+    private final LogBuffer buffer;
+
+    LogAdapter(LogBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @NonNull
+    @Override
+    public LineHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_log, parent, false);
+        return new LineHolder((TextView) view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull LineHolder holder, int position) {
+        holder.text.setText(buffer.get(position));
+    }
+
+    @Override
+    public int getItemCount() {
+        return buffer.size();
+    }
+
+    static class LineHolder extends RecyclerView.ViewHolder {
+        final TextView text;
+
+        LineHolder(TextView text) {
+            super(text);
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.wscontroller;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+// 固定容量的日志环形缓冲区，满了以后覆盖最旧的一条
+// 每条日志在加入时格式化一次，同一秒内的日志复用时间戳字符串；只在主线程访问
+final class LogBuffer {
+    private final String[] lines;
+    private int head = 0; // 最旧一条的位置
+    private int size = 0;
+
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
+    private long cachedSecond = -1;
+    private String cachedTimestamp;
+
+    LogBuffer(int capacity) {
+        lines = new String[capacity];
+    }
+
+    int capacity() {
+        return lines.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // position为0是最旧的一条
+    String get(int position) {
+        return lines[(head + position) % lines.length];
+    }
+
+    // 加入一条日志，返回是否覆盖了最旧的一条
+    boolean add(long time, String message) {
+        String line = timestamp(time) + " - " + message;
+        if (size < lines.length) {
+            lines[(head + size) % lines.length] = line;
+            size++;
+            return false;
+        }
+        lines[head] = line;
+        head = (head + 1) % lines.length;
+        return true;
+    }
+
+    void clear() {
+        Arrays.fill(lines, null);
+        head = 0;
+        size = 0;
+    }
+
+    private String timestamp(long time) {
+        long second = time / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTimestamp = timeFormat.format(new Date(time));
+        }
+        return cachedTimestamp;
+    }
+}
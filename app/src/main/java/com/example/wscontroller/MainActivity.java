@@ -11,24 +11,25 @@ import android.widget.Button;
 import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
-import android.widget.ScrollView;
 import android.provider.Settings;
 import android.util.Log;
+import android.view.Choreographer;
 
 import androidx.activity.ComponentActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.core.content.pm.PackageInfoCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 import android.Manifest;
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.IntentFilter;
 import android.os.Handler;
+import android.os.Looper;
 import android.net.ConnectivityManager;
 import android.net.Network;
 
@@ -36,11 +37,11 @@ import java.io.File;
 import java.net.HttpURLConnection;
 import java.net.URL;
 
-public class MainActivity extends ComponentActivity implements WebSocketManager.MessageListener {
+public class MainActivity extends ComponentActivity {
 
     private TextView deviceNumberTextView;
     private TextView connectionStatusTextView;
-    private TextView logTextView;
+    private RecyclerView logRecyclerView;
     private Button setDeviceNumberButton;
     private Button connectButton;
     private Button clearLogButton;
@@ -51,66 +52,68 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
     // 记录UI状态与实际连接状态不一致的开始时间
     private long lastStateDifferenceTime = 0;
     private long lastReconnectAttemptTime = 0;
+    private boolean fullyDrawnReported = false;
 
-    // 广播接收器
-    private final BroadcastReceiver logReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            if ("com.example.wscontroller.LOG_MESSAGE".equals(intent.getAction())) {
-                String message = intent.getStringExtra("message");
-                if (message != null) {
-                    addLog(message);
-                }
-            }
-        }
-    };
-
-    // 网络状态变化广播接收器
-    private final BroadcastReceiver networkStateReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            if ("com.example.wscontroller.NETWORK_STATE_CHANGED".equals(intent.getAction())) {
-                Log.d("MainActivity", "收到网络状态变化广播");
-                boolean forceReconnect = intent.getBooleanExtra("FORCE_RECONNECT", false);
-                handleNetworkStateChanged(forceReconnect);
-            }
+    // 事件订阅，onDestroy时取消
+    private final List<EventTopic<?>.Subscription> subscriptions = new ArrayList<>();
+
+    // 日志保存在固定容量的环形缓冲区中，由RecyclerView只渲染可见的几行
+    private static final int MAX_LOG_LINES = 500; // 最大日志行数
+    private final LogBuffer logBuffer = new LogBuffer(MAX_LOG_LINES);
+    private LogAdapter logAdapter;
+
+    // 任意线程加入的日志先放在这里，每帧最多刷新一次列表
+    private static final class PendingLog {
+        final long time;
+        final String message;
+
+        PendingLog(long time, String message) {
+            this.time = time;
+            this.message = message;
         }
-    };
+    }
 
-    // 在MainActivity中添加日志限制
-    private static final int MAX_LOG_LINES = 100; // 最大日志行数
+    private List<PendingLog> pendingLogs = new ArrayList<>();
+    private boolean logFrameScheduled = false;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Choreographer.FrameCallback logFrameCallback = frameTimeNanos -> flushPendingLogs();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // 关键阶段只做首帧和连接需要的事：显示界面、启动服务、订阅连接状态；
+        // 权限、无障碍检查和各种定期检查等第一帧画完后再做
+        StartupTracer.section("main.critical", this::initCritical);
+        Choreographer.getInstance().postFrameCallback(frameTimeNanos ->
+                mainHandler.post(() -> StartupTracer.section("main.deferred", this::initDeferred)));
+    }
+
+    private void initCritical() {
         setContentView(R.layout.activity_main);
 
         // 初始化视图
         deviceNumberTextView = findViewById(R.id.deviceNumberTextView);
         connectionStatusTextView = findViewById(R.id.connectionStatusTextView);
-        logTextView = findViewById(R.id.logTextView);
+        logRecyclerView = findViewById(R.id.logRecyclerView);
         setDeviceNumberButton = findViewById(R.id.setDeviceNumberButton);
         connectButton = findViewById(R.id.connectButton);
         clearLogButton = findViewById(R.id.clearLogButton);
         
-        // 设置日志滚动视图的触摸事件
-        ScrollView logScrollView = findViewById(R.id.logScrollView);
+        // 日志列表
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        layoutManager.setStackFromEnd(true);
+        logRecyclerView.setLayoutManager(layoutManager);
+        logRecyclerView.setItemAnimator(null); // 日志频繁插入，不需要动画
+        logAdapter = new LogAdapter(logBuffer);
+        logRecyclerView.setAdapter(logAdapter);
         // 禁用父视图的拦截
-        ((View) logScrollView.getParent()).setOnTouchListener((v, event) -> {
-            logScrollView.getParent().requestDisallowInterceptTouchEvent(true);
+        ((View) logRecyclerView.getParent()).setOnTouchListener((v, event) -> {
+            logRecyclerView.getParent().requestDisallowInterceptTouchEvent(true);
             return false;
         });
 
-        // 初始化管理器
-        deviceNumberManager = new DeviceNumberManager(this);
-        webSocketManager = new WebSocketManager(this);
-        webSocketManager.setMessageListener(this);
-
-        // 初始化连接状态UI
-        updateConnectionStatusDisplay();
-        
-        // 添加日志
-        addLog("应用启动，初始连接状态: " + (webSocketManager.isConnected() ? "已连接" : "未连接"));
+        // 设备编号在App启动时已在后台线程读取；WebSocketManager由前台服务创建，界面用到时再取
+        deviceNumberManager = DeviceNumberManager.get(this);
 
         // 更新UI显示当前设备编号
         updateDeviceNumberDisplay();
@@ -118,34 +121,44 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
         // 设置按钮点击事件
         setDeviceNumberButton.setOnClickListener(v -> showDeviceNumberDialog());
         connectButton.setOnClickListener(v -> {
-            if (webSocketManager.isConnected()) {
+            if (webSocketManager().isConnected()) {
                 // 添加日志
                 addLog("用户点击断开连接");
-                webSocketManager.disconnect();
+                webSocketManager().disconnect();
             } else {
                 // 添加日志
                 addLog("用户点击连接服务器");
-                webSocketManager.connect();
+                webSocketManager().connect();
             }
             
             // 添加状态检查日志
             new Handler().postDelayed(() -> {
                 String uiStatus = connectionStatusTextView.getText().toString();
                 addLog("连接操作后状态检查: WebSocket状态=" + 
-                       (webSocketManager.isConnected() ? "已连接" : "未连接") + 
+                       (webSocketManager().isConnected() ? "已连接" : "未连接") + 
                        ", UI显示=" + uiStatus);
             }, 2000);
         });
         clearLogButton.setOnClickListener(v -> clearLog());
 
-        // 如果已有设备编号，自动连接
-        if (deviceNumberManager.hasDeviceNumber()) {
-            webSocketManager.connect();
-        }
-
-        // 在适当的位置（如onCreate或设备编号设置后）
+        // 启动前台服务，已有设备编号时由服务建立连接
         startWebSocketService();
 
+        // 订阅WebSocketManager和无障碍服务发布的事件，回调在发布者线程上执行；
+        // 连接状态会立即重放当前值，初始显示不需要等WebSocketManager创建
+        subscriptions.add(Events.MESSAGE.subscribe(this::onMessageReceived));
+        subscriptions.add(Events.CONNECTION_STATE.subscribe(this::onConnectionStateChanged));
+        subscriptions.add(Events.ACCESSIBILITY_REQUIRED.subscribe(reason -> onAccessibilityRequired()));
+        subscriptions.add(Events.NETWORK_STATE_CHANGED.subscribe(forceReconnect -> {
+            Log.d("MainActivity", "收到网络状态变化事件");
+            handleNetworkStateChanged(forceReconnect);
+        }));
+    }
+
+    private void initDeferred() {
+        // 添加日志
+        addLog("应用启动，初始连接状态: " + (webSocketManager().isConnected() ? "已连接" : "未连接"));
+
         // 请求通知权限（Android 13及以上需要）
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
             if (ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
@@ -158,18 +171,6 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
             showAccessibilityServiceDialog();
         }
 
-        try {
-            // 注册广播接收器接收日志消息
-            IntentFilter filter = new IntentFilter("com.example.wscontroller.LOG_MESSAGE");
-            registerReceiver(logReceiver, filter);
-            
-            // 注册广播接收器接收网络状态变化
-            IntentFilter networkFilter = new IntentFilter("com.example.wscontroller.NETWORK_STATE_CHANGED");
-            registerReceiver(networkStateReceiver, networkFilter);
-        } catch (Exception e) {
-            Log.e("MainActivity", "注册广播接收器失败: " + e.getMessage());
-        }
-
         // 注册网络状态监听器
         registerNetworkCallback();
 
@@ -180,14 +181,24 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
         startUIConsistencyCheck();
     }
 
+    // 连接由前台服务持有，界面第一次用到时才取同一个实例
+    private WebSocketManager webSocketManager() {
+        if (webSocketManager == null) {
+            webSocketManager = WebSocketManager.getInstance(this);
+        }
+        return webSocketManager;
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
         // 更新设备编号显示
         updateDeviceNumberDisplay();
         
-        // 更新连接状态显示
-        updateConnectionStatusDisplay();
+        // 更新连接状态显示；首次启动时由连接状态订阅负责，不在首帧前创建WebSocketManager
+        if (webSocketManager != null) {
+            updateConnectionStatusDisplay();
+        }
     }
 
     // 更新设备编号显示
@@ -214,91 +225,85 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
                 .setTitle("设置设备编号")
                 .setView(dialogView)
                 .setPositiveButton("保存", (dialog, which) -> {
-                    String number = deviceNumberEditText.getText().toString().trim();
-                    if (number.matches("\\d{3}")) {
+                    String number = deviceNumberEditText.getText().toString().trim().toLowerCase(Locale.ROOT);
+                    if (DeviceIds.isValid(number)) {
                         try {
                             // 保存设备编号
                             deviceNumberManager.saveDeviceNumber(number);
                             // 立即更新显示
                             updateDeviceNumberDisplay();
                             // 如果编号变化了，更新WebSocket连接
-                            webSocketManager.updateDeviceNumber(number);
+                            webSocketManager().updateDeviceNumber(number);
                             addLog("设备编号已更新为: " + number);
                         } catch (IllegalArgumentException e) {
                             Toast.makeText(this, e.getMessage(), Toast.LENGTH_SHORT).show();
                         }
                     } else {
-                        Toast.makeText(this, "设备编号必须是三位数字", Toast.LENGTH_SHORT).show();
+                        Toast.makeText(this, DeviceIds.FORMAT_HINT, Toast.LENGTH_SHORT).show();
                     }
                 })
                 .setNegativeButton("取消", null)
                 .show();
     }
 
-    // 修改addLog方法
+    // 添加一条日志，可以在任意线程调用；列表在下一帧统一刷新
     private void addLog(String message) {
-        try {
-            SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
-            String timestamp = sdf.format(new Date());
-            String logEntry = timestamp + " - " + message + "\n";
-
-            runOnUiThread(() -> {
-                try {
-                    if (logTextView != null) {
-                        // 添加新日志
-                        logTextView.append(logEntry);
-                        
-                        // 检查日志行数是否超过限制
-                        if (countLines(logTextView.getText().toString()) > MAX_LOG_LINES) {
-                            trimLog();
-                        }
-                        
-                        // 自动滚动到底部
-                        ScrollView scrollView = findViewById(R.id.logScrollView);
-                        if (scrollView != null) {
-                            scrollView.post(() -> scrollView.fullScroll(View.FOCUS_DOWN));
-                        }
-                    }
-                } catch (Exception e) {
-                    Log.e("MainActivity", "更新日志UI失败: " + e.getMessage());
-                }
-            });
-        } catch (Exception e) {
-            Log.e("MainActivity", "添加日志失败: " + e.getMessage());
+        PendingLog log = new PendingLog(System.currentTimeMillis(), message);
+        boolean schedule;
+        synchronized (this) {
+            pendingLogs.add(log);
+            schedule = !logFrameScheduled;
+            logFrameScheduled = true;
+        }
+        if (schedule) {
+            // Choreographer需要在主线程获取
+            mainHandler.post(() -> Choreographer.getInstance().postFrameCallback(logFrameCallback));
         }
     }
 
-    // 计算日志行数
-    private int countLines(String text) {
-        if (text == null || text.isEmpty()) {
-            return 0;
+    // 把这一帧内积攒的日志一次性加入缓冲区，只通知变化的范围
+    private void flushPendingLogs() {
+        List<PendingLog> batch;
+        synchronized (this) {
+            batch = pendingLogs;
+            pendingLogs = new ArrayList<>();
+            logFrameScheduled = false;
+        }
+        if (batch.isEmpty() || logAdapter == null) {
+            return;
         }
-        return text.split("\n").length;
-    }
 
-    // 裁剪日志，只保留最新的日志
-    private void trimLog() {
-        String currentLog = logTextView.getText().toString();
-        String[] lines = currentLog.split("\n");
-        
-        // 如果行数超过最大限制，只保留后面的部分
-        if (lines.length > MAX_LOG_LINES) {
-            StringBuilder newLog = new StringBuilder();
-            for (int i = lines.length - MAX_LOG_LINES; i < lines.length; i++) {
-                newLog.append(lines[i]).append("\n");
+        // 用户往上翻看时不自动滚动
+        boolean atBottom = !logRecyclerView.canScrollVertically(1);
+        int before = logBuffer.size();
+        int evicted = 0;
+        for (PendingLog log : batch) {
+            if (logBuffer.add(log.time, log.message)) {
+                evicted++;
             }
-            logTextView.setText(newLog.toString());
+        }
+
+        if (evicted >= before && evicted > 0) {
+            // 这一批超过了缓冲区容量，原有内容全部被覆盖
+            logAdapter.notifyDataSetChanged();
+        } else {
+            if (evicted > 0) {
+                logAdapter.notifyItemRangeRemoved(0, evicted);
+            }
+            logAdapter.notifyItemRangeInserted(before - evicted, batch.size());
+        }
+
+        if (atBottom) {
+            logRecyclerView.scrollToPosition(logBuffer.size() - 1);
         }
     }
 
-    // WebSocket消息监听回调
-    @Override
-    public void onMessageReceived(String message) {
+    // WebSocketManager发布的消息
+    private void onMessageReceived(String message) {
         addLog("收到消息: " + message);
     }
 
-    @Override
-    public void onConnectionStateChanged(boolean connected) {
+    private void onConnectionStateChanged(boolean connected) {
         runOnUiThread(() -> {
             // 添加日志记录状态变化
             addLog("连接状态变化: " + (connected ? "已连接" : "未连接"));
@@ -307,6 +312,11 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
                 connectionStatusTextView.setText("已连接");
                 connectionStatusTextView.setTextColor(getResources().getColor(android.R.color.holo_green_dark));
                 connectButton.setText("断开连接");
+                // 启动完成的标志是连接成功，Macrobenchmark的timeToFullDisplay即启动到连接的耗时
+                if (!fullyDrawnReported) {
+                    fullyDrawnReported = true;
+                    reportFullyDrawn();
+                }
             } else {
                 connectionStatusTextView.setText("未连接");
                 connectionStatusTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark));
@@ -318,15 +328,11 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        // 应用关闭时断开连接
-        webSocketManager.disconnect();
-        
-        try {
-            unregisterReceiver(logReceiver);
-            unregisterReceiver(networkStateReceiver);
-        } catch (Exception e) {
-            Log.e("MainActivity", "注销广播接收器失败: " + e.getMessage());
+        // 连接属于前台服务，界面关闭时保持连接
+        for (EventTopic<?>.Subscription subscription : subscriptions) {
+            subscription.cancel();
         }
+        subscriptions.clear();
     }
 
     // 在适当的位置（如onCreate或设备编号设置后）
@@ -341,12 +347,15 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
 
     // 添加清理日志方法
     private void clearLog() {
-        logTextView.setText("");
+        synchronized (this) {
+            pendingLogs.clear();
+        }
+        logBuffer.clear();
+        logAdapter.notifyDataSetChanged();
         addLog("日志已清除");
     }
 
-    @Override
-    public void onAccessibilityRequired() {
+    private void onAccessibilityRequired() {
         runOnUiThread(() -> {
             new AlertDialog.Builder(this)
                     .setTitle("需要无障碍服务权限")
@@ -394,7 +403,7 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
 
     // 更新连接状态显示
     private void updateConnectionStatusDisplay() {
-        boolean connected = webSocketManager.isConnected();
+        boolean connected = webSocketManager().isConnected();
         connectionStatusTextView.setText(connected ? "已连接" : "未连接");
         connectionStatusTextView.setTextColor(getResources().getColor(
                 connected ? android.R.color.holo_green_dark : android.R.color.holo_red_dark));
@@ -408,39 +417,11 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
             connectionStatusTextView.setText("未连接");
             connectionStatusTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark));
             connectButton.setText("连接服务器");
-            addLog("网络状态已变化，连接已断开");
+            addLog("网络状态已变化，等待网络可用后立即重连");
         });
         
-        // 强制断开连接
-        webSocketManager.forceDisconnect();
-        
-        // 等待网络恢复后重新连接
-        new Handler().postDelayed(() -> {
-            addLog("等待网络恢复...");
-            // 再等待5秒后尝试重连
-            new Handler().postDelayed(() -> {
-                addLog("尝试重新连接...");
-                webSocketManager.connect();
-                
-                // 再次检查连接状态
-                new Handler().postDelayed(() -> {
-                    addLog("执行连接状态验证...");
-                    webSocketManager.checkConnectionWithServer();
-                    
-                    // 最后一次检查
-                    new Handler().postDelayed(() -> {
-                        if (!webSocketManager.isConnected()) {
-                            addLog("连接仍未建立，再次尝试...");
-                            webSocketManager.connect();
-                        } else {
-                            addLog("连接已建立，验证连接状态...");
-                            webSocketManager.checkConnectionWithServer();
-                        }
-                        updateConnectionStatusDisplay();
-                    }, 3000);
-                }, 3000);
-            }, 5000);
-        }, 2000);
+        // 断开旧连接；网络已经可用时立即重连，否则由WebSocketManager的网络回调在网络恢复时重连
+        webSocketManager().reconnectWhenNetworkReady();
     }
 
     // 在onNewIntent方法中处理从飞行模式返回
@@ -465,13 +446,10 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
                         super.onAvailable(network);
                         Log.d("MainActivity", "网络可用");
                         
-                        // 如果当前显示未连接，尝试重连
+                        // 重连由WebSocketManager的网络回调立即发起，这里只更新日志
                         runOnUiThread(() -> {
                             if (connectionStatusTextView.getText().toString().equals("未连接")) {
-                                addLog("网络已恢复，尝试重新连接...");
-                                new Handler().postDelayed(() -> {
-                                    webSocketManager.connect();
-                                }, 2000);
+                                addLog("网络已恢复，正在重新连接...");
                             }
                         });
                     }
@@ -494,17 +472,6 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
         }
     }
 
-    // 在适当的生命周期方法中清理缓存
-    @Override
-    protected void onPause() {
-        super.onPause();
-        
-        // 如果日志过长，在页面不可见时裁剪
-        if (logTextView != null && countLines(logTextView.getText().toString()) > MAX_LOG_LINES / 2) {
-            trimLog();
-        }
-    }
-
     // 添加定期清理缓存的方法
     private void scheduleCacheCleaning() {
         new Handler().postDelayed(() -> {
@@ -543,9 +510,9 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
             @Override
             public void run() {
                 // 检查连接状态
-                if (webSocketManager.isConnected()) {
+                if (webSocketManager().isConnected()) {
                     // 如果显示已连接，执行额外检查
-                    webSocketManager.checkConnectionWithServer();
+                    webSocketManager().checkConnectionWithServer();
                 } else if (connectionStatusTextView.getText().toString().equals("已连接")) {
                     // UI显示已连接但实际未连接，修正状态并触发重连
                     runOnUiThread(() -> {
@@ -556,23 +523,24 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
                         
                         // 添加：触发重连
                         addLog("尝试重新建立连接...");
-                        webSocketManager.connect();
+                        webSocketManager().connect();
                     });
-                } else if (!webSocketManager.isConnected() && 
+                } else if (!webSocketManager().isConnected() && 
                            connectionStatusTextView.getText().toString().equals("未连接")) {
                     // 添加：如果UI和实际状态都是未连接，定期尝试重连
                     long timeSinceLastReconnect = System.currentTimeMillis() - lastReconnectAttemptTime;
                     if (timeSinceLastReconnect > 60000) { // 至少60秒尝试一次重连
                         addLog("连接已断开超过1分钟，尝试自动重连...");
                         lastReconnectAttemptTime = System.currentTimeMillis();
-                        webSocketManager.connect();
+                        webSocketManager().connect();
                     }
                 }
                 
                 // 继续下一次检查
-                new Handler().postDelayed(this, 20000); // 每20秒检查一次
+                // 默认每20秒检查一次，间隔来自运行参数
+                new Handler().postDelayed(this, TuningConfig.current().get(TuningConfig.Key.UI_CHECK_INTERVAL));
             }
-        }, 20000); // 首次延迟20秒
+        }, TuningConfig.current().get(TuningConfig.Key.UI_CHECK_INTERVAL));
     }
 
     // 改进UI状态一致性检查，添加重连逻辑
@@ -581,7 +549,7 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
             @Override
             public void run() {
                 // 检查WebSocketManager状态与UI显示是否一致
-                boolean managerConnected = webSocketManager.isConnected();
+                boolean managerConnected = webSocketManager().isConnected();
                 boolean uiShowsConnected = connectionStatusTextView.getText().toString().equals("已连接");
                 
                 // 如果不一致，且差异持续超过10秒，才强制更新UI
@@ -600,7 +568,7 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
                         // 添加：如果实际未连接但UI显示已连接，触发重连
                         if (!managerConnected && uiShowsConnected) {
                             addLog("检测到连接已断开，尝试重新连接...");
-                            webSocketManager.connect();
+                            webSocketManager().connect();
                         }
                     }
                 } else {
@@ -617,7 +585,7 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
     // 在MainActivity中添加实际连接测试方法
     private void testActualConnection() {
         // 如果UI显示未连接，但我们怀疑实际可能已连接
-        if (!webSocketManager.isConnected()) {
+        if (!webSocketManager().isConnected()) {
             addLog("UI显示未连接，执行实际连接测试...");
             
             // 请求服务器发送一条测试消息
@@ -642,9 +610,9 @@ public class MainActivity extends ComponentActivity implements WebSocketManager.
                         // 3秒后检查是否需要强制更新连接状态
                         new Handler().postDelayed(() -> {
                             // 如果在这期间连接状态已更新，不需要操作
-                            if (!webSocketManager.isConnected()) {
+                            if (!webSocketManager().isConnected()) {
                                 // 强制重新验证连接
-                                webSocketManager.verifyConnection();
+                                webSocketManager().verifyConnection();
                             }
                         }, 3000);
                     }
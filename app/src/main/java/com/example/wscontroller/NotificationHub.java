@@ -0,0 +1,183 @@
+package com.example.wscontroller;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+// 所有通知的统一出口
+// 通知渠道只在App启动时创建一次。收到的指令合并成一条通知原地更新
+// （"最近1分钟收到12条指令"），刷新频率由令牌桶限制；令牌不足时只记录，
+// 等令牌恢复后一次性刷新成最新内容，避免大量通知拖慢系统界面和无障碍操作。
+public class NotificationHub {
+    public static final String CHANNEL_MESSAGE = "message_channel";
+    public static final String CHANNEL_CONNECTION = "connection_channel";
+    public static final String CHANNEL_SERVICE = "websocket_channel";
+
+    private static final String MESSAGE_GROUP = "com.example.wscontroller.MESSAGES";
+    private static final int MESSAGE_ID = 2001;
+    private static final int CONNECTION_ID = 1001;
+    private static final long WINDOW_MS = 60000; // 合并统计的时间窗口
+    private static final int PREVIEW_LINES = 5; // 展开后显示最近几条内容
+    private static final int BURST = 3; // 令牌桶容量
+    private static final double REFRESH_PER_SECOND = 0.5; // 持续状态下每2秒最多刷新一次
+
+    private static NotificationHub instance;
+
+    private final Context context;
+    private final NotificationManagerCompat notificationManager;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final TokenBucket bucket = new TokenBucket(BURST, REFRESH_PER_SECOND);
+    private final Runnable flushRunnable = this::flush;
+
+    private final ArrayDeque<Long> arrivals = new ArrayDeque<>(); // 窗口内每条指令的到达时间
+    private final ArrayDeque<String> previews = new ArrayDeque<>();
+    private boolean messageDirty = false;
+    private boolean connectionDirty = false;
+    private boolean flushScheduled = false;
+
+    private NotificationHub(Context context) {
+        this.context = context;
+        this.notificationManager = NotificationManagerCompat.from(context);
+    }
+
+    // 服务启动前台前调用一次，创建通知渠道
+    public static synchronized void init(Context context) {
+        if (instance == null) {
+            instance = new NotificationHub(context.getApplicationContext());
+            instance.createChannels();
+        }
+    }
+
+    public static synchronized NotificationHub get() {
+        if (instance == null) {
+            init(App.getContext());
+        }
+        return instance;
+    }
+
+    private void createChannels() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager manager = context.getSystemService(NotificationManager.class);
+            manager.createNotificationChannels(Arrays.asList(
+                    new NotificationChannel(CHANNEL_MESSAGE, "消息通知", NotificationManager.IMPORTANCE_HIGH),
+                    new NotificationChannel(CHANNEL_CONNECTION, "连接状态通知", NotificationManager.IMPORTANCE_DEFAULT),
+                    new NotificationChannel(CHANNEL_SERVICE, "WebSocket Service", NotificationManager.IMPORTANCE_LOW)));
+        }
+    }
+
+    // 记录一条收到的指令，可以在任意线程调用
+    public synchronized void postMessage(String content) {
+        long now = System.currentTimeMillis();
+        arrivals.addLast(now);
+        trimWindow(now);
+        previews.addFirst(content);
+        while (previews.size() > PREVIEW_LINES) {
+            previews.removeLast();
+        }
+        messageDirty = true;
+        requestFlush();
+    }
+
+    // 连接成功通知，频繁重连时同样合并
+    public synchronized void postConnected() {
+        connectionDirty = true;
+        requestFlush();
+    }
+
+    private void requestFlush() {
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+        handler.postDelayed(flushRunnable, bucket.millisUntilToken());
+    }
+
+    private void flush() {
+        List<Notification> messages = new ArrayList<>();
+        boolean connection;
+        synchronized (this) {
+            flushScheduled = false;
+            if (!messageDirty && !connectionDirty) {
+                return;
+            }
+            if (!bucket.tryAcquire()) {
+                requestFlush();
+                return;
+            }
+            if (messageDirty) {
+                messages.add(buildMessageNotification());
+            }
+            connection = connectionDirty;
+            messageDirty = false;
+            connectionDirty = false;
+        }
+
+        try {
+            for (Notification notification : messages) {
+                notificationManager.notify(MESSAGE_ID, notification);
+            }
+            if (connection) {
+                notificationManager.notify(CONNECTION_ID, buildConnectionNotification());
+            }
+        } catch (SecurityException e) {
+            Log.e("WebSocket", "没有通知权限", e);
+        }
+    }
+
+    private Notification buildMessageNotification() {
+        trimWindow(System.currentTimeMillis());
+        int count = Math.max(arrivals.size(), 1);
+        String latest = previews.peekFirst();
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_MESSAGE)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentText(latest)
+                .setNumber(count)
+                .setGroup(MESSAGE_GROUP)
+                .setOnlyAlertOnce(true) // 原地更新时不重复响铃和弹出
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setAutoCancel(true);
+
+        if (count == 1) {
+            builder.setContentTitle("收到新消息");
+        } else {
+            builder.setContentTitle("最近1分钟收到" + count + "条指令");
+            NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+            for (String line : previews) {
+                style.addLine(line);
+            }
+            builder.setStyle(style);
+        }
+        return builder.build();
+    }
+
+    private Notification buildConnectionNotification() {
+        return new NotificationCompat.Builder(context, CHANNEL_CONNECTION)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle("连接成功")
+                .setContentText("已成功连接到服务器")
+                .setOnlyAlertOnce(true)
+                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                .setAutoCancel(true)
+                .build();
+    }
+
+    private void trimWindow(long now) {
+        while (!arrivals.isEmpty() && now - arrivals.peekFirst() > WINDOW_MS) {
+            arrivals.removeFirst();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.wscontroller;
+
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// 与中转服务器之间的消息格式：解析收到的消息、判断要执行的指令、构造设备发出的帧
+// 不依赖Android（org.json在JVM上用同名的库），jmh和simulator模块直接编译这个文件
+public final class Protocol {
+    public enum Command {
+        PONG,
+        NOT_JSON, // 不是JSON也不含切换网络文本
+        NOT_FOR_DEVICE, // targetDevice不是本设备
+        TOGGLE_AIRPLANE,
+        SET_GROUPS,
+        SET_ENDPOINTS,
+        LOG_PULL,
+        TUNING_UPDATE,
+        SET_ROTATION,
+        SWITCH_NETWORK,
+        UNKNOWN
+    }
+
+    public static final String SWITCH_NETWORK_TEXT = "请切换网络";
+
+    private Protocol() {
+    }
+
+    // 不是JSON时返回null
+    public static JSONObject parse(String text) {
+        try {
+            return new JSONObject(text);
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    // json是parse的结果，null表示不是JSON，这时只按文本匹配切换网络指令
+    public static Command classify(String message, JSONObject json, String deviceId) {
+        if (json == null) {
+            return message.contains(SWITCH_NETWORK_TEXT) ? Command.SWITCH_NETWORK : Command.NOT_JSON;
+        }
+        if ("pong".equals(json.optString("type", ""))) {
+            return Command.PONG;
+        }
+        String targetDevice = json.optString("targetDevice");
+        if (!targetDevice.isEmpty() && !targetDevice.equals(deviceId)) {
+            return Command.NOT_FOR_DEVICE;
+        }
+        switch (json.optString("action")) {
+            case "toggleAirplane":
+                return Command.TOGGLE_AIRPLANE;
+            case "set_groups":
+                return Command.SET_GROUPS;
+            case "set_endpoints":
+                return Command.SET_ENDPOINTS;
+            case "log_pull":
+                return Command.LOG_PULL;
+            case "tuning_update":
+                return Command.TUNING_UPDATE;
+            case "set_rotation":
+                return Command.SET_ROTATION;
+            default:
+                // 检查消息内容是否包含"请切换网络"
+                if (json.optString("content", "").contains(SWITCH_NETWORK_TEXT) || message.contains(SWITCH_NETWORK_TEXT)) {
+                    return Command.SWITCH_NETWORK;
+                }
+                return Command.UNKNOWN;
+        }
+    }
+
+    // 心跳帧，亮屏时每15秒一次，直接拼接字符串，不创建JSONObject
+    public static String ping(String deviceId, long timestamp) {
+        return "{\"type\":\"ping\",\"timestamp\":" + timestamp + ",\"deviceId\":" + JSONObject.quote(deviceId) + "}";
+    }
+
+    // 连接建立后的注册消息，带上当前运行参数和定时切换策略的版本，服务器据此判断是否需要重新下发
+    public static String register(String deviceNumber, List<String> groups, long tuningVersion,
+                                  long rotationVersion, long timestamp) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("type", "register");
+        json.put("deviceNumber", deviceNumber);
+        json.put("groups", new JSONArray(groups));
+        json.put("tuningVersion", tuningVersion);
+        json.put("rotationVersion", rotationVersion);
+        json.put("timestamp", timestamp);
+        return json.toString();
+    }
+
+    public static String status(String status) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("type", "status");
+        json.put("status", status);
+        return json.toString();
+    }
+
+    // 收到运行参数后的确认，拒绝时带error
+    public static String tuningAck(long version, boolean applied, String error) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("type", "tuning_ack");
+        json.put("version", version);
+        json.put("applied", applied);
+        if (error != null) {
+            json.put("error", error);
+        }
+        return json.toString();
+    }
+
+    // 收到定时切换策略后的确认，拒绝时带error
+    public static String rotationAck(long version, boolean applied, String error) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("type", "rotation_ack");
+        json.put("version", version);
+        json.put("applied", applied);
+        if (error != null) {
+            json.put("error", error);
+        }
+        return json.toString();
+    }
+
+    // 设备按策略自行执行的一次切换的结果，和指令结果一样在重连后补报；
+    // scheduledAt是计划时间，和startedAt的差是闹钟被Doze推迟的时间
+    public static String rotationResult(long policyVersion, long seq, boolean success, String error,
+                                        long scheduledAt, long startedAt, long toggledAt, long now)
+            throws JSONException {
+        JSONObject timings = new JSONObject();
+        timings.put("toggleMs", toggledAt - startedAt);
+        timings.put("reconnectMs", now - toggledAt);
+        timings.put("deviceTotalMs", now - startedAt);
+
+        JSONObject json = new JSONObject();
+        json.put("type", "rotation_result");
+        json.put("policyVersion", policyVersion);
+        json.put("seq", seq);
+        json.put("success", success);
+        if (!success) {
+            json.put("error", error);
+        }
+        json.put("scheduledAt", scheduledAt);
+        json.put("startedAt", startedAt);
+        json.put("timings", timings);
+        return json.toString();
+    }
+
+    // wait模式指令的执行结果，失败时带error；耗时分为执行（切换网络）和重连两段
+    public static String result(String messageId, boolean success, String error,
+                                long receivedAt, long toggledAt, long now) throws JSONException {
+        JSONObject timings = new JSONObject();
+        timings.put("toggleMs", toggledAt - receivedAt);
+        timings.put("reconnectMs", now - toggledAt);
+        timings.put("deviceTotalMs", now - receivedAt);
+
+        JSONObject json = new JSONObject();
+        json.put("type", "result");
+        json.put("messageId", messageId);
+        json.put("success", success);
+        if (success) {
+            json.put("result", "network_switched");
+        } else {
+            json.put("error", error);
+        }
+        json.put("timings", timings);
+        return json.toString();
+    }
+}
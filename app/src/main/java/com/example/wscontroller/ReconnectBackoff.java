@@ -0,0 +1,29 @@
+package com.example.wscontroller;
+
+// 重连等待时间，只依赖尝试次数，jmh模块直接编译这个文件
+final class ReconnectBackoff {
+    static final long BASE_DELAY = 5000; // 5秒
+    static final long MAX_AUTO_DELAY = 120000; // 自动重连最多等2分钟
+
+    private ReconnectBackoff() {
+    }
+
+    // 自动重连：5秒起每次翻倍，最多2分钟
+    static long autoReconnectDelay(int attempts) {
+        return autoReconnectDelay(attempts, BASE_DELAY, MAX_AUTO_DELAY);
+    }
+
+    // 基础延迟和上限由运行参数下发
+    static long autoReconnectDelay(int attempts, long baseDelay, long maxDelay) {
+        return Math.min(baseDelay << Math.min(attempts, 5), maxDelay);
+    }
+
+    // 连接异常关闭后的重连：底数1.5的幂先取整再乘基础延迟，和原来的行为一致
+    static long reconnectDelay(int attempts) {
+        return reconnectDelay(attempts, BASE_DELAY);
+    }
+
+    static long reconnectDelay(int attempts, long baseDelay) {
+        return baseDelay * (long) Math.pow(1.5, attempts);
+    }
+}
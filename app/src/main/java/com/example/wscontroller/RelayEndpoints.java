@@ -0,0 +1,201 @@
+package com.example.wscontroller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+// 中转服务器地址列表
+// 按握手延迟排序，连接失败的地址进入冷却期，冷却期内排在所有可用地址之后
+public class RelayEndpoints {
+    static final long PROBE_TIMEOUT_MS = 2000; // 单个地址探测超时
+    static final long FAILURE_COOLDOWN_MS = 30000; // 连接失败后30秒内不再优先选择
+    static final long UNREACHABLE = Long.MAX_VALUE;
+
+    private static class Endpoint {
+        final String url;
+        long latencyMs = UNREACHABLE - 1; // 未探测的地址排在探测成功的地址之后
+        long failedAt = 0;
+
+        Endpoint(String url) {
+            this.url = url;
+        }
+    }
+
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final LongSupplier clock;
+
+    public RelayEndpoints(List<String> urls) {
+        this(urls, System::currentTimeMillis);
+    }
+
+    RelayEndpoints(List<String> urls, LongSupplier clock) {
+        this.clock = clock;
+        setEndpoints(urls);
+    }
+
+    // 更新地址列表，保留已知地址的探测结果
+    public synchronized void setEndpoints(List<String> urls) {
+        List<Endpoint> updated = new ArrayList<>();
+        for (String url : urls) {
+            Endpoint existing = find(url);
+            updated.add(existing != null ? existing : new Endpoint(url));
+        }
+        if (updated.isEmpty()) {
+            throw new IllegalArgumentException("中转服务器地址列表不能为空");
+        }
+        endpoints.clear();
+        endpoints.addAll(updated);
+    }
+
+    public synchronized List<String> urls() {
+        List<String> result = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            result.add(endpoint.url);
+        }
+        return result;
+    }
+
+    // 当前最优地址：不在冷却期的地址中延迟最低的；全部在冷却期时选最早失败的
+    public synchronized String current() {
+        long now = clock.getAsLong();
+        Endpoint best = null;
+        for (Endpoint endpoint : endpoints) {
+            if (best == null || isBetter(endpoint, best, now)) {
+                best = endpoint;
+            }
+        }
+        return best.url;
+    }
+
+    // 记录连接失败，返回是否还有不在冷却期的地址可以立即切换
+    public synchronized boolean markFailed(String url) {
+        long now = clock.getAsLong();
+        Endpoint endpoint = find(url);
+        if (endpoint != null) {
+            endpoint.failedAt = now;
+            endpoint.latencyMs = UNREACHABLE;
+        }
+        for (Endpoint candidate : endpoints) {
+            if (!inCooldown(candidate, now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 连接成功后清除失败记录
+    public synchronized void markConnected(String url) {
+        Endpoint endpoint = find(url);
+        if (endpoint != null) {
+            endpoint.failedAt = 0;
+        }
+    }
+
+    public synchronized long latencyOf(String url) {
+        Endpoint endpoint = find(url);
+        return endpoint != null ? endpoint.latencyMs : UNREACHABLE;
+    }
+
+    // 并发探测所有地址的握手延迟，阻塞直到全部完成或超时，不能在主线程调用
+    // 探测使用不复用连接的客户端，每次都包含完整的TCP（和TLS）握手
+    public void probe(OkHttpClient baseClient) {
+        List<String> urls = urls();
+        OkHttpClient probeClient = baseClient.newBuilder()
+                .connectionPool(new ConnectionPool(0, 1, TimeUnit.MILLISECONDS))
+                .callTimeout(PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(false)
+                .build();
+        CountDownLatch latch = new CountDownLatch(urls.size());
+
+        for (String url : urls) {
+            HttpUrl healthUrl = healthUrl(url);
+            if (healthUrl == null) {
+                recordProbe(url, UNREACHABLE);
+                latch.countDown();
+                continue;
+            }
+            long startedAt = System.nanoTime();
+            probeClient.newCall(new Request.Builder().url(healthUrl).build()).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    recordProbe(url, UNREACHABLE);
+                    latch.countDown();
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.close();
+                    long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+                    recordProbe(url, response.isSuccessful() ? latency : UNREACHABLE);
+                    latch.countDown();
+                }
+            });
+        }
+
+        try {
+            latch.await(PROBE_TIMEOUT_MS + 500, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ws://host:port/device/ -> http://host:port/health
+    static HttpUrl healthUrl(String endpoint) {
+        String httpUrl;
+        if (endpoint.regionMatches(true, 0, "ws:", 0, 3)) {
+            httpUrl = "http:" + endpoint.substring(3);
+        } else if (endpoint.regionMatches(true, 0, "wss:", 0, 4)) {
+            httpUrl = "https:" + endpoint.substring(4);
+        } else {
+            httpUrl = endpoint;
+        }
+        HttpUrl base = HttpUrl.parse(httpUrl);
+        return base != null ? base.resolve("/health") : null;
+    }
+
+    private synchronized void recordProbe(String url, long latencyMs) {
+        Endpoint endpoint = find(url);
+        if (endpoint != null) {
+            endpoint.latencyMs = latencyMs;
+            if (latencyMs != UNREACHABLE) {
+                endpoint.failedAt = 0;
+            }
+        }
+    }
+
+    private boolean isBetter(Endpoint a, Endpoint b, long now) {
+        boolean aCooling = inCooldown(a, now);
+        boolean bCooling = inCooldown(b, now);
+        if (aCooling != bCooling) {
+            return !aCooling;
+        }
+        if (aCooling) {
+            return a.failedAt < b.failedAt;
+        }
+        return a.latencyMs < b.latencyMs;
+    }
+
+    private boolean inCooldown(Endpoint endpoint, long now) {
+        return endpoint.failedAt > 0 && now - endpoint.failedAt < FAILURE_COOLDOWN_MS;
+    }
+
+    private Endpoint find(String url) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.url.equals(url)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.wscontroller;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.LongUnaryOperator;
+
+// 定时切换网络的时间计划，只做时间计算，不依赖Android，时钟、时区和随机数可注入。
+// 下一次切换 = 上一次开始切换的时间 + 间隔 ± 抖动，再依次推迟到满足每小时上限、避开静默时段。
+// 推迟到静默时段结束只会让最近一小时的次数变少，所以两步各做一次就够了。
+// 使用墙上时间：静默时段按本地时间判断，重启后保存的切换记录仍然有效。
+// 只在主线程使用，不做同步。
+final class RotationPlanner {
+    static final long HOUR = 60 * 60 * 1000;
+    private static final long DAY = 24 * HOUR;
+    private static final long MINUTE = 60 * 1000;
+
+    private final LongSupplier clock;
+    private final Supplier<TimeZone> timeZone; // 每次读取，系统时区改变后立即生效
+    private final LongUnaryOperator random; // 返回[0, bound]内的随机值
+    private final ArrayDeque<Long> recent = new ArrayDeque<>(); // 最近一小时内开始切换的时间，从旧到新
+    private RotationPolicy policy = RotationPolicy.DISABLED;
+    private long lastRotationAt = 0;
+    private long nextRotationAt = -1;
+    private long seq = 0;
+
+    RotationPlanner(LongSupplier clock, Supplier<TimeZone> timeZone, LongUnaryOperator random) {
+        this.clock = clock;
+        this.timeZone = timeZone;
+        this.random = random;
+    }
+
+    // 替换策略并重新计算下一次切换的时间，history为之前保存的切换记录（可以为空）
+    void setPolicy(RotationPolicy policy, List<Long> history) {
+        this.policy = policy;
+        recent.clear();
+        for (long at : history) {
+            recent.addLast(at);
+            lastRotationAt = Math.max(lastRotationAt, at);
+        }
+        plan();
+    }
+
+    RotationPolicy policy() {
+        return policy;
+    }
+
+    // 下一次切换的墙上时间，策略停用时为-1
+    long nextRotationAt() {
+        return nextRotationAt;
+    }
+
+    boolean isDue() {
+        return nextRotationAt >= 0 && clock.getAsLong() >= nextRotationAt;
+    }
+
+    // 开始一次切换，计入每小时上限并计划下一次，返回本次的序号（进程内递增，从1开始）。
+    // 切换失败也计入：失败多半是无障碍操作没有完成，马上重试大概率还是失败
+    long onRotationStarted() {
+        long now = clock.getAsLong();
+        recent.addLast(now);
+        lastRotationAt = now;
+        seq++;
+        plan();
+        return seq;
+    }
+
+    // 最近一小时的切换记录，保存后重启时传回setPolicy，进程重启不会绕过每小时上限
+    List<Long> history() {
+        prune(clock.getAsLong());
+        return new ArrayList<>(recent);
+    }
+
+    private void plan() {
+        if (!policy.enabled) {
+            nextRotationAt = -1;
+            return;
+        }
+        long now = clock.getAsLong();
+        prune(now);
+        long jitter = policy.jitterMillis > 0 ? random.applyAsLong(2 * policy.jitterMillis) - policy.jitterMillis : 0;
+        long at = lastRotationAt > 0 ? lastRotationAt + policy.intervalMillis + jitter : now + policy.intervalMillis + jitter;
+        at = Math.max(at, now);
+        at = applyHourlyLimit(at);
+        at = skipQuietHours(at);
+        nextRotationAt = at;
+    }
+
+    // 到at为止的一小时内已经达到上限时，推迟到其中最早的一次满一小时
+    private long applyHourlyLimit(long at) {
+        int limit = policy.maxPerHour;
+        if (limit <= 0 || recent.size() < limit) {
+            return at;
+        }
+        int skip = recent.size() - limit;
+        for (long startedAt : recent) {
+            if (skip-- == 0) {
+                return Math.max(at, startedAt + HOUR);
+            }
+        }
+        return at;
+    }
+
+    private long skipQuietHours(long at) {
+        if (!policy.hasQuietHours()) {
+            return at;
+        }
+        long local = at + timeZone.get().getOffset(at);
+        long sinceMidnight = Math.floorMod(local, DAY);
+        if (!policy.isQuiet((int) (sinceMidnight / MINUTE))) {
+            return at;
+        }
+        long end = policy.quietEndMinute * MINUTE;
+        long wait = end > sinceMidnight ? end - sinceMidnight : DAY - sinceMidnight + end;
+        return at + wait;
+    }
+
+    private void prune(long now) {
+        while (!recent.isEmpty() && recent.peekFirst() <= now - HOUR) {
+            recent.pollFirst();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.wscontroller;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+// 设备本地定时切换网络（换IP）的策略：间隔、随机抖动、静默时段和每小时上限。
+// 服务器通过system消息（action为set_rotation）下发，和运行参数一样带版本号，只接受更新的版本；
+// enabled为false的策略用于停止定时切换。静默时段按设备本地时间，开始和结束为一天中的分钟数，
+// 开始大于结束表示跨午夜（如23:00-07:00），没有静默时段时两者都为-1。
+// 实例不可变，不依赖Android，单元测试可以直接使用。
+final class RotationPolicy {
+    static final long MIN_INTERVAL = 60 * 1000; // 一次切换连同重连要十几秒，更短的间隔没有意义
+    static final long MAX_INTERVAL = 24 * 60 * 60 * 1000;
+    static final int MAX_PER_HOUR_LIMIT = 60;
+    static final int NO_QUIET = -1;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    static final String VERSION = "version";
+    static final String ENABLED = "enabled";
+    static final String INTERVAL = "intervalMs";
+    static final String JITTER = "jitterMs";
+    static final String QUIET_START = "quietStartMinute";
+    static final String QUIET_END = "quietEndMinute";
+    static final String MAX_PER_HOUR = "maxPerHour";
+
+    static final RotationPolicy DISABLED = new RotationPolicy(0, false, MIN_INTERVAL, 0, NO_QUIET, NO_QUIET, 0);
+
+    final long version;
+    final boolean enabled;
+    final long intervalMillis;
+    final long jitterMillis; // 每次在间隔上加减[0, jitter]内的随机值，避免同一批设备同时断线
+    final int quietStartMinute;
+    final int quietEndMinute;
+    final int maxPerHour; // 任意一小时内最多切换几次，0表示不限
+
+    private RotationPolicy(long version, boolean enabled, long intervalMillis, long jitterMillis,
+                           int quietStartMinute, int quietEndMinute, int maxPerHour) {
+        this.version = version;
+        this.enabled = enabled;
+        this.intervalMillis = intervalMillis;
+        this.jitterMillis = jitterMillis;
+        this.quietStartMinute = quietStartMinute;
+        this.quietEndMinute = quietEndMinute;
+        this.maxPerHour = maxPerHour;
+    }
+
+    boolean hasQuietHours() {
+        return quietStartMinute != NO_QUIET;
+    }
+
+    // minuteOfDay是否落在静默时段内，开始时刻算在内，结束时刻不算
+    boolean isQuiet(int minuteOfDay) {
+        if (!hasQuietHours()) {
+            return false;
+        }
+        if (quietStartMinute < quietEndMinute) {
+            return minuteOfDay >= quietStartMinute && minuteOfDay < quietEndMinute;
+        }
+        return minuteOfDay >= quietStartMinute || minuteOfDay < quietEndMinute;
+    }
+
+    // 解析服务器下发的策略：
+    // {"version":2,"enabled":true,"intervalMs":600000,"jitterMs":60000,
+    //  "quietHours":{"start":"23:00","end":"07:00"},"maxPerHour":4}
+    // 缺少版本号、间隔或任何一项超出范围时整份拒绝；enabled为false时只需要版本号
+    static RotationPolicy fromJson(JSONObject json) {
+        if (json == null || !json.has(VERSION)) {
+            throw new IllegalArgumentException("缺少版本号");
+        }
+        Map<String, Long> values = new HashMap<>();
+        values.put(VERSION, json.optLong(VERSION, -1));
+        boolean enabled = json.optBoolean(ENABLED, true);
+        values.put(ENABLED, enabled ? 1L : 0L);
+        if (!enabled) {
+            return fromMap(values);
+        }
+        if (!json.has(INTERVAL)) {
+            throw new IllegalArgumentException("缺少" + INTERVAL);
+        }
+        values.put(INTERVAL, number(json, INTERVAL));
+        if (json.has(JITTER)) {
+            values.put(JITTER, number(json, JITTER));
+        }
+        if (json.has(MAX_PER_HOUR)) {
+            values.put(MAX_PER_HOUR, number(json, MAX_PER_HOUR));
+        }
+        JSONObject quiet = json.optJSONObject("quietHours");
+        if (quiet != null) {
+            values.put(QUIET_START, (long) parseMinute(quiet.optString("start")));
+            values.put(QUIET_END, (long) parseMinute(quiet.optString("end")));
+        }
+        return fromMap(values);
+    }
+
+    // 保存在配置文件中的形式
+    static RotationPolicy fromMap(Map<String, Long> map) {
+        Long version = map.get(VERSION);
+        if (version == null || version < 1) {
+            throw new IllegalArgumentException("版本号无效: " + version);
+        }
+        if (map.getOrDefault(ENABLED, 1L) == 0) {
+            return new RotationPolicy(version, false, MIN_INTERVAL, 0, NO_QUIET, NO_QUIET, 0);
+        }
+        Long interval = map.get(INTERVAL);
+        if (interval == null || interval < MIN_INTERVAL || interval > MAX_INTERVAL) {
+            throw new IllegalArgumentException(INTERVAL + "超出范围[" + MIN_INTERVAL + ", " + MAX_INTERVAL + "]: " + interval);
+        }
+        long jitter = map.getOrDefault(JITTER, 0L);
+        if (jitter < 0 || jitter > interval / 2) {
+            throw new IllegalArgumentException(JITTER + "超出范围[0, " + interval / 2 + "]: " + jitter);
+        }
+        long maxPerHour = map.getOrDefault(MAX_PER_HOUR, 0L);
+        if (maxPerHour < 0 || maxPerHour > MAX_PER_HOUR_LIMIT) {
+            throw new IllegalArgumentException(MAX_PER_HOUR + "超出范围[0, " + MAX_PER_HOUR_LIMIT + "]: " + maxPerHour);
+        }
+        long quietStart = map.getOrDefault(QUIET_START, (long) NO_QUIET);
+        long quietEnd = map.getOrDefault(QUIET_END, (long) NO_QUIET);
+        if ((quietStart == NO_QUIET) != (quietEnd == NO_QUIET)) {
+            throw new IllegalArgumentException("静默时段需要同时给出开始和结束");
+        }
+        if (quietStart != NO_QUIET) {
+            if (quietStart < 0 || quietStart >= MINUTES_PER_DAY || quietEnd < 0 || quietEnd >= MINUTES_PER_DAY) {
+                throw new IllegalArgumentException("静默时段超出范围: " + quietStart + "-" + quietEnd);
+            }
+            if (quietStart == quietEnd) {
+                throw new IllegalArgumentException("静默时段的开始和结束不能相同");
+            }
+        }
+        return new RotationPolicy(version, true, interval, jitter, (int) quietStart, (int) quietEnd, (int) maxPerHour);
+    }
+
+    Map<String, Long> toMap() {
+        Map<String, Long> map = new HashMap<>();
+        map.put(VERSION, version);
+        map.put(ENABLED, enabled ? 1L : 0L);
+        if (enabled) {
+            map.put(INTERVAL, intervalMillis);
+            map.put(JITTER, jitterMillis);
+            map.put(MAX_PER_HOUR, (long) maxPerHour);
+            map.put(QUIET_START, (long) quietStartMinute);
+            map.put(QUIET_END, (long) quietEndMinute);
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        if (!enabled) {
+            return "版本" + version + "（停用）";
+        }
+        StringBuilder text = new StringBuilder("版本").append(version)
+                .append("，间隔").append(intervalMillis / 1000).append("秒±").append(jitterMillis / 1000).append("秒");
+        if (maxPerHour > 0) {
+            text.append("，每小时最多").append(maxPerHour).append("次");
+        }
+        if (hasQuietHours()) {
+            text.append("，静默").append(formatMinute(quietStartMinute)).append('-').append(formatMinute(quietEndMinute));
+        }
+        return text.toString();
+    }
+
+    private static long number(JSONObject json, String name) {
+        Object value = json.opt(name);
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException(name + "不是数字");
+        }
+        return ((Number) value).longValue();
+    }
+
+    // "HH:mm" -> 一天中的分钟数
+    private static int parseMinute(String text) {
+        String[] parts = text.split(":");
+        try {
+            if (parts.length == 2) {
+                int hour = Integer.parseInt(parts[0].trim());
+                int minute = Integer.parseInt(parts[1].trim());
+                if (hour >= 0 && hour < 24 && minute >= 0 && minute < 60) {
+                    return hour * 60 + minute;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // 下面统一报错
+        }
+        throw new IllegalArgumentException("时间格式应为HH:mm: " + text);
+    }
+
+    private static String formatMinute(int minuteOfDay) {
+        return String.format(Locale.ROOT, "%02d:%02d", minuteOfDay / 60, minuteOfDay % 60);
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.wscontroller;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+// 设备本地定时切换网络：按RotationPlanner的计划用allow-while-idle闹钟唤醒，到期后直接在本机执行切换，
+// 不需要服务器逐条下发指令，与中转服务器的连接断开期间照常执行。
+// 闹钟用墙上时间（静默时段按本地时间），不精确，Doze期间可能推迟到维护窗口，推迟的时间不会累积到下一次。
+// 闹钟到期后持有部分唤醒锁直到切换流程结束（最长WAKE_TIMEOUT）。所有方法在主线程调用。
+final class RotationScheduler {
+    interface Callback {
+        // 唤醒锁已持有，切换流程结束后调用endWake
+        void onRotationDue(RotationPolicy policy, long seq, long scheduledAt);
+
+        // 最近一小时的切换记录变化，需要保存
+        void onHistoryChanged(List<Long> history);
+    }
+
+    private static final String ACTION_ROTATE = "com.example.wscontroller.action.ROTATE";
+    private static final long WAKE_TIMEOUT = 60000; // 无障碍操作加上飞行模式等待，正常十秒以内
+
+    private final Context context;
+    private final Callback callback;
+    private final AlarmManager alarmManager;
+    private final PowerManager.WakeLock wakeLock;
+    private final PendingIntent alarmIntent;
+    private final Random random = new Random();
+    private final RotationPlanner planner = new RotationPlanner(
+            System::currentTimeMillis, TimeZone::getDefault, bound -> (long) (random.nextDouble() * (bound + 1)));
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean started = false;
+    private boolean inProgress = false;
+
+    private final Runnable wakeTimeoutRunnable = () -> {
+        AppLog.w("Rotation", "切换流程超时，释放唤醒锁");
+        endWake();
+    };
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (ACTION_ROTATE.equals(intent.getAction())) {
+                onAlarm();
+            } else {
+                // 时区或系统时间改变，静默时段和计划时间需要重新计算
+                planner.setPolicy(planner.policy(), planner.history());
+                schedule();
+            }
+        }
+    };
+
+    RotationScheduler(Context context, Callback callback) {
+        this.context = context.getApplicationContext();
+        this.callback = callback;
+        this.alarmManager = (AlarmManager) this.context.getSystemService(Context.ALARM_SERVICE);
+        PowerManager powerManager = (PowerManager) this.context.getSystemService(Context.POWER_SERVICE);
+        this.wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "wscontroller:rotation");
+        this.wakeLock.setReferenceCounted(false);
+        Intent intent = new Intent(ACTION_ROTATE).setPackage(this.context.getPackageName());
+        this.alarmIntent = PendingIntent.getBroadcast(this.context, 1, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    RotationPolicy policy() {
+        return planner.policy();
+    }
+
+    long nextRotationAt() {
+        return planner.nextRotationAt();
+    }
+
+    // 替换策略，history为保存的最近一小时切换记录；已开始调度时按新策略重新设置闹钟
+    void setPolicy(RotationPolicy policy, List<Long> history) {
+        planner.setPolicy(policy, history);
+        AppLog.i("Rotation", "定时切换策略: " + policy + describeNext());
+        schedule();
+    }
+
+    // 开始调度，重复调用无影响
+    void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        IntentFilter filter = new IntentFilter(ACTION_ROTATE);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        ContextCompat.registerReceiver(context, receiver, filter, ContextCompat.RECEIVER_NOT_EXPORTED);
+        schedule();
+    }
+
+    void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        alarmManager.cancel(alarmIntent);
+        context.unregisterReceiver(receiver);
+        endWake();
+    }
+
+    // 切换流程结束，释放唤醒锁
+    void endWake() {
+        handler.removeCallbacks(wakeTimeoutRunnable);
+        inProgress = false;
+        if (wakeLock.isHeld()) {
+            wakeLock.release();
+        }
+    }
+
+    private void onAlarm() {
+        if (!started || !planner.isDue()) {
+            // 闹钟提前触发或策略已更新，按当前计划重新设置
+            schedule();
+            return;
+        }
+        long scheduledAt = planner.nextRotationAt();
+        long seq = planner.onRotationStarted();
+        callback.onHistoryChanged(planner.history());
+        schedule();
+        if (inProgress) {
+            // 上一次还没结束（通常是无障碍操作卡住），这次只计入次数，不重复执行
+            AppLog.w("Rotation", "上一次定时切换尚未结束，跳过第" + seq + "次");
+            return;
+        }
+        AppLog.i("Rotation", "执行第" + seq + "次定时切换" + describeNext());
+        inProgress = true;
+        wakeLock.acquire(WAKE_TIMEOUT);
+        handler.postDelayed(wakeTimeoutRunnable, WAKE_TIMEOUT);
+        callback.onRotationDue(planner.policy(), seq, scheduledAt);
+    }
+
+    private void schedule() {
+        if (!started) {
+            return;
+        }
+        long at = planner.nextRotationAt();
+        if (at < 0) {
+            alarmManager.cancel(alarmIntent);
+            return;
+        }
+        alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, at, alarmIntent);
+    }
+
+    private String describeNext() {
+        long at = planner.nextRotationAt();
+        return at < 0 ? "" : "，下一次在" + Math.max(0, (at - System.currentTimeMillis()) / 1000) + "秒后";
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.wscontroller;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import okhttp3.ConnectionPool;
+import okhttp3.ConnectionSpec;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.TlsVersion;
+
+// wss连接的传输层配置
+// 所有连接共用一个SSLContext，重连时可以用缓存的会话恢复TLS，省去完整握手。
+// 只使用HTTP/1.1，与OkHttp内部建立WebSocket时使用的协议一致，预热留在连接池中的连接才能被握手复用。
+public final class SecureTransport {
+    static final int SESSION_CACHE_SIZE = 16;
+    static final int SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+    static final long POOL_KEEP_ALIVE_SECONDS = 60; // 小于服务器的keepAliveTimeout（65秒）
+
+    private SecureTransport() {
+    }
+
+    public static OkHttpClient.Builder configure(OkHttpClient.Builder builder) {
+        return configure(builder, systemTrustManager());
+    }
+
+    public static OkHttpClient.Builder configure(OkHttpClient.Builder builder, X509TrustManager trustManager) {
+        SSLContext context;
+        try {
+            context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[]{trustManager}, null);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("初始化TLS失败", e);
+        }
+        context.getClientSessionContext().setSessionCacheSize(SESSION_CACHE_SIZE);
+        context.getClientSessionContext().setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+
+        // 优先TLS 1.3：完整握手1个往返，会话恢复同样1个往返；服务器不支持时回退到TLS 1.2
+        ConnectionSpec tls = new ConnectionSpec.Builder(ConnectionSpec.MODERN_TLS)
+                .tlsVersions(TlsVersion.TLS_1_3, TlsVersion.TLS_1_2)
+                .build();
+
+        return builder
+                .sslSocketFactory(context.getSocketFactory(), trustManager)
+                .connectionSpecs(Arrays.asList(tls, ConnectionSpec.CLEARTEXT))
+                .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                .connectionPool(new ConnectionPool(2, POOL_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS));
+    }
+
+    static X509TrustManager systemTrustManager() {
+        try {
+            TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            factory.init((KeyStore) null);
+            for (TrustManager manager : factory.getTrustManagers()) {
+                if (manager instanceof X509TrustManager) {
+                    return (X509TrustManager) manager;
+                }
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("获取系统证书失败", e);
+        }
+        throw new IllegalStateException("没有可用的X509TrustManager");
+    }
+}
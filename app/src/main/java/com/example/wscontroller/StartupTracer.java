@@ -0,0 +1,62 @@
+package com.example.wscontroller;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+
+// 启动阶段计时：每个阶段写一段系统trace（Perfetto和Macrobenchmark的TraceSectionMetric可见），
+// 同时记录相对进程启动的耗时到日志。
+// 首次连接成功时记录进程启动到连接成功的总耗时，冷启动和服务被系统重启后都会记录一次。
+public final class StartupTracer {
+    // trace段名前缀，benchmark模块按这些名字统计
+    public static final String PREFIX = "wsc:";
+    public static final String SECTION_CONNECT = PREFIX + "connect";
+    private static final int CONNECT_COOKIE = 1;
+
+    private static volatile boolean connected = false;
+    private static volatile boolean connectStarted = false;
+
+    private StartupTracer() {
+    }
+
+    // 在当前线程上执行一个启动阶段
+    public static void section(String phase, Runnable body) {
+        long startedAt = SystemClock.elapsedRealtime();
+        Trace.beginSection(PREFIX + phase);
+        try {
+            body.run();
+        } finally {
+            Trace.endSection();
+            long now = SystemClock.elapsedRealtime();
+            AppLog.d("Startup", phase + " 耗时" + (now - startedAt) + "ms，距进程启动" + sinceProcessStart(now) + "ms");
+        }
+    }
+
+    // 第一次发起连接，连接段跨线程结束，使用异步trace段
+    public static void connectStarted() {
+        if (connectStarted) {
+            return;
+        }
+        connectStarted = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(SECTION_CONNECT, CONNECT_COOKIE);
+        }
+    }
+
+    // 连接成功，只有进程内第一次连接计入启动耗时
+    public static void connected() {
+        if (connected) {
+            return;
+        }
+        connected = true;
+        if (connectStarted && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(SECTION_CONNECT, CONNECT_COOKIE);
+        }
+        AppLog.i("Startup", "进程启动到连接成功耗时" + sinceProcessStart(SystemClock.elapsedRealtime()) + "ms");
+    }
+
+    private static long sinceProcessStart(long now) {
+        return now - Process.getStartElapsedRealtime();
+    }
+}
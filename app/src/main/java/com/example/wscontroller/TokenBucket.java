@@ -0,0 +1,49 @@
+package com.example.wscontroller;
+
+import java.util.function.LongSupplier;
+
+// 令牌桶限流：最多积攒capacity个令牌，每秒补充ratePerSecond个
+class TokenBucket {
+    private final double capacity;
+    private final double tokensPerMs;
+    private final LongSupplier clock;
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(double capacity, double ratePerSecond) {
+        this(capacity, ratePerSecond, () -> System.nanoTime() / 1_000_000);
+    }
+
+    TokenBucket(double capacity, double ratePerSecond, LongSupplier clock) {
+        this.capacity = capacity;
+        this.tokensPerMs = ratePerSecond / 1000.0;
+        this.clock = clock;
+        this.tokens = capacity;
+        this.refilledAt = clock.getAsLong();
+    }
+
+    // 取一个令牌，令牌不足时返回false
+    synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    // 距离下一个令牌可用的毫秒数，已有令牌时返回0
+    synchronized long millisUntilToken() {
+        refill();
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerMs);
+    }
+
+    private void refill() {
+        long now = clock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerMs);
+        refilledAt = now;
+    }
+}
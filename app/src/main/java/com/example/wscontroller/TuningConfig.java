@@ -0,0 +1,156 @@
+package com.example.wscontroller;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+// 运行参数：心跳、连接检查、重连退避和无障碍操作的各个等待时间。
+// 服务器通过system消息（action为tuning_update）下发，每份配置带版本号，只接受比当前更新的版本，
+// 回滚时下发一个更高版本号的旧参数。配置是完整的：没有给出的参数使用默认值，而不是沿用上一版。
+// 实例不可变，current()整体替换，使用方每次读取当前实例，同一次计算中不会混用两个版本的参数。
+// 不依赖Android，单元测试可以直接使用。
+public final class TuningConfig {
+    public enum Key {
+        HEARTBEAT_INTERACTIVE("heartbeatInteractiveMs", 15000, 5000, 5 * 60 * 1000),
+        HEARTBEAT_SCREEN_OFF("heartbeatScreenOffMs", 60000, 15000, 30 * 60 * 1000),
+        HEARTBEAT_IDLE("heartbeatIdleMs", 9 * 60 * 1000, 9 * 60 * 1000, 60 * 60 * 1000), // 不能小于allow-while-idle闹钟的最小间隔
+        PONG_TIMEOUT("pongTimeoutMs", 15000, 2000, 60000),
+        REQUIRED_FAILED_CHECKS("requiredFailedChecks", 2, 1, 10),
+        STATE_CHANGE_COOLDOWN("stateChangeCooldownMs", 5000, 0, 60000),
+        UI_CHECK_INTERVAL("uiCheckIntervalMs", 20000, 5000, 10 * 60 * 1000),
+        CONNECTION_CHECK_INTERVAL("connectionCheckIntervalMs", 45000, 10000, 60 * 60 * 1000),
+        STATUS_UPDATE_INTERVAL("statusUpdateIntervalMs", 5 * 60 * 1000, 30000, 60 * 60 * 1000),
+        RECONNECT_BASE("reconnectBaseMs", 5000, 500, 60000),
+        RECONNECT_MAX("reconnectMaxMs", 120000, 5000, 30 * 60 * 1000),
+        SWIPE_SETTLE("swipeSettleMs", 500, 100, 5000), // 两次下拉之间
+        PANEL_OPEN("panelOpenMs", 1000, 100, 5000), // 下拉完成到查找飞行模式
+        AIRPLANE_HOLD("airplaneHoldMs", 1500, 200, 30000), // 开启飞行模式到再次点击关闭
+        HOTSPOT_DELAY("hotspotDelayMs", 1000, 100, 5000), // 关闭飞行模式到查找热点，分两段等待
+        RETURN_DELAY("returnDelayMs", 500, 100, 5000), // 第二次点击飞行模式到返回APP
+        HOTSPOT_RETURN("hotspotReturnMs", 1000, 100, 5000), // 点击热点到返回APP
+        TAP_OFFSET_1("tapOffset1Px", 40, 0, 400), // 点击文本上方的偏移，依次尝试
+        TAP_OFFSET_2("tapOffset2Px", 60, 0, 400),
+        TAP_OFFSET_3("tapOffset3Px", 80, 0, 400);
+
+        public final String id; // 下发和保存时使用的参数名
+        final long defaultValue;
+        final long min;
+        final long max;
+
+        Key(String id, long defaultValue, long min, long max) {
+            this.id = id;
+            this.defaultValue = defaultValue;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    static final String VERSION = "version";
+    public static final TuningConfig DEFAULTS = new TuningConfig(0, defaultValues());
+
+    private static volatile TuningConfig current = DEFAULTS;
+
+    private final long version;
+    private final long[] values;
+
+    private TuningConfig(long version, long[] values) {
+        this.version = version;
+        this.values = values;
+    }
+
+    public static TuningConfig current() {
+        return current;
+    }
+
+    // 版本比当前新时替换并返回true；相同或更旧的版本忽略
+    public static synchronized boolean apply(TuningConfig config) {
+        if (config.version <= current.version) {
+            return false;
+        }
+        current = config;
+        return true;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public long get(Key key) {
+        return values[key.ordinal()];
+    }
+
+    public int[] tapOffsets() {
+        return new int[]{(int) get(Key.TAP_OFFSET_1), (int) get(Key.TAP_OFFSET_2), (int) get(Key.TAP_OFFSET_3)};
+    }
+
+    // 解析服务器下发的配置：{"version":3,"values":{"heartbeatInteractiveMs":20000,...}}
+    // 未知的参数忽略（新版本服务器可以下发旧版本APP不认识的参数），超出范围或缺少版本号时整份拒绝
+    public static TuningConfig fromJson(JSONObject json) {
+        if (json == null || !json.has(VERSION)) {
+            throw new IllegalArgumentException("缺少版本号");
+        }
+        Map<String, Long> values = new HashMap<>();
+        values.put(VERSION, json.optLong(VERSION, -1));
+        JSONObject object = json.optJSONObject("values");
+        if (object != null) {
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String name = keys.next();
+                Object value = object.opt(name);
+                if (!(value instanceof Number)) {
+                    throw new IllegalArgumentException(name + "不是数字");
+                }
+                values.put(name, ((Number) value).longValue());
+            }
+        }
+        return fromMap(values);
+    }
+
+    // 保存在配置文件中的形式，键为参数名，另有version
+    public static TuningConfig fromMap(Map<String, Long> map) {
+        Long version = map.get(VERSION);
+        if (version == null || version < 1) {
+            throw new IllegalArgumentException("版本号无效: " + version);
+        }
+        long[] values = defaultValues();
+        for (Key key : Key.values()) {
+            Long value = map.get(key.id);
+            if (value == null) {
+                continue;
+            }
+            if (value < key.min || value > key.max) {
+                throw new IllegalArgumentException(key.id + "超出范围[" + key.min + ", " + key.max + "]: " + value);
+            }
+            values[key.ordinal()] = value;
+        }
+        TuningConfig config = new TuningConfig(version, values);
+        if (config.get(Key.RECONNECT_MAX) < config.get(Key.RECONNECT_BASE)) {
+            throw new IllegalArgumentException("reconnectMaxMs不能小于reconnectBaseMs");
+        }
+        // pong超时超过心跳间隔时，下一次心跳会在超时检查前把它取消
+        if (config.get(Key.PONG_TIMEOUT) > config.get(Key.HEARTBEAT_INTERACTIVE)) {
+            throw new IllegalArgumentException("pongTimeoutMs不能大于heartbeatInteractiveMs");
+        }
+        return config;
+    }
+
+    public Map<String, Long> toMap() {
+        Map<String, Long> map = new HashMap<>();
+        map.put(VERSION, version);
+        for (Key key : Key.values()) {
+            map.put(key.id, get(key));
+        }
+        return map;
+    }
+
+    private static long[] defaultValues() {
+        Key[] keys = Key.values();
+        long[] values = new long[keys.length];
+        for (Key key : keys) {
+            values[key.ordinal()] = key.defaultValue;
+        }
+        return values;
+    }
+}
@@ -1,24 +1,32 @@
 package com.example.wscontroller;
 
-import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
 import android.content.Context;
 import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
+import android.net.Network;
+import android.net.NetworkCapabilities;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
-import android.util.Log;
+import android.telephony.TelephonyManager;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
-import androidx.core.app.NotificationCompat;
-import androidx.core.app.NotificationManagerCompat;
-
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dns;
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -26,109 +34,176 @@ import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
 
 public class WebSocketManager {
-    // 修改为实际服务器地址
-    private static final String SERVER_URL = "ws://101.34.211.156:9000/device/";
+    // 默认中转服务器地址，服务器可以通过set_endpoints推送地址列表
+    private static final String DEFAULT_ENDPOINT = "ws://101.34.211.156:9000/device/";
+    private static final long FAILOVER_DELAY = 500; // 切换到下一个地址前的等待时间
     private String deviceId; // 设备编号
 
-    private WebSocket webSocket;
+    // 中转服务器地址列表，按握手延迟选择，连接失败时切换到下一个
+    private final RelayEndpoints endpoints;
+    private String currentEndpoint;
+    private final ExecutorService probeExecutor = Executors.newSingleThreadExecutor();
+
+    // 服务器拉取磁盘日志，分块发送，每块等发送队列不拥塞后再入队
+    private static final int LOG_CHUNK_BYTES = 32 * 1024;
+    private static final long LOG_PULL_MAX_BYTES = 8 * 1024 * 1024;
+    private static final long LOG_PULL_TIMEOUT = 60000; // 一次拉取等待队列恢复的总时长上限，超过后截断
+    private final ExecutorService logPullExecutor = Executors.newSingleThreadExecutor();
+
+    // 当前默认网络，由NetworkCallback维护；连接的socket和DNS都绑定到这个网络
+    private volatile Network availableNetwork;
+    private volatile boolean networkValidated = false;
+    private Network boundNetwork; // 当前连接（或正在握手）所在的网络
+    private Network networkClientNetwork; // 由clientFor在this上同步访问
+    private OkHttpClient networkClient;
+
+    private volatile WebSocket webSocket; // 日志上传线程也会读取
     private boolean isConnecting = false;
-    private final OkHttpClient client = new OkHttpClient.Builder()
+    // 域名解析缓存，跨网络共享
+    private final CachingDns dnsCache = new CachingDns(Dns.SYSTEM);
+    // wss地址共用TLS会话缓存，重连时恢复会话而不是完整握手
+    private final OkHttpClient client = SecureTransport.configure(new OkHttpClient.Builder())
             .readTimeout(0, TimeUnit.MILLISECONDS) // 长连接不超时
+            .connectTimeout(3, TimeUnit.SECONDS) // 地址不可用时尽快切换
+            .dns(dnsCache)
             .build();
 
     private DeviceNumberManager deviceNumberManager;
-    private MessageListener messageListener;
 
     // 添加连接状态变量
     private boolean isConnected = false;
 
+    // 等待上报的指令执行结果（网络切换后需要重新连接才能上报）
+    private final List<CommandResult> pendingResults = new ArrayList<>();
+    private static final long RESULT_FALLBACK_DELAY = 10000; // 切换后10秒仍未重连则尝试用当前连接上报
+    private static final int MAX_PENDING_ROTATION_RESULTS = 100; // 长时间断线时只保留最近的定时切换结果
+
+    // 单条指令的执行结果，或一次定时切换的结果（messageId为null）
+    private static class CommandResult {
+        final String messageId;
+        final long receivedAt; // 定时切换时为开始切换的时间
+        long toggledAt;
+        boolean success;
+        String error;
+        long policyVersion;
+        long seq;
+        long scheduledAt;
+
+        CommandResult(String messageId, long receivedAt) {
+            this.messageId = messageId;
+            this.receivedAt = receivedAt;
+        }
+
+        static CommandResult rotation(RotationPolicy policy, long seq, long scheduledAt, long startedAt) {
+            CommandResult result = new CommandResult(null, startedAt);
+            result.policyVersion = policy.version;
+            result.seq = seq;
+            result.scheduledAt = scheduledAt;
+            return result;
+        }
+
+        boolean isRotation() {
+            return messageId == null;
+        }
+
+        String toJson(long now) throws JSONException {
+            if (isRotation()) {
+                return Protocol.rotationResult(policyVersion, seq, success, error, scheduledAt, receivedAt, toggledAt, now);
+            }
+            return Protocol.result(messageId, success, error, receivedAt, toggledAt, now);
+        }
+
+        String describe() {
+            return isRotation() ? "定时切换#" + seq : messageId;
+        }
+    }
+
+    // 按服务器下发的策略在本机定时切换网络，与服务器断开期间照常执行，结果重连后补报
+    private final RotationScheduler rotation;
+
+    // 发送队列背压控制，拥塞期间只保留最新的状态等恢复后补发
+    private final Backpressure backpressure = new Backpressure();
+    private String deferredStatus = null;
+    private static final long DRAIN_CHECK_INTERVAL = 500;
+    private static final int SEND_OK = 0;
+    private static final int SEND_DEFERRED = 1; // 队列拥塞，帧未入队
+    private static final int SEND_FAILED = 2; // 连接已关闭或正在关闭
+    private final Runnable drainCheckRunnable = new Runnable() {
+        @Override
+        public void run() {
+            WebSocket ws = webSocket;
+            if (ws == null) {
+                return;
+            }
+            if (backpressure.update(ws.queueSize())) {
+                heartbeatHandler.postDelayed(this, DRAIN_CHECK_INTERVAL);
+                return;
+            }
+            AppLog.d("WebSocket", "发送队列已恢复");
+            String status = deferredStatus;
+            deferredStatus = null;
+            if (status != null) {
+                sendStatus(status);
+            }
+        }
+    };
+
+    // 性能指标采集
+    private final DeviceMetrics metrics = new DeviceMetrics();
+    private static final long METRICS_REPORT_INTERVAL = 60000; // 60秒上报一次
+    private long disconnectedAt = 0; // 最近一次断开连接的时间
+    private long rotationStartedAt = 0; // 最近一次开始切换网络的时间
+    private final Runnable metricsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (webSocket != null && isConnected) {
+                sendMetricsSnapshot();
+                heartbeatHandler.postDelayed(this, METRICS_REPORT_INTERVAL);
+            }
+        }
+    };
+
     // 添加心跳检测
     private Handler heartbeatHandler = new Handler(Looper.getMainLooper());
-    private Runnable heartbeatRunnable = new Runnable() {
+    // 心跳由KeepAliveScheduler的闹钟驱动，Doze期间不会停住；回调在主线程，已持有唤醒锁
+    private final KeepAliveScheduler keepAlive;
+    // 心跳发送后在运行参数的pong超时（默认15秒）内未收到回显这次心跳的pong算一次心跳超时；
+    // 失败次数、pong匹配和重连退避次数都由LinkMonitor记录
+    private final LinkMonitor link = new LinkMonitor();
+    private final Runnable pongCheckRunnable = new Runnable() {
         @Override
         public void run() {
-            if (webSocket != null && isConnected) {
-                try {
-                    // 发送心跳消息
-                    JSONObject json = new JSONObject();
-                    json.put("type", "ping");
-                    json.put("timestamp", System.currentTimeMillis());
-                    json.put("deviceId", deviceId);
-                    
-                    // 记录发送时间
-                    long sentTime = System.currentTimeMillis();
-                    
-                    // 发送心跳并检查结果
-                    boolean sent = webSocket.send(json.toString());
-                    if (!sent) {
-                        Log.d("WebSocket", "心跳消息发送失败，但不立即断开连接");
-                        // 增加失败计数而不是立即断开
-                        consecutiveFailedChecks++;
-                        
-                        if (consecutiveFailedChecks >= REQUIRED_FAILED_CHECKS) {
-                            Log.d("WebSocket", "多次心跳失败，更新连接状态为断开");
-                            updateConnectionState(false);
-                            // 尝试重连
-                            reconnect();
-                            return;
-                        }
-                    } else {
-                        // 心跳发送成功，重置失败计数
-                        consecutiveFailedChecks = 0;
-                    }
-                    
-                    // 设置心跳响应超时检查，但不立即断开连接
-                    new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                        // 如果在15秒内没有收到pong响应，增加失败计数
-                        if (isConnected && lastPongTime < sentTime) {
-                            Log.d("WebSocket", "心跳超时，15秒内未收到pong响应");
-                            consecutiveFailedChecks++;
-                            
-                            if (consecutiveFailedChecks >= REQUIRED_FAILED_CHECKS) {
-                                Log.d("WebSocket", "多次心跳超时，强制断开重连");
-                                // 强制断开连接
-                                forceDisconnect();
-                                // 延迟1秒后重连
-                                new Handler(Looper.getMainLooper()).postDelayed(() -> connect(), 1000);
-                            }
-                        } else {
-                            // 收到了pong响应，重置失败计数
-                            consecutiveFailedChecks = 0;
-                        }
-                    }, 15000); // 15秒超时
-                } catch (Exception e) {
-                    Log.e("WebSocket", "发送心跳消息失败", e);
-                    // 增加失败计数而不是立即断开
-                    consecutiveFailedChecks++;
-                    
-                    if (consecutiveFailedChecks >= REQUIRED_FAILED_CHECKS) {
-                        // 更新连接状态为断开
-                        updateConnectionState(false);
-                        // 尝试重连
-                        reconnect();
-                        return;
-                    }
-                }
-                
-                // 继续下一次心跳
-                heartbeatHandler.postDelayed(this, 15000); // 15秒一次
+            if (!isConnected) {
+                link.clearFailures();
+                keepAlive.endWake();
+                return;
             }
+            LinkMonitor.Verdict verdict = link.onPongTimeout(requiredFailedChecks());
+            if (verdict == LinkMonitor.Verdict.DEAD) {
+                AppLog.d("WebSocket", "多次心跳超时，强制断开重连");
+                // 当前中转服务器可能已经不可用，下次连接优先选择其他地址
+                endpoints.markFailed(currentEndpoint);
+                // 强制断开连接
+                forceDisconnect();
+                // 延迟1秒后重连，唤醒锁保持到连接建立或失败
+                heartbeatHandler.postDelayed(() -> connect(), 1000);
+                return;
+            }
+            if (verdict == LinkMonitor.Verdict.SUSPECT) {
+                AppLog.d("WebSocket", "心跳超时，未收到pong响应，当前累计失败次数: " + link.failedChecks());
+            }
+            keepAlive.endWake();
         }
     };
 
     // 添加指数退避重连机制
-    private int reconnectAttempts = 0;
     private static final int MAX_RECONNECT_ATTEMPTS = 5;
-    private static final long BASE_RECONNECT_DELAY = 5000; // 5秒
 
     // 添加最后一次收到pong的时间戳
     private long lastPongTime = 0;
 
     // 添加连接状态稳定性控制变量
     private long lastStateChangeTime = 0;
-    private static final long STATE_CHANGE_COOLDOWN = 5000; // 状态变化冷却时间(5秒)
-    private int consecutiveFailedChecks = 0; // 连续失败检查次数
-    private static final int REQUIRED_FAILED_CHECKS = 2; // 需要多少次连续失败才改变状态
 
     // 添加自动重连相关变量
     private boolean autoReconnectEnabled = true; // 是否启用自动重连
@@ -137,33 +212,214 @@ public class WebSocketManager {
         @Override
         public void run() {
             if (!isConnected && autoReconnectEnabled) {
-                Log.d("WebSocket", "执行自动重连...");
+                AppLog.d("WebSocket", "执行自动重连...");
                 connect();
                 
                 // 如果仍然需要重连，安排下一次尝试
                 if (!isConnected) {
                     // 使用指数退避策略
                     long delay = calculateReconnectDelay();
-                    Log.d("WebSocket", "重连未成功，将在 " + (delay/1000) + " 秒后再次尝试");
+                    AppLog.d("WebSocket", "重连未成功，将在 " + (delay/1000) + " 秒后再次尝试");
                     autoReconnectHandler.postDelayed(this, delay);
                 }
             }
         }
     };
 
-    public interface MessageListener {
-        void onMessageReceived(String message);
-        void onConnectionStateChanged(boolean connected);
-        void onAccessibilityRequired();
+    // 进程内唯一的连接，由WebSocketService负责连接和断开，界面通过Events订阅状态
+    private static WebSocketManager instance;
+
+    public static synchronized WebSocketManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new WebSocketManager(context.getApplicationContext());
+        }
+        return instance;
     }
 
-    public WebSocketManager(Context context) {
-        this.deviceNumberManager = new DeviceNumberManager(context);
+    private WebSocketManager(Context context) {
+        this.deviceNumberManager = DeviceNumberManager.get(context);
         this.deviceId = deviceNumberManager.getDeviceNumber();
+
+        List<String> saved = deviceNumberManager.getRelayEndpoints();
+        this.endpoints = new RelayEndpoints(saved.isEmpty() ? Collections.singletonList(DEFAULT_ENDPOINT) : saved);
+        this.currentEndpoint = endpoints.current();
+
+        // 上次下发并保存的运行参数，要在KeepAliveScheduler创建前生效
+        TuningConfig savedTuning = deviceNumberManager.getTuning();
+        if (savedTuning != null && TuningConfig.apply(savedTuning)) {
+            AppLog.d("WebSocket", "使用保存的运行参数，版本" + savedTuning.version());
+        }
+
+        this.keepAlive = new KeepAliveScheduler(context, metrics, this::onKeepAlive);
+        this.rotation = new RotationScheduler(context, new RotationScheduler.Callback() {
+            @Override
+            public void onRotationDue(RotationPolicy policy, long seq, long scheduledAt) {
+                performScheduledRotation(policy, seq, scheduledAt);
+            }
+
+            @Override
+            public void onHistoryChanged(List<Long> history) {
+                deviceNumberManager.saveRotationHistory(history);
+            }
+        });
+        RotationPolicy savedPolicy = deviceNumberManager.getRotationPolicy();
+        if (savedPolicy != null) {
+            rotation.setPolicy(savedPolicy, deviceNumberManager.getRotationHistory());
+        }
+        registerNetworkCallback(context.getApplicationContext());
+        Events.setDispatchRecorder(latencyMicros -> metrics.record(DeviceMetrics.Series.EVENT_DISPATCH, latencyMicros));
+        probeEndpoints();
+    }
+
+    // 监听默认网络变化：网络一可用就立即重连，不再等固定延迟或退避计时
+    private void registerNetworkCallback(Context context) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) {
+            return;
+        }
+        availableNetwork = cm.getActiveNetwork();
+        try {
+            cm.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    availableNetwork = network;
+                    networkValidated = false;
+                    // 此时网络验证还没完成，先推测性地开始握手，失败的话等验证完成后再连
+                    heartbeatHandler.post(() -> onNetworkReady(network, "网络可用"));
+                }
+
+                @Override
+                public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                    boolean validated = capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+                    if (validated && !networkValidated && network.equals(availableNetwork)) {
+                        networkValidated = true;
+                        heartbeatHandler.post(() -> onNetworkReady(network, "网络已验证"));
+                    }
+                }
+
+                @Override
+                public void onLost(Network network) {
+                    if (network.equals(availableNetwork)) {
+                        availableNetwork = null;
+                        networkValidated = false;
+                    }
+                    heartbeatHandler.post(() -> {
+                        // 连接所在的网络已经断开，socket不会再恢复，不必等心跳超时
+                        if (network.equals(boundNetwork)) {
+                            AppLog.d("WebSocket", "连接所在网络已断开，立即关闭连接");
+                            boundNetwork = null;
+                            forceDisconnect();
+                        }
+                    });
+                }
+            });
+        } catch (RuntimeException e) {
+            AppLog.e("WebSocket", "注册网络回调失败", e);
+        }
+    }
+
+    // 网络可用或验证通过时调用（主线程）
+    private void onNetworkReady(Network network, String reason) {
+        if (!autoReconnectEnabled || !network.equals(availableNetwork)) {
+            return;
+        }
+        if (isConnected && webSocket != null) {
+            // 默认网络换了（如WiFi切换到移动数据），旧连接所在网络随时可能失效
+            if (boundNetwork != null && !boundNetwork.equals(network)) {
+                AppLog.d("WebSocket", reason + "，默认网络已切换，在新网络上重连");
+                connect();
+            }
+            return;
+        }
+        if (isConnecting) {
+            if (network.equals(boundNetwork)) {
+                return; // 已经在这个网络上握手
+            }
+            // 正在旧网络上握手，取消后在新网络上重连
+            if (webSocket != null) {
+                webSocket.cancel();
+            }
+            isConnecting = false;
+        }
+        AppLog.d("WebSocket", reason + "，立即重连");
+        connect();
     }
 
-    public void setMessageListener(MessageListener listener) {
-        this.messageListener = listener;
+    // 延迟一段时间后连接，等待期间先预热连接
+    private void scheduleConnect(long delayMs) {
+        prewarm(endpoints.current());
+        new Handler(Looper.getMainLooper()).postDelayed(this::connect, delayMs);
+    }
+
+    // 预热：提前建立到中转服务器的TCP（和TLS）连接并留在连接池中，之后的WebSocket握手直接复用，
+    // 省去建连和TLS握手的往返；旧连接还在关闭过程中时就可以开始
+    private void prewarm(String endpoint) {
+        Network network = availableNetwork;
+        HttpUrl url = RelayEndpoints.healthUrl(endpoint);
+        if (network == null || url == null) {
+            return;
+        }
+        long startedAt = System.currentTimeMillis();
+        clientFor(network).newCall(new Request.Builder().url(url).build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                AppLog.d("WebSocket", "预热连接失败: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                AppLog.d("WebSocket", "预热连接完成，耗时 " + (System.currentTimeMillis() - startedAt) + "ms");
+            }
+        });
+    }
+
+    private void invalidateDns(String endpoint) {
+        HttpUrl url = RelayEndpoints.healthUrl(endpoint);
+        if (url != null) {
+            dnsCache.invalidate(url.host());
+        }
+    }
+
+    // 绑定到指定网络的客户端，与主客户端共用连接池和调度器。
+    // 主线程、OkHttp回调线程都会调用，同步后同一网络只创建一个客户端
+    private synchronized OkHttpClient clientFor(Network network) {
+        if (!network.equals(networkClientNetwork)) {
+            networkClient = client.newBuilder()
+                    .socketFactory(network.getSocketFactory())
+                    .dns(dnsCache.withDelegate(hostname -> Arrays.asList(network.getAllByName(hostname))))
+                    .build();
+            networkClientNetwork = network;
+        }
+        return networkClient;
+    }
+
+    // 在后台线程探测所有地址的握手延迟，只有一个地址时不需要探测
+    private void probeEndpoints() {
+        if (endpoints.urls().size() < 2) {
+            return;
+        }
+        // 在调用线程上取好客户端再交给探测线程，探测使用发起时所在的网络
+        Network network = availableNetwork;
+        OkHttpClient probeClient = network != null ? clientFor(network) : client;
+        probeExecutor.execute(() -> {
+            endpoints.probe(probeClient);
+            AppLog.d("WebSocket", "中转服务器探测完成，最优地址: " + endpoints.current());
+        });
+    }
+
+    // 连接失败时立即切换到下一个可用地址，所有地址都失败时才按退避策略重连
+    private void failover(String failedEndpoint) {
+        if (endpoints.markFailed(failedEndpoint)) {
+            AppLog.d("WebSocket", "中转服务器不可用: " + failedEndpoint + "，切换到: " + endpoints.current());
+            invalidateDns(failedEndpoint);
+            scheduleConnect(FAILOVER_DELAY);
+        } else {
+            AppLog.d("WebSocket", "所有中转服务器均不可用，重新探测后按退避策略重连");
+            invalidateDns(failedEndpoint);
+            probeEndpoints();
+            reconnect();
+        }
     }
 
     // 启动WebSocket连接
@@ -172,6 +428,10 @@ public class WebSocketManager {
         autoReconnectEnabled = true;
         
         if (isConnecting || !deviceNumberManager.hasDeviceNumber()) return;
+
+        // 保活闹钟和定时切换在连接断开期间继续运行，直到主动断开
+        keepAlive.start();
+        rotation.start();
         
         // 先断开现有连接
         forceDisconnect();
@@ -180,93 +440,114 @@ public class WebSocketManager {
 
         // 使用设备编号建立连接
         deviceId = deviceNumberManager.getDeviceNumber();
-        Log.d("WebSocket", "尝试连接到: " + SERVER_URL + deviceId);
+        currentEndpoint = endpoints.current();
+        final String endpoint = currentEndpoint;
+        AppLog.d("WebSocket", "尝试连接到: " + endpoint + deviceId);
         
-        // 检查网络状态
-        ConnectivityManager cm = (ConnectivityManager) App.getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
-        boolean isConnected = activeNetwork != null && activeNetwork.isConnectedOrConnecting();
+        // 检查网络状态，网络恢复时由NetworkCallback立即重连
+        Network network = availableNetwork;
         
-        if (!isConnected) {
-            Log.d("WebSocket", "网络未连接，无法建立WebSocket连接");
+        if (network == null) {
+            AppLog.d("WebSocket", "网络未连接，无法建立WebSocket连接");
             isConnecting = false;
             
             // 通知UI网络未连接
-            if (messageListener != null) {
-                new Handler(Looper.getMainLooper()).post(() -> {
-                    messageListener.onMessageReceived("网络未连接，无法建立连接");
-                    messageListener.onConnectionStateChanged(false);
-                });
-            }
+            Events.MESSAGE.publish("网络未连接，无法建立连接");
+            Events.CONNECTION_STATE.publish(false);
             return;
         }
         
+        StartupTracer.connectStarted();
         Request request = new Request.Builder()
-                .url(SERVER_URL + deviceId)
+                .url(endpoint + deviceId)
                 .build();
 
-        webSocket = client.newWebSocket(request, new WebSocketListener() {
+        // socket绑定到当前默认网络，切换网络期间不会走到正在断开的旧网络上
+        boundNetwork = network;
+        webSocket = clientFor(network).newWebSocket(request, new WebSocketListener() {
             @Override
             public void onOpen(WebSocket webSocket, Response response) {
                 isConnecting = false;
-                Log.d("WebSocket", "连接已建立");
+                AppLog.d("WebSocket", "连接已建立: " + endpoint);
+                endpoints.markConnected(endpoint);
+
+                // 新连接的发送队列是空的
+                backpressure.reset();
+                heartbeatHandler.removeCallbacks(drainCheckRunnable);
+
+                // 记录重连耗时和切换网络耗时
+                recordConnectTimings();
+                StartupTracer.connected();
 
                 // 发送设备编号注册
                 sendRegistration();
                 sendStatus("ready");
 
+                // 上报断线期间完成的指令执行结果
+                flushPendingResults();
+
                 // 发送连接成功通知
-                sendConnectionNotification();
+                NotificationHub.get().postConnected();
 
                 // 更新连接状态 - 确保在主线程中更新UI
                 new Handler(Looper.getMainLooper()).post(() -> {
                     updateConnectionState(true);
                     
                     // 添加额外日志确认状态更新
-                    Log.d("WebSocket", "连接状态已更新为：已连接");
+                    AppLog.d("WebSocket", "连接状态已更新为：已连接");
                 });
 
                 // 启动心跳检测
                 startHeartbeat();
 
-                // 重置重连计数
-                reconnectAttempts = 0;
-
                 // 启动定期状态更新
                 startPeriodicStatusUpdate();
+
+                // 上报本次连接相关的指标并启动定期上报
+                startMetricsReporting();
             }
 
             @Override
             public void onMessage(WebSocket webSocket, String text) {
-                Log.d("WebSocket", "收到消息: " + text);
+                AppLog.d("WebSocket", "收到消息: " + text);
                 
+                // 只解析一次，后面的通知和指令处理共用解析结果；不是JSON时json为null
+                JSONObject json = Protocol.parse(text);
+                Protocol.Command command = Protocol.classify(text, json, deviceNumberManager.getDeviceNumber());
+
                 // 处理pong响应
-                try {
-                    JSONObject json = new JSONObject(text);
-                    String type = json.optString("type", "");
-                    if ("pong".equals(type)) {
-                        lastPongTime = System.currentTimeMillis();
-                        Log.d("WebSocket", "收到pong响应，更新最后pong时间");
-                        return; // 不需要进一步处理pong消息
+                if (command == Protocol.Command.PONG) {
+                    lastPongTime = System.currentTimeMillis();
+                    // 服务器回显了ping的发送时间，可以计算往返时间
+                    long echo = json.optLong("echo", 0);
+                    if (echo > 0) {
+                        metrics.record(DeviceMetrics.Series.HEARTBEAT_RTT, lastPongTime - echo);
                     }
-                } catch (Exception e) {
-                    // 解析失败，当作普通消息处理
+                    AppLog.d("WebSocket", "收到pong响应，更新最后pong时间");
+                    // 回复的是当前这次心跳时收发已完成，不必等超时检查，立即释放唤醒锁
+                    heartbeatHandler.post(() -> {
+                        if (link.onPong(echo)) {
+                            heartbeatHandler.removeCallbacks(pongCheckRunnable);
+                            keepAlive.endWake();
+                        }
+                    });
+                    return; // 不需要进一步处理pong消息
                 }
 
                 // 发送系统通知
-                sendNotification(text);
+                notifyMessage(text, json);
 
-                if (messageListener != null) {
-                    new Handler(Looper.getMainLooper()).post(() ->
-                            messageListener.onMessageReceived(text));
-                }
+                Events.MESSAGE.publish(text);
 
-                handleMessage(text);
+                handleMessage(text, json, command);
             }
 
             @Override
             public void onClosed(WebSocket webSocket, int code, String reason) {
-                Log.d("WebSocket", "连接已关闭: 代码=" + code + ", 原因=" + reason);
+                AppLog.d("WebSocket", "连接已关闭: 代码=" + code + ", 原因=" + reason);
+                if (isStale(webSocket)) {
+                    return;
+                }
                 
                 // 立即更新连接状态为断开
                 updateConnectionState(false);
@@ -283,7 +564,12 @@ public class WebSocketManager {
 
             @Override
             public void onFailure(WebSocket webSocket, Throwable t, Response response) {
-                Log.e("WebSocket", "连接失败: " + (t != null ? t.getMessage() : "未知错误"));
+                AppLog.e("WebSocket", "连接失败: " + (t != null ? t.getMessage() : "未知错误"));
+                if (isStale(webSocket)) {
+                    return;
+                }
+                // 保活唤醒发起的重连已有结果，之后的重连交给退避计时和下一次保活闹钟
+                heartbeatHandler.post(keepAlive::endWake);
                 
                 // 立即更新连接状态为断开
                 updateConnectionState(false);
@@ -292,32 +578,42 @@ public class WebSocketManager {
                 WebSocketManager.this.webSocket = null;  // 修正这一行
                 isConnecting = false;
                 
-                // 尝试重连
-                reconnect();
+                // 优先切换到其他地址，全部不可用时再退避重连
+                failover(endpoint);
             }
         });
     }
 
+    // 已经被新连接取代的旧连接的回调不再处理，避免把新连接置空
+    private boolean isStale(WebSocket socket) {
+        WebSocket current = webSocket;
+        if (current != null && current != socket) {
+            AppLog.d("WebSocket", "忽略旧连接的回调");
+            return true;
+        }
+        return false;
+    }
+
     // 发送设备编号注册信息
     private void sendRegistration() {
         try {
             if (webSocket != null) {
-                JSONObject json = new JSONObject();
-                json.put("type", "register");
-                json.put("deviceNumber", deviceId);
-                json.put("timestamp", System.currentTimeMillis());
+                RotationPolicy rotationPolicy = deviceNumberManager.getRotationPolicy();
+                String registration = Protocol.register(deviceId, deviceNumberManager.getGroups(),
+                        TuningConfig.current().version(), rotationPolicy != null ? rotationPolicy.version : 0,
+                        System.currentTimeMillis());
                 
-                boolean sent = webSocket.send(json.toString());
-                Log.d("WebSocket", "发送注册消息: " + json.toString() + ", 结果: " + sent);
+                boolean sent = webSocket.send(registration);
+                AppLog.d("WebSocket", "发送注册消息: " + registration + ", 结果: " + sent);
                 
                 if (!sent) {
-                    Log.d("WebSocket", "注册消息发送失败，连接可能已断开");
+                    AppLog.d("WebSocket", "注册消息发送失败，连接可能已断开");
                     forceDisconnect();
                     new Handler(Looper.getMainLooper()).postDelayed(this::connect, 1000);
                 }
             }
         } catch (Exception e) {
-            Log.e("WebSocket", "发送注册消息失败", e);
+            AppLog.e("WebSocket", "发送注册消息失败", e);
         }
     }
 
@@ -327,9 +623,9 @@ public class WebSocketManager {
         if (isConnecting) return;
         
         // 如果达到最大重试次数，延长等待时间
-        if (reconnectAttempts >= MAX_RECONNECT_ATTEMPTS) {
-            Log.d("WebSocket", "达到最大重连次数，延长等待时间");
-            reconnectAttempts = 0;
+        if (link.reconnectAttempts() >= MAX_RECONNECT_ATTEMPTS) {
+            AppLog.d("WebSocket", "达到最大重连次数，延长等待时间");
+            link.resetReconnectAttempts();
             
             // 延迟30秒后再次尝试
             new Handler(Looper.getMainLooper()).postDelayed(() -> {
@@ -342,10 +638,14 @@ public class WebSocketManager {
         }
         
         // 计算延迟时间（指数退避）
-        long delay = BASE_RECONNECT_DELAY * (long)Math.pow(1.5, reconnectAttempts);
-        reconnectAttempts++;
+        long delay = link.nextReconnectDelay(tuned(TuningConfig.Key.RECONNECT_BASE));
         
-        Log.d("WebSocket", "计划在 " + delay + "ms 后进行第 " + reconnectAttempts + " 次重连");
+        AppLog.d("WebSocket", "计划在 " + delay + "ms 后进行第 " + link.reconnectAttempts() + " 次重连");
+        
+        // 等待期间预热连接，服务器正常时重连只需要WebSocket升级这一个往返
+        if (delay < SecureTransport.POOL_KEEP_ALIVE_SECONDS * 1000) {
+            prewarm(endpoints.current());
+        }
         
         // 延迟后重连
         new Handler(Looper.getMainLooper()).postDelayed(() -> {
@@ -356,106 +656,362 @@ public class WebSocketManager {
         }, delay);
     }
 
+    // 按背压策略发送一帧，droppable的帧在队列拥塞时不入队
+    private int sendFrame(String text, boolean droppable) {
+        WebSocket ws = webSocket;
+        if (ws == null) {
+            return SEND_FAILED;
+        }
+        if (droppable && backpressure.update(ws.queueSize())) {
+            scheduleDrainCheck();
+            return SEND_DEFERRED;
+        }
+        if (!ws.send(text)) {
+            return SEND_FAILED;
+        }
+        if (backpressure.update(ws.queueSize())) {
+            scheduleDrainCheck();
+        }
+        return SEND_OK;
+    }
+
+    // 队列拥塞期间定期检查是否已降到低水位
+    private void scheduleDrainCheck() {
+        heartbeatHandler.removeCallbacks(drainCheckRunnable);
+        heartbeatHandler.postDelayed(drainCheckRunnable, DRAIN_CHECK_INTERVAL);
+    }
+
     // 发送状态更新
     public void sendStatus(String status) {
         if (webSocket != null) {
-            JSONObject json = new JSONObject();
             try {
-                json.put("type", "status");
-                json.put("status", status);
-                webSocket.send(json.toString());
+                // 队列拥塞时只保留最新的状态，恢复后再发送
+                if (sendFrame(Protocol.status(status), true) == SEND_DEFERRED) {
+                    deferredStatus = status;
+                }
             } catch (JSONException e) {
                 e.printStackTrace();
             }
         }
     }
 
-    // 处理接收到的消息
-    private void handleMessage(String message) {
-        try {
-            JSONObject json = new JSONObject(message);
-
-            // 验证消息是否发给当前设备
-            String targetDevice = json.optString("targetDevice");
-            if (!targetDevice.isEmpty() && !targetDevice.equals(deviceNumberManager.getDeviceNumber())) {
-                Log.d("WebSocket", "消息目标不匹配，忽略");
-                return;
+    // 处理接收到的消息，json和command是onMessage中解析和分类好的结果，不是JSON时json为null
+    private void handleMessage(String message, JSONObject json, Protocol.Command command) {
+        long receivedAt = System.currentTimeMillis();
+        if (json == null) {
+            // 尝试检查原始消息
+            if (command == Protocol.Command.SWITCH_NETWORK) {
+                AppLog.d("WebSocket", "收到切换网络指令(文本匹配)");
+                
+                // 通知UI更新日志
+                Events.MESSAGE.publish("收到切换网络指令(文本匹配)，准备执行下拉操作");
+                
+                performNetworkSwitch(null);
+            } else {
+                AppLog.e("WebSocket", "解析消息错误: 不是JSON消息");
             }
+            return;
+        }
 
-            String action = json.optString("action");
-            String content = json.optString("content", "");
+        // 验证消息是否发给当前设备
+        if (command == Protocol.Command.NOT_FOR_DEVICE) {
+            AppLog.d("WebSocket", "消息目标不匹配，忽略");
+            return;
+        }
 
-            switch (action) {
-                case "toggleAirplane":
-                    // 暂时不实现无障碍服务控制
-                    Log.d("WebSocket", "收到飞行模式切换指令");
-                    break;
-                default:
-                    // 检查消息内容是否包含"请切换网络"
-                    if (content.contains("请切换网络") || message.contains("请切换网络")) {
-                        Log.d("WebSocket", "收到切换网络指令");
-                        
-                        // 通知UI更新日志
-                        if (messageListener != null) {
-                            new Handler(Looper.getMainLooper()).post(() ->
-                                    messageListener.onMessageReceived("收到切换网络指令，准备执行下拉操作"));
-                        }
-                        
-                        performNetworkSwitch();
-                    } else {
-                        Log.w("WebSocket", "未知动作: " + action);
+        String action = json.optString("action");
+
+        // 控制端使用wait模式时，需要上报执行结果
+        CommandResult result = null;
+        if (json.optBoolean("expectResult", false) && !json.optString("messageId").isEmpty()) {
+            result = new CommandResult(json.optString("messageId"), receivedAt);
+        }
+
+        switch (command) {
+            case TOGGLE_AIRPLANE:
+                // 暂时不实现无障碍服务控制
+                AppLog.d("WebSocket", "收到飞行模式切换指令");
+                reportResult(result, false, "不支持的指令: " + action);
+                break;
+            case SET_GROUPS:
+                // 服务器修改了设备所属分组，保存后重新注册使其生效
+                List<String> groups = new ArrayList<>();
+                JSONArray array = json.optJSONArray("groups");
+                if (array != null) {
+                    for (int i = 0; i < array.length(); i++) {
+                        groups.add(array.optString(i));
                     }
-            }
-        } catch (JSONException e) {
-            // 尝试检查原始消息
-            if (message.contains("请切换网络")) {
-                Log.d("WebSocket", "收到切换网络指令(文本匹配)");
+                }
+                deviceNumberManager.saveGroups(groups);
+                AppLog.d("WebSocket", "设备分组已更新: " + groups);
+                sendRegistration();
+                break;
+            case SET_ENDPOINTS:
+                // 服务器推送中转服务器地址列表，保存后重新探测
+                List<String> urls = new ArrayList<>();
+                JSONArray endpointArray = json.optJSONArray("endpoints");
+                if (endpointArray != null) {
+                    for (int i = 0; i < endpointArray.length(); i++) {
+                        urls.add(endpointArray.optString(i));
+                    }
+                }
+                deviceNumberManager.saveRelayEndpoints(urls);
+                List<String> saved = deviceNumberManager.getRelayEndpoints();
+                if (saved.isEmpty()) {
+                    AppLog.w("WebSocket", "收到的中转服务器地址列表无效: " + urls);
+                    break;
+                }
+                endpoints.setEndpoints(saved);
+                AppLog.d("WebSocket", "中转服务器地址已更新: " + saved);
+                probeEndpoints();
+                // 当前连接的地址不在新列表中时切换
+                if (!saved.contains(currentEndpoint)) {
+                    forceDisconnect();
+                    scheduleConnect(FAILOVER_DELAY);
+                }
+                break;
+            case TUNING_UPDATE:
+                applyTuning(json.optJSONObject("tuning"));
+                break;
+            case SET_ROTATION:
+                JSONObject policy = json.optJSONObject("rotation");
+                heartbeatHandler.post(() -> applyRotationPolicy(policy));
+                break;
+            case LOG_PULL:
+                pullLogs(json.optString("requestId"),
+                        json.optLong("from", 0),
+                        json.optLong("to", Long.MAX_VALUE),
+                        json.optLong("maxBytes", LOG_PULL_MAX_BYTES));
+                break;
+            case SWITCH_NETWORK:
+                // 消息内容包含"请切换网络"
+                AppLog.d("WebSocket", "收到切换网络指令");
                 
                 // 通知UI更新日志
-                if (messageListener != null) {
-                    new Handler(Looper.getMainLooper()).post(() ->
-                            messageListener.onMessageReceived("收到切换网络指令(文本匹配)，准备执行下拉操作"));
-                }
+                Events.MESSAGE.publish("收到切换网络指令，准备执行下拉操作");
                 
-                performNetworkSwitch();
+                performNetworkSwitch(result);
+                break;
+            default:
+                AppLog.w("WebSocket", "未知动作: " + action);
+                reportResult(result, false, "未知指令");
+        }
+    }
+
+    // 按时间范围读取磁盘日志，以log_chunk分块发回服务器，最后发送log_end
+    private void pullLogs(String requestId, long from, long to, long maxBytes) {
+        if (requestId.isEmpty()) {
+            return;
+        }
+        logPullExecutor.execute(() -> {
+            DiskLog diskLog = DiskLog.get();
+            // 只在发起拉取的连接上发送：连接断开或被替换后服务器端的这次拉取已经失败，不再占用线程
+            WebSocket ws = webSocket;
+            long deadline = System.currentTimeMillis() + LOG_PULL_TIMEOUT;
+            int[] chunks = {0};
+            long[] bytes = {0};
+            int[] sendState = {SEND_OK};
+            boolean truncated = false;
+            String error = null;
+
+            if (diskLog == null) {
+                error = "磁盘日志不可用";
             } else {
-                Log.e("WebSocket", "解析消息错误: " + e.getMessage());
+                truncated = diskLog.read(from, to, LOG_CHUNK_BYTES, Math.min(maxBytes, LOG_PULL_MAX_BYTES), data -> {
+                    if (sendState[0] != SEND_OK) {
+                        return;
+                    }
+                    try {
+                        JSONObject chunk = new JSONObject();
+                        chunk.put("type", "log_chunk");
+                        chunk.put("requestId", requestId);
+                        chunk.put("seq", chunks[0]);
+                        chunk.put("data", data);
+                        sendState[0] = sendLogFrame(ws, chunk.toString(), deadline);
+                        if (sendState[0] == SEND_OK) {
+                            chunks[0]++;
+                            bytes[0] += data.length();
+                        }
+                    } catch (JSONException e) {
+                        sendState[0] = SEND_FAILED;
+                    }
+                });
+                if (sendState[0] == SEND_FAILED) {
+                    AppLog.w("WebSocket", "日志上传中断，连接已断开: " + requestId);
+                    return; // 服务器端按设备断开处理
+                }
+                if (sendState[0] == SEND_DEFERRED) {
+                    // 中转服务器长时间不读取，停止发送剩余的块，按截断结束这次拉取
+                    AppLog.w("WebSocket", "日志上传超时，已发送" + chunks[0] + "块: " + requestId);
+                    truncated = true;
+                }
+            }
+
+            try {
+                JSONObject end = new JSONObject();
+                end.put("type", "log_end");
+                end.put("requestId", requestId);
+                end.put("chunks", chunks[0]);
+                end.put("bytes", bytes[0]);
+                end.put("truncated", truncated);
+                if (error != null) {
+                    end.put("error", error);
+                }
+                // 结束消息很小，不等拥塞恢复直接入队
+                if (webSocket == ws && ws != null) {
+                    ws.send(end.toString());
+                }
+                AppLog.d("WebSocket", "日志上传完成: " + chunks[0] + "块, " + bytes[0] + "字节");
+            } catch (JSONException e) {
+                AppLog.e("WebSocket", "构建日志结束消息失败", e);
+            }
+        });
+    }
+
+    // 发送队列拥塞时等待恢复，最多等到deadline。
+    // 返回SEND_OK；ws已不是当前连接或已关闭时返回SEND_FAILED；到deadline仍拥塞时返回SEND_DEFERRED
+    private int sendLogFrame(WebSocket ws, String text, long deadline) {
+        while (true) {
+            if (ws == null || webSocket != ws) {
+                return SEND_FAILED;
+            }
+            int sendResult = sendFrame(text, true);
+            if (sendResult != SEND_DEFERRED) {
+                return sendResult;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                return SEND_DEFERRED;
+            }
+            try {
+                Thread.sleep(DRAIN_CHECK_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return SEND_FAILED;
             }
         }
     }
 
-    // 执行网络切换操作
-    private void performNetworkSwitch() {
+    // 执行网络切换操作，result不为null时在完成后上报执行结果
+    private void performNetworkSwitch(CommandResult result) {
+        toggleNetwork((success, error) -> finishSwitch(result, success, error));
+    }
+
+    // 定时切换到期（主线程，RotationScheduler持有唤醒锁），结果和指令结果一样排队上报
+    private void performScheduledRotation(RotationPolicy policy, long seq, long scheduledAt) {
+        CommandResult result = CommandResult.rotation(policy, seq, scheduledAt, System.currentTimeMillis());
+        Events.MESSAGE.publish("执行定时网络切换（第" + seq + "次）");
+        toggleNetwork((success, error) -> {
+            rotation.endWake();
+            finishSwitch(result, success, error);
+        });
+    }
+
+    // 通过无障碍服务切换网络，listener在主线程回调；无障碍服务未启用时立即以失败回调
+    private void toggleNetwork(NetworkAccessibilityService.ToggleListener listener) {
         // 检查无障碍服务是否启用
         NetworkAccessibilityService service = NetworkAccessibilityService.getInstance();
         if (service != null) {
+            // 记录切换开始时间，重新连接成功后计算切换耗时
+            rotationStartedAt = System.currentTimeMillis();
+
             // 通知UI更新日志
-            if (messageListener != null) {
-                new Handler(Looper.getMainLooper()).post(() ->
-                        messageListener.onMessageReceived("正在执行网络切换操作..."));
-            }
+            Events.MESSAGE.publish("正在执行网络切换操作...");
             
             // 在主线程中执行
-            new Handler(Looper.getMainLooper()).post(() -> {
-                service.toggleNetwork(); // 调用新的toggleNetwork方法
-            });
+            new Handler(Looper.getMainLooper()).post(() -> service.toggleNetwork(listener));
         } else {
-            Log.e("WebSocket", "无障碍服务未启用，无法执行网络切换");
+            AppLog.e("WebSocket", "无障碍服务未启用，无法执行网络切换");
             
             // 通知UI更新日志
-            if (messageListener != null) {
-                new Handler(Looper.getMainLooper()).post(() ->
-                        messageListener.onMessageReceived("无障碍服务未启用，无法执行网络切换"));
-            }
+            Events.MESSAGE.publish("无障碍服务未启用，无法执行网络切换");
             
             // 通知用户需要启用无障碍服务
-            if (messageListener != null) {
-                new Handler(Looper.getMainLooper()).post(() ->
-                        messageListener.onAccessibilityRequired());
+            Events.ACCESSIBILITY_REQUIRED.publish("网络切换");
+
+            listener.onToggleFinished(false, "无障碍服务未启用");
+        }
+    }
+
+    private void finishSwitch(CommandResult result, boolean success, String error) {
+        if (result == null) {
+            return;
+        }
+        result.toggledAt = System.currentTimeMillis();
+        if (success) {
+            // 切换成功后连接会断开，等重新连接后再上报；
+            // 如果连接没有断开，稍后用当前连接上报
+            queueResult(result, true, null);
+            heartbeatHandler.postDelayed(this::flushPendingResults, RESULT_FALLBACK_DELAY);
+        } else {
+            reportResult(result, false, error);
+        }
+    }
+
+    // 记录执行结果并尽快上报
+    private void reportResult(CommandResult result, boolean success, String error) {
+        if (result == null) {
+            return;
+        }
+        if (result.toggledAt == 0) {
+            result.toggledAt = System.currentTimeMillis();
+        }
+        queueResult(result, success, error);
+        flushPendingResults();
+    }
+
+    private void queueResult(CommandResult result, boolean success, String error) {
+        result.success = success;
+        result.error = error;
+        synchronized (pendingResults) {
+            pendingResults.add(result);
+            if (result.isRotation()) {
+                trimRotationResults();
+            }
+        }
+    }
+
+    // 断线期间定时切换会一直执行，超过上限时丢弃最早的结果，指令结果不受影响
+    private void trimRotationResults() {
+        int excess = -MAX_PENDING_ROTATION_RESULTS;
+        for (CommandResult pending : pendingResults) {
+            if (pending.isRotation()) {
+                excess++;
+            }
+        }
+        for (Iterator<CommandResult> it = pendingResults.iterator(); excess > 0 && it.hasNext(); ) {
+            if (it.next().isRotation()) {
+                it.remove();
+                excess--;
             }
         }
     }
 
+    // 通过当前连接上报所有待上报的执行结果，发送失败的保留到下次连接
+    private void flushPendingResults() {
+        WebSocket ws = webSocket;
+        if (ws == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (pendingResults) {
+            List<CommandResult> unsent = new ArrayList<>();
+            for (CommandResult result : pendingResults) {
+                try {
+                    if (!ws.send(result.toJson(now))) {
+                        unsent.add(result);
+                    } else {
+                        AppLog.d("WebSocket", "已上报执行结果: " + result.describe());
+                    }
+                } catch (JSONException e) {
+                    AppLog.e("WebSocket", "构建执行结果失败", e);
+                }
+            }
+            pendingResults.clear();
+            pendingResults.addAll(unsent);
+        }
+    }
+
     // 更新设备编号
     public void updateDeviceNumber(String newNumber) {
         // 关闭现有连接
@@ -471,109 +1027,60 @@ public class WebSocketManager {
         connect();
     }
 
+    // 飞行模式切换后调用：断开旧连接，网络已经可用则立即重连，否则等网络回调
+    public void reconnectWhenNetworkReady() {
+        if (availableNetwork == null) {
+            AppLog.d("WebSocket", "网络尚未恢复，等待网络可用后重连");
+            forceDisconnect();
+            return;
+        }
+        // 切换前开始的握手已经失效，connect()会先断开旧连接
+        isConnecting = false;
+        connect();
+    }
+
     // 关闭连接
     public void disconnect() {
-        Log.d("WebSocket", "用户主动断开连接");
+        AppLog.d("WebSocket", "用户主动断开连接");
         
         // 禁用自动重连
         autoReconnectEnabled = false;
         stopAutoReconnect();
+        keepAlive.stop();
+        rotation.stop();
         
         // 断开连接
         forceDisconnect();
     }
 
-    // 修改发送通知的方法
-    private void sendNotification(String message) {
-        try {
-            JSONObject json = new JSONObject(message);
-            String type = json.optString("type", "");
-            String action = json.optString("action", "");
-            
-            // 只对特定类型的消息发送通知
-            // 系统消息和欢迎消息不发送通知
-            if (type.equals("system") && (action.equals("welcome") || 
-                                          action.equals("register_success") || 
-                                          action.equals("status_updated"))) {
-                return;
-            }
-            
-            // 创建通知
-            Context context = App.getContext();
-            NotificationManagerCompat notificationManager = NotificationManagerCompat.from(context);
-            
-            // 创建通知渠道（Android 8.0及以上需要）
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                NotificationChannel channel = new NotificationChannel(
-                        "message_channel",
-                        "消息通知",
-                        NotificationManager.IMPORTANCE_HIGH);
-                NotificationManager manager = context.getSystemService(NotificationManager.class);
-                manager.createNotificationChannel(channel);
-            }
-            
-            // 解析消息内容，提取有用信息
-            String title = "收到新消息";
-            String content = message;
-            
-            if (json.has("message")) {
-                content = json.optString("message", message);
-            } else if (json.has("content")) {
-                content = json.optString("content", message);
-            }
-            
-            // 创建通知
-            NotificationCompat.Builder builder = new NotificationCompat.Builder(context, "message_channel")
-                    .setSmallIcon(R.mipmap.ic_launcher)
-                    .setContentTitle(title)
-                    .setContentText(content)
-                    .setPriority(NotificationCompat.PRIORITY_HIGH)
-                    .setAutoCancel(true);
-            
-            // 发送通知
-            try {
-                // 使用随机ID，确保每条消息都显示
-                int notificationId = (int) System.currentTimeMillis();
-                notificationManager.notify(notificationId, builder.build());
-            } catch (SecurityException e) {
-                Log.e("WebSocket", "没有通知权限", e);
-            }
-        } catch (JSONException e) {
-            // JSON解析失败，不发送通知
-            Log.e("WebSocket", "解析消息失败，不发送通知", e);
+    // 收到的指令交给NotificationHub合并显示，json为null表示不是JSON消息，不发送通知
+    private void notifyMessage(String message, JSONObject json) {
+        if (json == null) {
+            return;
         }
-    }
+        String type = json.optString("type", "");
+        String action = json.optString("action", "");
 
-    // 添加连接成功通知方法
-    private void sendConnectionNotification() {
-        // 创建通知
-        Context context = App.getContext();
-        NotificationManagerCompat notificationManager = NotificationManagerCompat.from(context);
-        
-        // 创建通知渠道（Android 8.0及以上需要）
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel channel = new NotificationChannel(
-                    "connection_channel",
-                    "连接状态通知",
-                    NotificationManager.IMPORTANCE_DEFAULT);
-            NotificationManager manager = context.getSystemService(NotificationManager.class);
-            manager.createNotificationChannel(channel);
+        // 只对特定类型的消息发送通知
+        // 系统消息和欢迎消息不发送通知
+        if (type.equals("system") && (action.equals("welcome") ||
+                                      action.equals("register_success") ||
+                                      action.equals("status_updated") ||
+                                      action.equals("set_groups") ||
+                                      action.equals("set_endpoints") ||
+                                      action.equals("tuning_update") ||
+                                      action.equals("set_rotation") ||
+                                      action.equals("log_pull"))) {
+            return;
         }
-        
-        // 创建通知
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, "connection_channel")
-                .setSmallIcon(R.mipmap.ic_launcher)
-                .setContentTitle("连接成功")
-                .setContentText("已成功连接到服务器")
-                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
-                .setAutoCancel(true);
-        
-        // 发送通知
-        try {
-            notificationManager.notify(1001, builder.build());
-        } catch (SecurityException e) {
-            Log.e("WebSocket", "没有通知权限", e);
+
+        String content = message;
+        if (json.has("message")) {
+            content = json.optString("message", message);
+        } else if (json.has("content")) {
+            content = json.optString("content", message);
         }
+        NotificationHub.get().postMessage(content);
     }
 
     // 改进isConnected方法，增加容错性
@@ -586,7 +1093,7 @@ public class WebSocketManager {
         // 检查最后一次pong响应时间，但使用更宽松的超时时间
         long timeSinceLastPong = System.currentTimeMillis() - lastPongTime;
         if (lastPongTime > 0 && timeSinceLastPong > 120000) { // 2分钟内没有pong响应
-            Log.d("WebSocket", "连接状态检查：超过2分钟未收到pong响应");
+            AppLog.d("WebSocket", "连接状态检查：超过2分钟未收到pong响应");
             return false;
         }
         
@@ -599,22 +1106,22 @@ public class WebSocketManager {
         long currentTime = System.currentTimeMillis();
         
         // 如果距离上次状态变化时间太短，且不是强制性的状态变化，则忽略
-        if (currentTime - lastStateChangeTime < STATE_CHANGE_COOLDOWN) {
+        if (currentTime - lastStateChangeTime < tuned(TuningConfig.Key.STATE_CHANGE_COOLDOWN)) {
             // 如果是要设置为已连接，可以立即执行（提高响应速度）
             if (connected && !isConnected) {
-                Log.d("WebSocket", "虽然在冷却期，但允许立即更新为已连接状态");
+                AppLog.d("WebSocket", "虽然在冷却期，但允许立即更新为已连接状态");
             } 
             // 如果是要设置为未连接，需要累计失败次数
             else if (!connected && isConnected) {
-                consecutiveFailedChecks++;
-                Log.d("WebSocket", "连接检查失败，当前累计失败次数: " + consecutiveFailedChecks);
+                boolean reached = link.recordFailure(requiredFailedChecks());
+                AppLog.d("WebSocket", "连接检查失败，当前累计失败次数: " + link.failedChecks());
                 
                 // 如果失败次数不够，暂不更新状态
-                if (consecutiveFailedChecks < REQUIRED_FAILED_CHECKS) {
-                    Log.d("WebSocket", "失败次数不足，保持当前连接状态");
+                if (!reached) {
+                    AppLog.d("WebSocket", "失败次数不足，保持当前连接状态");
                     return;
                 }
-                Log.d("WebSocket", "达到所需失败次数，准备更新状态");
+                AppLog.d("WebSocket", "达到所需失败次数，准备更新状态");
             }
             // 如果状态没变化，直接返回
             else if (connected == isConnected) {
@@ -633,13 +1140,13 @@ public class WebSocketManager {
                 
                 // 如果消息能发送成功，说明连接实际上是有效的
                 if (sent) {
-                    Log.d("WebSocket", "尝试设置为未连接状态，但连接测试成功，保持连接状态");
-                    consecutiveFailedChecks = 0; // 重置失败计数
+                    AppLog.d("WebSocket", "尝试设置为未连接状态，但连接测试成功，保持连接状态");
+                    link.clearFailures(); // 重置失败计数
                     return; // 直接返回，不更新状态
                 }
             } catch (Exception e) {
                 // 发送失败，确认连接已断开
-                Log.d("WebSocket", "连接测试失败，确认连接已断开", e);
+                AppLog.d("WebSocket", "连接测试失败，确认连接已断开", e);
             }
         }
         
@@ -655,22 +1162,28 @@ public class WebSocketManager {
             lastStateChangeTime = currentTime;
             
             // 重置失败计数
-            consecutiveFailedChecks = 0;
+            link.clearFailures();
             
-            Log.d("WebSocket", "连接状态变化: " + (connected ? "已连接" : "已断开") + 
+            AppLog.d("WebSocket", "连接状态变化: " + (connected ? "已连接" : "已断开") + 
                   " (WebSocket对象: " + (webSocket != null ? "存在" : "不存在") + ")");
             
             // 如果断开连接，确保清理资源并启动自动重连
             if (!connected) {
-                // 停止心跳
+                // 记录断开时间，用于计算重连耗时
+                if (disconnectedAt == 0) {
+                    disconnectedAt = currentTime;
+                }
+
+                // 停止心跳和指标上报
                 stopHeartbeat();
+                stopMetricsReporting();
                 
                 // 如果WebSocket对象仍然存在，尝试关闭它
                 if (webSocket != null) {
                     try {
                         webSocket.close(1000, "客户端主动断开");
                     } catch (Exception e) {
-                        Log.e("WebSocket", "关闭WebSocket时出错", e);
+                        AppLog.e("WebSocket", "关闭WebSocket时出错", e);
                     }
                     webSocket = null;
                 }
@@ -680,30 +1193,171 @@ public class WebSocketManager {
             } else {
                 // 连接成功，停止自动重连
                 stopAutoReconnect();
-                reconnectAttempts = 0;
+                link.resetReconnectAttempts();
             }
             
-            // 通知UI更新 - 使用final变量
-            final boolean finalConnected = connected;
-            if (messageListener != null) {
-                new Handler(Looper.getMainLooper()).post(() -> {
-                    messageListener.onConnectionStateChanged(finalConnected);
-                    // 添加日志确认UI通知已发送
-                    Log.d("WebSocket", "已通知UI更新连接状态为: " + (finalConnected ? "已连接" : "已断开"));
-                });
-            }
+            // 通知UI更新
+            Events.CONNECTION_STATE.publish(connected);
+            AppLog.d("WebSocket", "已通知UI更新连接状态为: " + (connected ? "已连接" : "已断开"));
         }
     }
 
-    // 开始心跳检测
+    // 开始心跳检测，onOpen在OkHttp线程回调，保活调度只在主线程使用
     private void startHeartbeat() {
-        stopHeartbeat(); // 先停止现有的心跳
-        heartbeatHandler.postDelayed(heartbeatRunnable, 20000);
+        heartbeatHandler.post(() -> {
+            stopHeartbeat();
+            link.onConnected();
+            keepAlive.onConnected();
+            // 如果这次连接是保活唤醒时发起的，握手完成即可释放唤醒锁
+            keepAlive.endWake();
+        });
     }
 
-    // 停止心跳检测
+    // 停止心跳检测；保活闹钟继续运行，断开期间由它在唤醒时重连
     private void stopHeartbeat() {
-        heartbeatHandler.removeCallbacks(heartbeatRunnable);
+        heartbeatHandler.removeCallbacks(pongCheckRunnable);
+    }
+
+    // 保活闹钟到期：已连接时发送心跳，断开时在这次唤醒里尝试一次重连
+    private void onKeepAlive() {
+        if (webSocket != null && isConnected) {
+            sendHeartbeat();
+            return;
+        }
+        if (autoReconnectEnabled && !isConnecting) {
+            AppLog.d("WebSocket", "保活唤醒时连接已断开，尝试重连");
+            connect();
+        }
+        // 没有发起连接（网络不可用或正在连接中），不必继续持有唤醒锁
+        if (!isConnecting) {
+            keepAlive.endWake();
+        }
+    }
+
+    private void sendHeartbeat() {
+        try {
+            // 记录发送时间
+            long sentTime = System.currentTimeMillis();
+
+            // 发送心跳并检查结果
+            int sendResult = sendFrame(Protocol.ping(deviceId, sentTime), true);
+            if (sendResult == SEND_FAILED) {
+                // send()返回false说明连接已经关闭或正在关闭，不会再恢复，直接重连
+                AppLog.d("WebSocket", "心跳消息发送失败，连接已关闭，准备重连");
+                forceDisconnect();
+                heartbeatHandler.postDelayed(() -> connect(), 1000);
+                return;
+            }
+
+            // 队列拥塞时本次心跳不入队，队列还在消化说明连接仍然可用，不计入失败
+            if (sendResult == SEND_DEFERRED) {
+                AppLog.d("WebSocket", "发送队列拥塞，跳过本次心跳");
+                keepAlive.endWake();
+                return;
+            }
+
+            // 心跳入队不代表服务器已收到，失败计数只由pong超时检查负责
+            link.onPingSent(sentTime);
+            heartbeatHandler.removeCallbacks(pongCheckRunnable);
+            heartbeatHandler.postDelayed(pongCheckRunnable, tuned(TuningConfig.Key.PONG_TIMEOUT));
+        } catch (Exception e) {
+            AppLog.e("WebSocket", "发送心跳消息失败", e);
+            // 增加失败计数而不是立即断开
+            if (link.recordFailure(requiredFailedChecks())) {
+                // 更新连接状态为断开
+                updateConnectionState(false);
+                // 尝试重连
+                reconnect();
+            }
+            keepAlive.endWake();
+        }
+    }
+
+    // 连接建立时记录重连耗时和切换网络耗时
+    private void recordConnectTimings() {
+        long now = System.currentTimeMillis();
+        if (disconnectedAt > 0) {
+            metrics.record(DeviceMetrics.Series.RECONNECT_DURATION, now - disconnectedAt);
+            disconnectedAt = 0;
+        }
+        if (rotationStartedAt > 0) {
+            metrics.record(DeviceMetrics.Series.ROTATION_LATENCY, now - rotationStartedAt);
+            rotationStartedAt = 0;
+        }
+    }
+
+    // 开始定期上报指标，连接建立后立即上报一次
+    private void startMetricsReporting() {
+        stopMetricsReporting();
+        heartbeatHandler.post(metricsRunnable);
+    }
+
+    // 停止指标上报
+    private void stopMetricsReporting() {
+        heartbeatHandler.removeCallbacks(metricsRunnable);
+    }
+
+    // 发送指标快照
+    private void sendMetricsSnapshot() {
+        // 队列拥塞时不取出样本，留到下次上报
+        if (webSocket == null || !metrics.hasSamples() || backpressure.isSaturated()) {
+            return;
+        }
+
+        // 取出的样本在入队成功前都可能放回：连接正在关闭或队列已满时send返回false，
+        // 这时把样本放回环形缓冲，重连后随下一次快照上报
+        DeviceMetrics.Series[] allSeries = DeviceMetrics.Series.values();
+        long[][] drained = new long[allSeries.length][];
+        for (DeviceMetrics.Series series : allSeries) {
+            drained[series.ordinal()] = metrics.drain(series);
+        }
+
+        boolean sent = false;
+        try {
+            JSONObject samples = new JSONObject();
+            for (DeviceMetrics.Series series : allSeries) {
+                JSONArray values = new JSONArray();
+                for (long value : drained[series.ordinal()]) {
+                    values.put(value);
+                }
+                samples.put(series.key(), values);
+            }
+
+            JSONObject json = new JSONObject();
+            json.put("type", "metrics");
+            json.put("carrier", getCarrierName());
+            json.put("rom", Build.MANUFACTURER + " " + Build.DISPLAY);
+            json.put("samples", samples);
+            json.put("timestamp", System.currentTimeMillis());
+
+            WebSocket ws = webSocket;
+            sent = ws != null && ws.send(json.toString());
+            AppLog.d("WebSocket", "发送指标快照, 结果: " + sent);
+        } catch (Exception e) {
+            AppLog.e("WebSocket", "发送指标快照失败", e);
+        } finally {
+            if (!sent) {
+                for (DeviceMetrics.Series series : allSeries) {
+                    metrics.restore(series, drained[series.ordinal()]);
+                }
+            }
+        }
+    }
+
+    // 获取运营商名称
+    private String getCarrierName() {
+        try {
+            TelephonyManager tm = (TelephonyManager) App.getContext().getSystemService(Context.TELEPHONY_SERVICE);
+            if (tm != null) {
+                String name = tm.getNetworkOperatorName();
+                if (name != null && !name.isEmpty()) {
+                    return name;
+                }
+            }
+        } catch (Exception e) {
+            AppLog.e("WebSocket", "获取运营商名称失败", e);
+        }
+        return "unknown";
     }
 
     // 检查连接状态
@@ -718,7 +1372,7 @@ public class WebSocketManager {
 
     // 改进强制断开连接方法
     public void forceDisconnect() {
-        Log.d("WebSocket", "强制断开连接");
+        AppLog.d("WebSocket", "强制断开连接");
         
         // 停止心跳检测
         stopHeartbeat();
@@ -741,21 +1395,22 @@ public class WebSocketManager {
                 }
                 
                 // 关闭连接
-                webSocket.close(1001, "客户端主动断开");
+                final WebSocket closing = webSocket;
+                closing.close(1001, "客户端主动断开");
                 
-                // 确保连接真的关闭
+                // 确保连接真的关闭；只取消这一个连接，不能影响之后新建的连接
                 new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                    if (webSocket != null) {
-                        try {
-                            webSocket.cancel(); // 强制取消
-                        } catch (Exception e) {
-                            // 忽略错误
-                        }
+                    try {
+                        closing.cancel(); // 强制取消
+                    } catch (Exception e) {
+                        // 忽略错误
+                    }
+                    if (webSocket == closing) {
                         webSocket = null;
                     }
                 }, 1000);
             } catch (Exception e) {
-                Log.e("WebSocket", "关闭连接时出错", e);
+                AppLog.e("WebSocket", "关闭连接时出错", e);
                 webSocket = null;
             }
         }
@@ -763,13 +1418,13 @@ public class WebSocketManager {
         // 重置状态
         isConnecting = false;
         lastPongTime = 0;
-        reconnectAttempts = 0;
+        link.resetReconnectAttempts();
     }
 
     // 检查与服务器的连接状态
     public void checkConnectionWithServer() {
         if (webSocket == null) {
-            Log.d("WebSocket", "WebSocket对象为null，连接已断开");
+            AppLog.d("WebSocket", "WebSocket对象为null，连接已断开");
             updateConnectionState(false);
             return;
         }
@@ -783,11 +1438,15 @@ public class WebSocketManager {
             pingMessage.put("checkConnection", true); // 标记这是一个连接检查ping
             
             long sentTime = System.currentTimeMillis();
-            boolean sent = webSocket.send(pingMessage.toString());
-            Log.d("WebSocket", "发送连接检查ping: " + sent + ", 时间: " + sentTime);
+            int sendResult = sendFrame(pingMessage.toString(), true);
+            AppLog.d("WebSocket", "发送连接检查ping: " + sendResult + ", 时间: " + sentTime);
             
-            if (!sent) {
-                Log.d("WebSocket", "连接检查ping发送失败，连接已断开");
+            if (sendResult == SEND_DEFERRED) {
+                AppLog.d("WebSocket", "发送队列拥塞，跳过本次连接检查");
+                return;
+            }
+            if (sendResult == SEND_FAILED) {
+                AppLog.d("WebSocket", "连接检查ping发送失败，连接已断开");
                 forceDisconnect();
                 new Handler(Looper.getMainLooper()).postDelayed(this::connect, 1000);
                 return;
@@ -797,7 +1456,7 @@ public class WebSocketManager {
             new Handler(Looper.getMainLooper()).postDelayed(() -> {
                 // 如果在5秒内没有收到pong响应，认为连接已断开
                 if (isConnected && lastPongTime < sentTime) {
-                    Log.d("WebSocket", "连接检查超时，5秒内未收到pong响应");
+                    AppLog.d("WebSocket", "连接检查超时，5秒内未收到pong响应");
                     
                     // 尝试重新注册设备
                     sendRegistration();
@@ -805,19 +1464,19 @@ public class WebSocketManager {
                     // 再次检查
                     new Handler(Looper.getMainLooper()).postDelayed(() -> {
                         if (lastPongTime < sentTime) {
-                            Log.d("WebSocket", "重新注册后仍未收到响应，强制重连");
+                            AppLog.d("WebSocket", "重新注册后仍未收到响应，强制重连");
                             forceDisconnect();
                             connect();
                         } else {
-                            Log.d("WebSocket", "重新注册后收到响应，连接恢复");
+                            AppLog.d("WebSocket", "重新注册后收到响应，连接恢复");
                         }
                     }, 3000);
                 } else {
-                    Log.d("WebSocket", "连接检查通过，收到pong响应");
+                    AppLog.d("WebSocket", "连接检查通过，收到pong响应");
                 }
             }, 5000);
         } catch (Exception e) {
-            Log.e("WebSocket", "发送连接检查ping失败", e);
+            AppLog.e("WebSocket", "发送连接检查ping失败", e);
             forceDisconnect();
             new Handler(Looper.getMainLooper()).postDelayed(this::connect, 1000);
         }
@@ -834,15 +1493,15 @@ public class WebSocketManager {
                 }
                 
                 // 继续下一次检查
-                new Handler(Looper.getMainLooper()).postDelayed(this, 45000); // 45秒检查一次
+                new Handler(Looper.getMainLooper()).postDelayed(this, tuned(TuningConfig.Key.CONNECTION_CHECK_INTERVAL)); // 默认45秒检查一次
             }
-        }, 45000);
+        }, tuned(TuningConfig.Key.CONNECTION_CHECK_INTERVAL));
     }
 
     // 添加主动验证连接的方法
     public void verifyConnection() {
         if (webSocket == null) {
-            Log.d("WebSocket", "WebSocket对象为null，连接已断开");
+            AppLog.d("WebSocket", "WebSocket对象为null，连接已断开");
             updateConnectionState(false);
             return;
         }
@@ -856,10 +1515,14 @@ public class WebSocketManager {
             pingMessage.put("verifyConnection", true);
             
             long sentTime = System.currentTimeMillis();
-            boolean sent = webSocket.send(pingMessage.toString());
+            int sendResult = sendFrame(pingMessage.toString(), true);
             
-            if (!sent) {
-                Log.d("WebSocket", "验证ping发送失败，连接已断开");
+            if (sendResult == SEND_DEFERRED) {
+                AppLog.d("WebSocket", "发送队列拥塞，跳过本次连接验证");
+                return;
+            }
+            if (sendResult == SEND_FAILED) {
+                AppLog.d("WebSocket", "验证ping发送失败，连接已断开");
                 forceDisconnect();
                 connect(); // 立即尝试重连
                 return;
@@ -869,7 +1532,7 @@ public class WebSocketManager {
             new Handler(Looper.getMainLooper()).postDelayed(() -> {
                 // 如果在5秒内没有收到pong响应，认为连接已断开
                 if (isConnected && lastPongTime < sentTime) {
-                    Log.d("WebSocket", "连接验证超时，强制重连");
+                    AppLog.d("WebSocket", "连接验证超时，强制重连");
                     forceDisconnect();
                     connect();
                 }
@@ -881,7 +1544,7 @@ public class WebSocketManager {
                 sendStatus("ready");
             }
         } catch (Exception e) {
-            Log.e("WebSocket", "验证连接失败", e);
+            AppLog.e("WebSocket", "验证连接失败", e);
             forceDisconnect();
             connect();
         }
@@ -897,21 +1560,90 @@ public class WebSocketManager {
                     sendStatus("ready");
                     
                     // 记录日志
-                    Log.d("WebSocket", "已发送定期状态更新");
+                    AppLog.d("WebSocket", "已发送定期状态更新");
                 }
                 
-                // 每5分钟更新一次状态
-                new Handler(Looper.getMainLooper()).postDelayed(this, 5 * 60 * 1000);
+                // 默认每5分钟更新一次状态
+                new Handler(Looper.getMainLooper()).postDelayed(this, tuned(TuningConfig.Key.STATUS_UPDATE_INTERVAL));
             }
-        }, 5 * 60 * 1000);
+        }, tuned(TuningConfig.Key.STATUS_UPDATE_INTERVAL));
+    }
+
+    // 服务器下发的运行参数：校验通过且版本更新时整体替换、保存并调整心跳闹钟，结果回复给服务器
+    private void applyTuning(JSONObject tuning) {
+        long version = tuning != null ? tuning.optLong("version", -1) : -1;
+        TuningConfig config;
+        try {
+            config = TuningConfig.fromJson(tuning);
+        } catch (IllegalArgumentException e) {
+            AppLog.w("WebSocket", "运行参数无效，版本" + version + ": " + e.getMessage());
+            sendTuningAck(version, false, e.getMessage());
+            return;
+        }
+        if (!TuningConfig.apply(config)) {
+            long current = TuningConfig.current().version();
+            AppLog.d("WebSocket", "忽略运行参数版本" + version + "，当前版本" + current);
+            sendTuningAck(version, false, "当前版本" + current + "不低于下发的版本");
+            return;
+        }
+        deviceNumberManager.saveTuning(config);
+        heartbeatHandler.post(() -> keepAlive.applyTuning(config));
+        AppLog.i("WebSocket", "运行参数已更新到版本" + version);
+        sendTuningAck(version, true, null);
+    }
+
+    // 服务器下发的定时切换策略（主线程）：版本更新时替换、保存并重新设置闹钟，结果回复给服务器
+    private void applyRotationPolicy(JSONObject json) {
+        long version = json != null ? json.optLong("version", -1) : -1;
+        RotationPolicy policy;
+        try {
+            policy = RotationPolicy.fromJson(json);
+        } catch (IllegalArgumentException e) {
+            AppLog.w("WebSocket", "定时切换策略无效，版本" + version + ": " + e.getMessage());
+            sendRotationAck(version, false, e.getMessage());
+            return;
+        }
+        long current = rotation.policy().version;
+        if (policy.version <= current) {
+            AppLog.d("WebSocket", "忽略定时切换策略版本" + version + "，当前版本" + current);
+            sendRotationAck(version, false, "当前版本" + current + "不低于下发的版本");
+            return;
+        }
+        deviceNumberManager.saveRotationPolicy(policy);
+        rotation.setPolicy(policy, deviceNumberManager.getRotationHistory());
+        sendRotationAck(version, true, null);
+    }
+
+    private void sendRotationAck(long version, boolean applied, String error) {
+        try {
+            sendFrame(Protocol.rotationAck(version, applied, error), false);
+        } catch (JSONException e) {
+            AppLog.e("WebSocket", "构建定时切换策略确认失败", e);
+        }
+    }
+
+    private void sendTuningAck(long version, boolean applied, String error) {
+        try {
+            sendFrame(Protocol.tuningAck(version, applied, error), false);
+        } catch (JSONException e) {
+            AppLog.e("WebSocket", "构建运行参数确认失败", e);
+        }
+    }
+
+    private static long tuned(TuningConfig.Key key) {
+        return TuningConfig.current().get(key);
+    }
+
+    private static int requiredFailedChecks() {
+        return (int) tuned(TuningConfig.Key.REQUIRED_FAILED_CHECKS);
     }
 
     // 计算重连延迟（指数退避）
     private long calculateReconnectDelay() {
-        // 基础延迟5秒，最大延迟2分钟
-        long delay = Math.min(BASE_RECONNECT_DELAY * (1 << Math.min(reconnectAttempts, 5)), 120000);
-        reconnectAttempts++;
-        return delay;
+        // 默认基础延迟5秒，最大延迟2分钟
+        TuningConfig tuning = TuningConfig.current();
+        return link.nextAutoReconnectDelay(
+                tuning.get(TuningConfig.Key.RECONNECT_BASE), tuning.get(TuningConfig.Key.RECONNECT_MAX));
     }
 
     // 启动自动重连
@@ -919,8 +1651,8 @@ public class WebSocketManager {
         stopAutoReconnect(); // 先停止现有的重连任务
         
         if (autoReconnectEnabled) {
-            Log.d("WebSocket", "启动自动重连机制");
-            reconnectAttempts = 0; // 重置重连尝试次数
+            AppLog.d("WebSocket", "启动自动重连机制");
+            link.resetReconnectAttempts(); // 重置重连尝试次数
             autoReconnectHandler.postDelayed(autoReconnectRunnable, 1000); // 1秒后开始第一次重连
         }
     }
@@ -1,8 +1,6 @@
 package com.example.wscontroller;
 
 import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
 import android.app.Service;
 import android.content.Intent;
 import android.content.pm.ServiceInfo;
@@ -17,54 +15,63 @@ public class WebSocketService extends Service {
     private static final int NOTIFICATION_ID = 1;
     private WebSocketManager webSocketManager;
     private DeviceNumberManager deviceNumberManager;
+    private EventTopic<Boolean>.Subscription connectionSubscription;
+    private volatile boolean started = false;
     
     @Override
     public void onCreate() {
         super.onCreate();
-        deviceNumberManager = new DeviceNumberManager(this);
-        webSocketManager = new WebSocketManager(this);
+        // 进程被杀后START_STICKY重启时从这里开始，只做连接需要的初始化
+        StartupTracer.section("service.onCreate", () -> {
+            NotificationHub.init(this);
+            deviceNumberManager = DeviceNumberManager.get(this);
+            webSocketManager = WebSocketManager.getInstance(this);
+        });
+        // 前台通知显示连接状态
+        connectionSubscription = Events.CONNECTION_STATE.subscribe(connected -> {
+            if (started) {
+                try {
+                    NotificationManagerCompat.from(this).notify(NOTIFICATION_ID, buildNotification(connected));
+                } catch (SecurityException e) {
+                    AppLog.e("WebSocketService", "没有通知权限", e);
+                }
+            }
+        });
     }
     
-    @Override
-    public int onStartCommand(Intent intent, int flags, int startId) {
-        // 创建通知渠道
-        createNotificationChannel();
-        
-        // 创建通知
-        Notification notification = new NotificationCompat.Builder(this, "websocket_channel")
+    private Notification buildNotification(boolean connected) {
+        return new NotificationCompat.Builder(this, NotificationHub.CHANNEL_SERVICE)
                 .setContentTitle("通信服务")
-                .setContentText("正在运行中...")
+                .setContentText(connected ? "已连接" : "正在运行中...")
                 .setSmallIcon(R.mipmap.ic_launcher)
+                .setOnlyAlertOnce(true)
                 .build();
-        
-        // 启动前台服务，指定服务类型
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC);
-        } else {
-            startForeground(NOTIFICATION_ID, notification);
-        }
-        
-        // 连接WebSocket
-        if (deviceNumberManager.hasDeviceNumber()) {
-            webSocketManager.connect();
-        }
+    }
+    
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        StartupTracer.section("service.onStartCommand", () -> {
+            // 创建通知，渠道已在onCreate中创建
+            Notification notification = buildNotification(webSocketManager.isConnected());
+
+            // 启动前台服务，指定服务类型
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC);
+            } else {
+                startForeground(NOTIFICATION_ID, notification);
+            }
+            started = true;
+
+            // 连接WebSocket；界面每次启动都会调用startForegroundService，已连接时不重建连接
+            if (deviceNumberManager.hasDeviceNumber() && !webSocketManager.isConnected()) {
+                webSocketManager.connect();
+            }
+        });
         
         // 确保服务不会被系统轻易杀死
         return START_STICKY;
     }
     
-    private void createNotificationChannel() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel channel = new NotificationChannel(
-                    "websocket_channel",
-                    "WebSocket Service",
-                    NotificationManager.IMPORTANCE_LOW);
-            
-            NotificationManager manager = getSystemService(NotificationManager.class);
-            manager.createNotificationChannel(channel);
-        }
-    }
-    
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -73,10 +80,17 @@ public class WebSocketService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        if (connectionSubscription != null) {
+            connectionSubscription.cancel();
+        }
         // 断开WebSocket连接
         if (webSocketManager != null) {
             webSocketManager.disconnect();
         }
+        // 配置的修改延迟批量写入，进程可能随后被杀，先落盘
+        if (deviceNumberManager != null) {
+            deviceNumberManager.flush();
+        }
         
         // 尝试重启服务
         Intent restartIntent = new Intent(this, WebSocketService.class);
@@ -0,0 +1,71 @@
+package com.example.wscontroller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import okhttp3.Dns;
+
+public class CachingDnsTest {
+    private final AtomicLong now = new AtomicLong(0);
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final AtomicBoolean offline = new AtomicBoolean(false);
+
+    private final Dns upstream = hostname -> {
+        lookups.incrementAndGet();
+        if (offline.get()) {
+            throw new UnknownHostException(hostname);
+        }
+        return Collections.singletonList(InetAddress.getByAddress(hostname, new byte[]{10, 0, 0, (byte) lookups.get()}));
+    };
+
+    @Test
+    public void cachesWithinTtl() throws Exception {
+        CachingDns dns = new CachingDns(upstream, 1000, now::get);
+        List<InetAddress> first = dns.lookup("relay.example.com");
+        now.addAndGet(999);
+        assertSame(first, dns.lookup("relay.example.com"));
+        assertEquals(1, lookups.get());
+
+        now.addAndGet(1);
+        dns.lookup("relay.example.com");
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void servesStaleResultWhenResolutionFails() throws Exception {
+        CachingDns dns = new CachingDns(upstream, 1000, now::get);
+        List<InetAddress> first = dns.lookup("relay.example.com");
+        now.addAndGet(5000);
+        offline.set(true);
+        assertSame(first, dns.lookup("relay.example.com"));
+    }
+
+    @Test(expected = UnknownHostException.class)
+    public void failsWithoutCachedResult() throws Exception {
+        offline.set(true);
+        new CachingDns(upstream, 1000, now::get).lookup("relay.example.com");
+    }
+
+    @Test
+    public void delegatesShareCacheAndInvalidate() throws Exception {
+        CachingDns dns = new CachingDns(upstream, 1000, now::get);
+        CachingDns bound = dns.withDelegate(upstream);
+        dns.lookup("relay.example.com");
+        bound.lookup("relay.example.com");
+        assertEquals(1, lookups.get());
+
+        bound.invalidate("relay.example.com");
+        dns.lookup("relay.example.com");
+        assertEquals(2, lookups.get());
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.wscontroller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConfigStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file() {
+        return new File(folder.getRoot(), "config.properties");
+    }
+
+    @Test
+    public void valuesSurviveReopen() {
+        ConfigStore store = new ConfigStore(file());
+        assertFalse(store.existed());
+        store.put("device_number", "acme-0001");
+        store.put("tuning.heartbeat", "15000");
+        store.flush();
+
+        ConfigStore reopened = new ConfigStore(file());
+        assertTrue(reopened.existed());
+        assertEquals("acme-0001", reopened.get("device_number", ""));
+        assertEquals(15000, reopened.getLong("tuning.heartbeat", 0));
+        assertEquals("15000", reopened.getAll("tuning.").get("heartbeat"));
+    }
+
+    @Test
+    public void burstOfChangesIsWrittenOnce() throws Exception {
+        ConfigStore store = new ConfigStore(file(), 100);
+        for (int i = 0; i < 50; i++) {
+            store.put("key" + i, "value" + i);
+        }
+        // 修改立即可见，文件还没有写
+        assertEquals("value49", store.get("key49", null));
+        assertEquals(0, store.writeCount());
+
+        Thread.sleep(500);
+        assertEquals(1, store.writeCount());
+        assertEquals("value49", new ConfigStore(file()).get("key49", null));
+    }
+
+    @Test
+    public void unchangedValuesDoNotWrite() {
+        ConfigStore store = new ConfigStore(file());
+        store.put("device_number", "001");
+        store.flush();
+        store.put("device_number", "001");
+        store.flush();
+
+        assertEquals(1, store.writeCount());
+    }
+
+    @Test
+    public void putAllRemovesNullValues() {
+        ConfigStore store = new ConfigStore(file());
+        store.put("tuning.a", "1");
+        Map<String, String> changes = new HashMap<>();
+        changes.put("tuning.a", null);
+        changes.put("tuning.b", "2");
+        store.putAll(changes);
+        store.flush();
+
+        ConfigStore reopened = new ConfigStore(file());
+        assertEquals(null, reopened.get("tuning.a", null));
+        assertEquals("2", reopened.get("tuning.b", null));
+    }
+
+    @Test
+    public void interruptedWriteLeavesPreviousContent() throws Exception {
+        ConfigStore store = new ConfigStore(file());
+        store.put("device_number", "001");
+        store.flush();
+
+        // 模拟写临时文件时进程被杀：临时文件只写了一半，正式文件还是旧内容
+        File tmp = new File(file().getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write("device_number=0".getBytes(StandardCharsets.UTF_8));
+        }
+
+        ConfigStore reopened = new ConfigStore(file());
+        assertEquals("001", reopened.get("device_number", ""));
+        assertFalse(tmp.exists());
+    }
+
+    @Test
+    public void corruptFileLoadsAsEmpty() throws Exception {
+        Files.write(file().toPath(), "device_number=\\u12".getBytes(StandardCharsets.ISO_8859_1));
+
+        ConfigStore store = new ConfigStore(file());
+        assertEquals("", store.get("device_number", ""));
+        // 损坏的文件也算已存在，不会触发从旧存储迁移
+        assertTrue(store.existed());
+        store.put("device_number", "002");
+        store.flush();
+        assertEquals("002", new ConfigStore(file()).get("device_number", ""));
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.wscontroller;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DeviceMetricsTest {
+    private static final DeviceMetrics.Series RTT = DeviceMetrics.Series.HEARTBEAT_RTT;
+
+    @Test
+    public void drainReturnsSamplesInOrderAndClears() {
+        DeviceMetrics metrics = new DeviceMetrics(4);
+        for (long value = 1; value <= 6; value++) {
+            metrics.record(RTT, value);
+        }
+        assertArrayEquals(new long[]{3, 4, 5, 6}, metrics.drain(RTT));
+        assertFalse(metrics.hasSamples());
+    }
+
+    @Test
+    public void restoredSamplesComeBeforeNewerOnes() {
+        DeviceMetrics metrics = new DeviceMetrics(8);
+        metrics.record(RTT, 1);
+        metrics.record(RTT, 2);
+        long[] drained = metrics.drain(RTT);
+
+        // 上报失败期间又记录了新样本
+        metrics.record(RTT, 3);
+        metrics.restore(RTT, drained);
+        assertTrue(metrics.hasSamples());
+        metrics.record(RTT, 4);
+        assertArrayEquals(new long[]{1, 2, 3, 4}, metrics.drain(RTT));
+    }
+
+    @Test
+    public void restoreDropsOldestWhenOverCapacity() {
+        DeviceMetrics metrics = new DeviceMetrics(4);
+        long[] drained = {1, 2, 3};
+        metrics.record(RTT, 4);
+        metrics.record(RTT, 5);
+        metrics.restore(RTT, drained);
+        assertArrayEquals(new long[]{2, 3, 4, 5}, metrics.drain(RTT));
+
+        metrics.record(RTT, 6);
+        metrics.record(RTT, 7);
+        metrics.record(RTT, 8);
+        metrics.record(RTT, 9);
+        metrics.restore(RTT, new long[]{1});
+        assertArrayEquals(new long[]{6, 7, 8, 9}, metrics.drain(RTT));
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.wscontroller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DiskLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> lines(List<String> chunks) {
+        List<String> result = new ArrayList<>();
+        for (String chunk : chunks) {
+            for (String line : chunk.split("\n")) {
+                result.add(line);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void rotatesBySizeAndKeepsNewestSegments() throws Exception {
+        DiskLog log = new DiskLog(folder.getRoot(), 4096, 3);
+        for (int i = 0; i < 500; i++) {
+            log.append(1000 + i, 'D', "WebSocket", "line " + i);
+        }
+
+        assertEquals(3, log.segmentFiles().size());
+        List<String> all = new ArrayList<>();
+        log.read(0, Long.MAX_VALUE, 1024, Long.MAX_VALUE, all::add);
+        List<String> kept = lines(all);
+        // 最旧的分段已删除，剩下的记录是连续的最新部分
+        assertTrue(kept.size() < 500);
+        assertTrue(kept.get(kept.size() - 1).endsWith("line 499"));
+    }
+
+    @Test
+    public void readsTimeRangeInCompleteLineChunks() throws Exception {
+        DiskLog log = new DiskLog(folder.getRoot(), 4096, 8);
+        for (int i = 0; i < 500; i++) {
+            log.append(1000 + i, 'I', "T", "message " + i + "\nsecond line");
+        }
+
+        List<String> chunks = new ArrayList<>();
+        boolean truncated = log.read(1400, 1449, 512, Long.MAX_VALUE, chunks::add);
+
+        assertFalse(truncated);
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertTrue(chunk.length() <= 512);
+            assertTrue(chunk.endsWith("\n"));
+        }
+        List<String> result = lines(chunks);
+        assertEquals(50, result.size());
+        assertEquals("1400\tI\tT\tmessage 400 second line", result.get(0));
+        assertEquals("1449\tI\tT\tmessage 449 second line", result.get(49));
+    }
+
+    @Test
+    public void stopsAtMaxBytes() throws Exception {
+        DiskLog log = new DiskLog(folder.getRoot(), 4096, 8);
+        for (int i = 0; i < 100; i++) {
+            log.append(1000 + i, 'D', "T", "x");
+        }
+
+        List<String> chunks = new ArrayList<>();
+        assertTrue(log.read(0, Long.MAX_VALUE, 1024, 40, chunks::add));
+        assertEquals(3, lines(chunks).size()); // 每行11字节
+    }
+
+    @Test
+    public void reopenContinuesAfterLastRecord() throws Exception {
+        File dir = folder.getRoot();
+        DiskLog first = new DiskLog(dir, 4096, 8);
+        first.append(1000, 'D', "T", "before restart");
+        first.flush();
+
+        DiskLog second = new DiskLog(dir, 4096, 8);
+        second.append(2000, 'D', "T", "after restart");
+
+        List<String> chunks = new ArrayList<>();
+        second.read(0, Long.MAX_VALUE, 1024, Long.MAX_VALUE, chunks::add);
+        List<String> result = lines(chunks);
+        assertEquals(2, result.size());
+        assertEquals("1000\tD\tT\tbefore restart", result.get(0));
+        assertEquals("2000\tD\tT\tafter restart", result.get(1));
+        assertEquals(1, second.segmentFiles().size());
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.wscontroller;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class EventTopicTest {
+    @Test
+    public void lateSubscriberReceivesBoundedReplayThenLiveEvents() {
+        EventTopic<Integer> topic = new EventTopic<>("test", 3, latency -> { }, (name, error) -> { });
+        for (int i = 1; i <= 5; i++) {
+            topic.publish(i);
+        }
+
+        List<Integer> received = new ArrayList<>();
+        topic.subscribe(received::add);
+        topic.publish(6);
+
+        assertEquals(Arrays.asList(3, 4, 5, 6), received);
+    }
+
+    @Test
+    public void cancelledSubscriptionStopsReceiving() {
+        EventTopic<String> topic = new EventTopic<>("test", 0, latency -> { }, (name, error) -> { });
+        List<String> received = new ArrayList<>();
+        EventTopic<String>.Subscription subscription = topic.subscribe(received::add);
+
+        topic.publish("a");
+        subscription.cancel();
+        topic.publish("b");
+
+        assertEquals(Collections.singletonList("a"), received);
+        assertEquals(0, topic.subscriberCount());
+    }
+
+    @Test
+    public void failingListenerDoesNotBlockOthers() {
+        List<RuntimeException> errors = new ArrayList<>();
+        EventTopic<String> topic = new EventTopic<>("test", 0, latency -> { }, (name, error) -> errors.add(error));
+        List<String> received = new ArrayList<>();
+        topic.subscribe(event -> {
+            throw new IllegalStateException("listener bug");
+        });
+        topic.subscribe(received::add);
+
+        topic.publish("a");
+
+        assertEquals(Collections.singletonList("a"), received);
+        assertEquals(1, errors.size());
+        assertEquals("listener bug", errors.get(0).getMessage());
+    }
+
+    @Test
+    public void subscribeDuringConcurrentPublishDeliversEachEventOnceInOrder() throws Exception {
+        EventTopic<Integer> topic = new EventTopic<>("test", 100, latency -> { }, (name, error) -> { });
+        int total = 20000;
+        CountDownLatch started = new CountDownLatch(1);
+        Thread publisher = new Thread(() -> {
+            started.countDown();
+            for (int i = 1; i <= total; i++) {
+                topic.publish(i);
+            }
+        });
+        publisher.start();
+        started.await();
+
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        topic.subscribe(received::add);
+        publisher.join();
+
+        for (int i = 1; i < received.size(); i++) {
+            assertEquals(received.get(i - 1) + 1, (int) received.get(i));
+        }
+        assertEquals(total, (int) received.get(received.size() - 1));
+    }
+
+    @Test
+    public void recordsDispatchLatencyOnlyWhenSomeoneListens() {
+        AtomicLong recorded = new AtomicLong();
+        EventTopic<String> topic = new EventTopic<>("test", 0, latency -> recorded.incrementAndGet(), (name, error) -> { });
+
+        topic.publish("nobody");
+        assertEquals(0, recorded.get());
+
+        topic.subscribe(event -> { });
+        for (int i = 0; i < 10; i++) {
+            topic.publish("event");
+        }
+        assertEquals(10, recorded.get());
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.wscontroller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 本地TCP故障代理：客户端连接代理，代理再连接中转服务器，两个方向各用一个线程转发。
+// 可以注入的故障：
+// - 延迟：每块数据转发前等待
+// - 黑洞：已有连接继续保持但不再转发任何数据，两端都不会收到关闭，对应切换飞行模式后的半开连接
+// - RST：以SO_LINGER=0关闭已有连接，客户端立即收到连接重置
+// - 慢读：服务器到客户端方向限速
+// - NAT空闲回收：连接两个方向都空闲超过指定时间后映射被回收，之后的数据静默丢弃
+// 黑洞和NAT回收只影响已有连接，重连建立的新连接正常转发。
+final class FaultProxy implements Closeable {
+    private static final int CHUNK = 1024;
+
+    private final InetSocketAddress upstream;
+    private final ServerSocket serverSocket;
+    private final List<Link> links = new CopyOnWriteArrayList<>();
+    private final AtomicInteger accepted = new AtomicInteger();
+
+    private volatile long latencyMillis = 0;
+    private volatile int downstreamBytesPerSecond = 0; // 0表示不限速
+    private volatile long natIdleMillis = 0; // 0表示不回收
+
+    FaultProxy(InetSocketAddress upstream) throws IOException {
+        this.upstream = upstream;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "fault-proxy-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    // 累计接受的客户端连接数，用于确认客户端发起了重连
+    int acceptedConnections() {
+        return accepted.get();
+    }
+
+    void setLatency(long millis) {
+        latencyMillis = millis;
+    }
+
+    void setDownstreamRate(int bytesPerSecond) {
+        downstreamBytesPerSecond = bytesPerSecond;
+    }
+
+    void setNatIdleTimeout(long millis) {
+        natIdleMillis = millis;
+    }
+
+    void blackholeExisting() {
+        for (Link link : links) {
+            link.dropped = true;
+        }
+    }
+
+    void resetExisting() {
+        for (Link link : links) {
+            link.reset();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Link link : links) {
+            link.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                accepted.incrementAndGet();
+                Socket server = new Socket();
+                server.connect(upstream, 3000);
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                Link link = new Link(client, server);
+                links.add(link);
+                link.start();
+            } catch (IOException e) {
+                // 代理已关闭或中转服务器不可达，客户端会在连接上看到失败
+            }
+        }
+    }
+
+    private final class Link {
+        final Socket client;
+        final Socket server;
+        volatile boolean dropped = false;
+        volatile long lastActivity = System.currentTimeMillis();
+
+        Link(Socket client, Socket server) {
+            this.client = client;
+            this.server = server;
+        }
+
+        void start() {
+            pump(client, server, false, "fault-proxy-up");
+            pump(server, client, true, "fault-proxy-down");
+        }
+
+        private void pump(Socket from, Socket to, boolean downstream, String name) {
+            Thread thread = new Thread(() -> {
+                byte[] buffer = new byte[CHUNK];
+                try {
+                    InputStream in = from.getInputStream();
+                    OutputStream out = to.getOutputStream();
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        long now = System.currentTimeMillis();
+                        long idleTimeout = natIdleMillis;
+                        if (idleTimeout > 0 && now - lastActivity > idleTimeout) {
+                            dropped = true;
+                        }
+                        if (dropped) {
+                            continue;
+                        }
+                        lastActivity = now;
+                        delay(latencyMillis);
+                        int rate = downstreamBytesPerSecond;
+                        if (downstream && rate > 0) {
+                            delay(read * 1000L / rate);
+                        }
+                        out.write(buffer, 0, read);
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // 任一端关闭或被重置
+                }
+                // 黑洞状态下一端关闭不会传到另一端
+                if (!dropped) {
+                    close();
+                }
+            }, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void reset() {
+            try {
+                client.setSoLinger(true, 0);
+            } catch (SocketException e) {
+                // 已经关闭
+            }
+            close();
+        }
+
+        void close() {
+            links.remove(this);
+            closeQuietly(client);
+            closeQuietly(server);
+        }
+    }
+
+    private static void delay(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+    }
+}
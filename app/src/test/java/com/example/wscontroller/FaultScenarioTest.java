@@ -0,0 +1,394 @@
+package com.example.wscontroller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+// 通过FaultProxy在客户端和模拟的中转服务器之间注入网络故障，检查断线发现时间和重连时间。
+// 客户端使用WebSocketManager的判定逻辑：KeepAlivePlanner安排心跳，LinkMonitor匹配pong、累计超时次数和计算重连退避，
+// 连续requiredFailedChecks（运行参数默认值）次超时判定连接失效，断开后延迟重连；传输层报错时按退避重连。
+// 只有时间按比例缩短（心跳300ms、pong超时200ms、重连基础延迟100ms），上限由这些参数推出：
+// 故障发生后最迟在REQUIRED_FAILED_CHECKS个心跳周期加一次pong超时内发现。
+public class FaultScenarioTest {
+    private static final long HEARTBEAT = 300;
+    private static final long PONG_TIMEOUT = 200;
+    private static final long RECONNECT_DELAY = 100; // 心跳判定失效后的重连延迟，也是退避的基础延迟
+    private static final int REQUIRED_FAILED_CHECKS =
+            (int) TuningConfig.DEFAULTS.get(TuningConfig.Key.REQUIRED_FAILED_CHECKS);
+    private static final long SLACK = 500; // 线程调度和本机转发的余量
+
+    private static final long DETECT_BOUND = REQUIRED_FAILED_CHECKS * HEARTBEAT + PONG_TIMEOUT + SLACK;
+    private static final long RECONNECT_BOUND = RECONNECT_DELAY + SLACK;
+
+    private MockWebServer relay;
+    private FaultProxy proxy;
+    private final List<WebSocket> relaySockets = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final List<Probe> probes = new CopyOnWriteArrayList<>();
+
+    // 模拟的中转服务器：回复pong并回显时间戳，和server.js一致
+    private final WebSocketListener relayListener = new WebSocketListener() {
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            relaySockets.add(webSocket);
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            JSONObject json = Protocol.parse(text);
+            if (json != null && "ping".equals(json.optString("type"))) {
+                webSocket.send("{\"type\":\"pong\",\"timestamp\":" + System.currentTimeMillis()
+                        + ",\"echo\":" + json.optLong("timestamp") + "}");
+            }
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        relay = new MockWebServer();
+        relay.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().withWebSocketUpgrade(relayListener);
+            }
+        });
+        relay.start();
+        proxy = new FaultProxy(new InetSocketAddress(relay.getHostName(), relay.getPort()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        // 先停掉客户端，OkHttp线程上不会再有回调提交到已关闭的executor
+        for (Probe probe : probes) {
+            probe.close();
+        }
+        executor.shutdownNow();
+        proxy.close();
+        relay.shutdown();
+    }
+
+    // 测试用的设备客户端，所有状态只在executor线程上读写（对应WebSocketManager的主线程Handler）。
+    // 心跳计划、pong匹配、失败计数和重连退避都交给和WebSocketManager相同的KeepAlivePlanner和LinkMonitor
+    private final class Probe extends WebSocketListener {
+        private final KeepAlivePlanner planner;
+        private final LinkMonitor link = new LinkMonitor();
+        private final OkHttpClient client = SecureTransport.configure(new OkHttpClient.Builder())
+                .readTimeout(0, TimeUnit.MILLISECONDS)
+                .connectTimeout(3, TimeUnit.SECONDS)
+                .build();
+
+        private WebSocket current;
+        private ScheduledFuture<?> beatTask;
+        private ScheduledFuture<?> pongCheck;
+
+        volatile int opened = 0;
+        volatile int pongs = 0;
+        volatile int matchedPongs = 0;
+        volatile long lastRtt = 0;
+        volatile long lostAt = 0; // 发现断线的时间，0表示还没有发现
+        volatile boolean lostByTransport = false; // 由传输层报错发现，而不是pong超时
+        volatile long reopenedAt = 0;
+
+        Probe(long heartbeat) {
+            // 测试中不区分亮屏、灭屏和Doze，三种模式用同一个周期
+            this.planner = new KeepAlivePlanner(heartbeat, heartbeat, heartbeat, System::currentTimeMillis);
+            probes.add(this);
+        }
+
+        void start() {
+            post(this::connect);
+        }
+
+        // 断开连接并等待OkHttp的线程退出，之后不会再有回调
+        void close() throws Exception {
+            executor.submit(() -> {
+                cancelTimers();
+                if (current != null) {
+                    current.cancel();
+                    current = null;
+                }
+            }).get(1, TimeUnit.SECONDS);
+            client.dispatcher().cancelAll();
+            client.dispatcher().executorService().shutdown();
+            client.dispatcher().executorService().awaitTermination(2, TimeUnit.SECONDS);
+            client.connectionPool().evictAll();
+        }
+
+        // OkHttp线程上的回调转到executor线程处理；测试结束后executor已关闭，迟到的回调直接忽略
+        private void post(Runnable task) {
+            if (!executor.isShutdown()) {
+                executor.execute(task);
+            }
+        }
+
+        private void connect() {
+            Request request = new Request.Builder().url("http://127.0.0.1:" + proxy.port() + "/device/001").build();
+            current = client.newWebSocket(request, this);
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            post(() -> {
+                if (webSocket != current) {
+                    return;
+                }
+                opened++;
+                if (lostAt > 0 && reopenedAt == 0) {
+                    reopenedAt = System.currentTimeMillis();
+                }
+                link.onConnected();
+                planner.reset();
+                scheduleBeat();
+            });
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            long now = System.currentTimeMillis();
+            post(() -> {
+                JSONObject json = Protocol.parse(text);
+                if (webSocket != current || Protocol.classify(text, json, "001") != Protocol.Command.PONG) {
+                    return;
+                }
+                long echo = json.optLong("echo", 0);
+                lastRtt = now - echo;
+                pongs++;
+                if (link.onPong(echo)) {
+                    matchedPongs++;
+                    if (pongCheck != null) {
+                        pongCheck.cancel(false);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            post(() -> {
+                if (webSocket == current) {
+                    lostByTransport = true;
+                    lost(link.nextReconnectDelay(RECONNECT_DELAY));
+                }
+            });
+        }
+
+        @Override
+        public void onClosed(WebSocket webSocket, int code, String reason) {
+            onFailure(webSocket, null, null);
+        }
+
+        // 对应KeepAliveScheduler：在计划时间醒来，到期才发送心跳
+        private void scheduleBeat() {
+            long delay = Math.max(0, planner.nextBeatAt() - System.currentTimeMillis());
+            beatTask = executor.schedule(this::onWake, delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void onWake() {
+            if (current == null) {
+                return;
+            }
+            if (planner.isDue()) {
+                planner.onBeat();
+                sendHeartbeat();
+            }
+            if (current != null) {
+                scheduleBeat();
+            }
+        }
+
+        private void sendHeartbeat() {
+            long sentAt = System.currentTimeMillis();
+            if (!current.send(Protocol.ping("001", sentAt))) {
+                lostByTransport = true;
+                lost(RECONNECT_DELAY);
+                return;
+            }
+            link.onPingSent(sentAt);
+            if (pongCheck != null) {
+                pongCheck.cancel(false);
+            }
+            pongCheck = executor.schedule(this::checkPong, PONG_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+
+        private void checkPong() {
+            if (current != null && link.onPongTimeout(REQUIRED_FAILED_CHECKS) == LinkMonitor.Verdict.DEAD) {
+                lost(RECONNECT_DELAY);
+            }
+        }
+
+        private void cancelTimers() {
+            if (beatTask != null) {
+                beatTask.cancel(false);
+            }
+            if (pongCheck != null) {
+                pongCheck.cancel(false);
+            }
+        }
+
+        // 断开当前连接，延迟后重连
+        private void lost(long reconnectDelay) {
+            if (lostAt == 0) {
+                lostAt = System.currentTimeMillis();
+            }
+            cancelTimers();
+            WebSocket webSocket = current;
+            current = null;
+            webSocket.cancel();
+            executor.schedule(this::connect, reconnectDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void await(String what, long timeoutMillis, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean()) {
+            assertTrue(what + "超时(" + timeoutMillis + "ms)", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private Probe connectedProbe(long heartbeat) throws InterruptedException {
+        Probe probe = new Probe(heartbeat);
+        probe.start();
+        await("建立连接", 5000, () -> probe.opened == 1 && relaySockets.size() == 1);
+        return probe;
+    }
+
+    // 注入故障后断线发现和重连都在上限内，返回{发现耗时, 重连耗时}
+    private long[] assertDetectedAndReconnected(Probe probe, long faultAt, long detectBound) throws InterruptedException {
+        await("发现断线", detectBound, () -> probe.lostAt > 0);
+        long detect = probe.lostAt - faultAt;
+        await("重新连接", RECONNECT_BOUND, () -> probe.reopenedAt > 0);
+        long reconnect = probe.reopenedAt - probe.lostAt;
+        assertEquals(2, proxy.acceptedConnections());
+        return new long[]{detect, reconnect};
+    }
+
+    @Test
+    public void healthyLinkKeepsReceivingPongs() throws Exception {
+        Probe probe = connectedProbe(HEARTBEAT);
+        Thread.sleep(6 * HEARTBEAT);
+
+        assertTrue(probe.pongs >= 4);
+        assertEquals(0, probe.lostAt);
+    }
+
+    @Test
+    public void latencyBelowPongTimeoutIsTolerated() throws Exception {
+        proxy.setLatency(PONG_TIMEOUT / 4);
+        Probe probe = connectedProbe(HEARTBEAT);
+        Thread.sleep(6 * HEARTBEAT);
+
+        assertTrue(probe.pongs >= 4);
+        assertTrue(probe.lastRtt >= PONG_TIMEOUT / 2);
+        assertEquals(0, probe.lostAt);
+    }
+
+    // 往返时间介于心跳周期和心跳周期加pong超时之间：每个pong都在下一次心跳发出之后、它的超时检查之前到达。
+    // pong按回显的时间戳匹配，迟到的pong不会被算到下一次心跳上，连接仍被判定失效
+    @Test
+    public void latencyAboveHeartbeatIsDetected() throws Exception {
+        Probe probe = connectedProbe(HEARTBEAT);
+        await("收到第一个pong", 2 * HEARTBEAT + PONG_TIMEOUT, () -> probe.matchedPongs > 0);
+        proxy.setLatency((HEARTBEAT + PONG_TIMEOUT / 2) / 2);
+        long faultAt = System.currentTimeMillis();
+        int pongsBefore = probe.pongs;
+
+        await("发现断线", DETECT_BOUND, () -> probe.lostAt > 0);
+        // 至少要等连续几次检查都超时，期间迟到的pong照常到达
+        assertTrue(probe.lostAt - faultAt >= PONG_TIMEOUT);
+        assertTrue(probe.pongs > pongsBefore);
+        assertFalse(probe.lostByTransport);
+    }
+
+    @Test
+    public void blackholedLinkIsDetectedByPongTimeout() throws Exception {
+        Probe probe = connectedProbe(HEARTBEAT);
+        proxy.blackholeExisting();
+        long faultAt = System.currentTimeMillis();
+
+        long[] timings = assertDetectedAndReconnected(probe, faultAt, DETECT_BOUND);
+        // 半开连接上发送不会报错，只能靠pong超时发现
+        assertFalse(probe.lostByTransport);
+        assertTrue(timings[0] >= REQUIRED_FAILED_CHECKS * PONG_TIMEOUT);
+    }
+
+    @Test
+    public void resetIsDetectedWithoutWaitingForHeartbeat() throws Exception {
+        Probe probe = connectedProbe(HEARTBEAT);
+        proxy.resetExisting();
+        long faultAt = System.currentTimeMillis();
+
+        long[] timings = assertDetectedAndReconnected(probe, faultAt, SLACK);
+        assertTrue(probe.lostByTransport);
+        assertTrue(timings[1] >= RECONNECT_DELAY);
+    }
+
+    @Test
+    public void slowReadsDelayPongsBehindBulkData() throws Exception {
+        Probe probe = connectedProbe(HEARTBEAT);
+        proxy.setDownstreamRate(4096);
+        // 服务器下发一块大消息（例如推送的配置），之后的pong排在它后面
+        char[] bulk = new char[32 * 1024];
+        Arrays.fill(bulk, 'x');
+        relaySockets.get(0).send("{\"type\":\"system\",\"padding\":\"" + new String(bulk) + "\"}");
+        long faultAt = System.currentTimeMillis();
+
+        long[] timings = assertDetectedAndReconnected(probe, faultAt, DETECT_BOUND);
+        // 慢读时发送不报错，和半开连接一样靠pong超时发现
+        assertFalse(probe.lostByTransport);
+        assertTrue(timings[0] >= PONG_TIMEOUT);
+    }
+
+    @Test
+    public void heartbeatFasterThanNatMappingKeepsLinkAlive() throws Exception {
+        long natTimeout = 2 * HEARTBEAT;
+        proxy.setNatIdleTimeout(natTimeout);
+
+        // 心跳比映射回收时间短，连接一直保持
+        Probe frequent = connectedProbe(HEARTBEAT);
+        Thread.sleep(3 * natTimeout);
+        assertEquals(0, frequent.lostAt);
+        assertTrue(frequent.pongs >= 4);
+    }
+
+    @Test
+    public void natIdleDropIsDetectedAfterLongHeartbeatGap() throws Exception {
+        long natTimeout = 2 * HEARTBEAT;
+        long slowHeartbeat = 3 * HEARTBEAT;
+        proxy.setNatIdleTimeout(natTimeout);
+
+        // 心跳间隔超过回收时间，第一次心跳时映射已被回收，数据被静默丢弃
+        Probe probe = connectedProbe(slowHeartbeat);
+        long faultAt = System.currentTimeMillis() + natTimeout;
+
+        long bound = REQUIRED_FAILED_CHECKS * slowHeartbeat + PONG_TIMEOUT + SLACK;
+        assertDetectedAndReconnected(probe, faultAt, bound);
+        assertEquals(0, probe.pongs);
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.wscontroller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class KeepAlivePlannerTest {
+    private static final long INTERACTIVE = 15000;
+    private static final long SCREEN_OFF = 60000;
+    private static final long IDLE = 9 * 60 * 1000;
+
+    private final AtomicLong now = new AtomicLong();
+    private final KeepAlivePlanner planner = new KeepAlivePlanner(INTERACTIVE, SCREEN_OFF, IDLE, now::get);
+
+    @Test
+    public void beatsOnceIntervalElapsedWithQuarterSlack() {
+        now.set(11000);
+        assertFalse(planner.isDue());
+        now.set(11250);
+        assertTrue(planner.isDue());
+
+        planner.onBeat();
+        assertFalse(planner.isDue());
+        assertEquals(11250 + INTERACTIVE, planner.nextBeatAt());
+    }
+
+    @Test
+    public void modeChangeStretchesNextBeat() {
+        planner.setMode(KeepAlivePlanner.Mode.SCREEN_OFF);
+        assertEquals(SCREEN_OFF, planner.nextBeatAt());
+        planner.setMode(KeepAlivePlanner.Mode.DEVICE_IDLE);
+        assertEquals(IDLE, planner.nextBeatAt());
+        planner.setMode(KeepAlivePlanner.Mode.INTERACTIVE);
+        assertEquals(INTERACTIVE, planner.nextBeatAt());
+    }
+
+    @Test
+    public void maintenanceWindowNearDueTakesTheBeatEarly() {
+        planner.setMode(KeepAlivePlanner.Mode.DEVICE_IDLE);
+
+        // 维护窗口离下次心跳还很远，不占用这次唤醒
+        now.set(2 * 60 * 1000);
+        assertFalse(planner.isDue());
+
+        // 离到期不到四分之一周期，顺便发送，省掉两分钟后的单独唤醒
+        now.set(7 * 60 * 1000);
+        assertTrue(planner.isDue());
+    }
+
+    @Test
+    public void stalledTimerBeatsOnceAndCountsMissed() {
+        now.set(10 * 60 * 1000);
+        assertTrue(planner.isDue());
+        planner.onBeat();
+
+        assertFalse(planner.isDue());
+        assertEquals(1, planner.beats());
+        assertEquals((10 * 60 * 1000 - INTERACTIVE) / INTERACTIVE, planner.missedBeats());
+    }
+
+    @Test
+    public void resetRestartsTheInterval() {
+        now.set(14000);
+        planner.reset();
+        now.set(20000);
+        assertFalse(planner.isDue());
+        assertEquals(14000 + INTERACTIVE, planner.nextBeatAt());
+    }
+
+    // 模拟一小时Doze：闹钟按计划到期，系统每15分钟开一次维护窗口。
+    // 唤醒次数应远少于固定15秒计时器，同时两次心跳间隔不超过Doze周期
+    @Test
+    public void simulatedDozeHour() {
+        long hour = 60 * 60 * 1000;
+        long windowEvery = 15 * 60 * 1000;
+        planner.setMode(KeepAlivePlanner.Mode.DEVICE_IDLE);
+
+        long wakes = 0;
+        long lastBeat = 0;
+        long maxGap = 0;
+        long nextWindow = windowEvery;
+        while (true) {
+            long wakeAt = Math.min(planner.nextBeatAt(), nextWindow);
+            if (wakeAt > hour) {
+                break;
+            }
+            now.set(wakeAt);
+            if (wakeAt == nextWindow) {
+                nextWindow += windowEvery;
+            }
+            wakes++;
+            if (planner.isDue()) {
+                planner.onBeat();
+                maxGap = Math.max(maxGap, wakeAt - lastBeat);
+                lastBeat = wakeAt;
+            }
+        }
+
+        long fixedTimerWakes = hour / INTERACTIVE;
+
+        assertTrue(maxGap <= IDLE);
+        assertTrue(planner.beats() <= hour / IDLE + hour / windowEvery);
+        assertTrue(wakes * 20 < fixedTimerWakes);
+        assertEquals(0, planner.missedBeats());
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.wscontroller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LinkMonitorTest {
+    private static final int REQUIRED = 2;
+
+    private final LinkMonitor link = new LinkMonitor();
+
+    @Test
+    public void latePongDoesNotAnswerNextPing() {
+        link.onPingSent(1000);
+        assertEquals(LinkMonitor.Verdict.SUSPECT, link.onPongTimeout(REQUIRED));
+        link.onPingSent(2000);
+        // 上一次ping的pong在下一次ping之后才到达
+        assertFalse(link.onPong(1000));
+        assertEquals(LinkMonitor.Verdict.DEAD, link.onPongTimeout(REQUIRED));
+    }
+
+    @Test
+    public void matchingPongClearsFailures() {
+        link.onPingSent(1000);
+        assertEquals(LinkMonitor.Verdict.SUSPECT, link.onPongTimeout(REQUIRED));
+        link.onPingSent(2000);
+        assertTrue(link.onPong(2000));
+        assertEquals(0, link.failedChecks());
+        assertEquals(LinkMonitor.Verdict.ALIVE, link.onPongTimeout(REQUIRED));
+        // 同一个ping的重复pong不再计数
+        assertFalse(link.onPong(2000));
+    }
+
+    @Test
+    public void pongWithoutEchoAnswersCurrentPing() {
+        link.onPingSent(1000);
+        assertTrue(link.onPong(0));
+    }
+
+    @Test
+    public void backoffGrowsUntilConnected() {
+        long first = link.nextReconnectDelay(1000);
+        link.nextReconnectDelay(1000);
+        assertEquals(2, link.reconnectAttempts());
+        link.onConnected();
+        assertEquals(0, link.reconnectAttempts());
+        assertEquals(first, link.nextReconnectDelay(1000));
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.wscontroller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class ProtocolTest {
+    private static Protocol.Command classify(String message) {
+        return Protocol.classify(message, Protocol.parse(message), "1024");
+    }
+
+    @Test
+    public void classifiesKnownActions() {
+        assertEquals(Protocol.Command.TOGGLE_AIRPLANE, classify("{\"action\":\"toggleAirplane\"}"));
+        assertEquals(Protocol.Command.SET_GROUPS, classify("{\"action\":\"set_groups\"}"));
+        assertEquals(Protocol.Command.SET_ENDPOINTS, classify("{\"action\":\"set_endpoints\"}"));
+        assertEquals(Protocol.Command.LOG_PULL, classify("{\"action\":\"log_pull\"}"));
+        assertEquals(Protocol.Command.TUNING_UPDATE, classify("{\"type\":\"system\",\"action\":\"tuning_update\"}"));
+        assertEquals(Protocol.Command.SET_ROTATION, classify("{\"type\":\"system\",\"action\":\"set_rotation\"}"));
+        assertEquals(Protocol.Command.UNKNOWN, classify("{\"action\":\"reboot\"}"));
+    }
+
+    @Test
+    public void switchNetworkMatchesContentOrRawText() {
+        assertEquals(Protocol.Command.SWITCH_NETWORK, classify("{\"type\":\"command\",\"content\":\"请切换网络\"}"));
+        assertEquals(Protocol.Command.SWITCH_NETWORK, classify("请切换网络"));
+        assertEquals(Protocol.Command.NOT_JSON, classify("hello"));
+    }
+
+    @Test
+    public void pongAndTargetDevice() {
+        assertEquals(Protocol.Command.PONG, classify("{\"type\":\"pong\",\"echo\":1}"));
+        assertEquals(Protocol.Command.NOT_FOR_DEVICE, classify("{\"targetDevice\":\"2048\",\"content\":\"请切换网络\"}"));
+        assertEquals(Protocol.Command.SWITCH_NETWORK, classify("{\"targetDevice\":\"1024\",\"content\":\"请切换网络\"}"));
+        assertNull(Protocol.parse("not json"));
+    }
+
+    @Test
+    public void pingFrameIsValidJson() {
+        JSONObject ping = Protocol.parse(Protocol.ping("tenant-1024", 1718000000000L));
+        assertEquals("ping", ping.optString("type"));
+        assertEquals("1718000000000", ping.optString("timestamp"));
+        assertEquals("tenant-1024", ping.optString("deviceId"));
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.wscontroller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+public class RelayEndpointsTest {
+    private MockWebServer fast;
+    private MockWebServer slow;
+    private final OkHttpClient client = new OkHttpClient.Builder()
+            .connectTimeout(2, TimeUnit.SECONDS)
+            .build();
+
+    @Before
+    public void setUp() throws IOException {
+        fast = new MockWebServer();
+        slow = new MockWebServer();
+        fast.start();
+        slow.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fast.shutdown();
+        slow.shutdown();
+    }
+
+    private static String wsUrl(MockWebServer server) {
+        return "ws://" + server.getHostName() + ":" + server.getPort() + "/device/";
+    }
+
+    // 已经关闭的端口，连接会被立即拒绝
+    private static String deadUrl() throws IOException {
+        MockWebServer dead = new MockWebServer();
+        dead.start();
+        String url = wsUrl(dead);
+        dead.shutdown();
+        return url;
+    }
+
+    @Test
+    public void probePrefersLowerHandshakeLatency() throws Exception {
+        fast.enqueue(new MockResponse().setBody("{\"ok\":true}"));
+        slow.enqueue(new MockResponse().setBody("{\"ok\":true}").setHeadersDelay(300, TimeUnit.MILLISECONDS));
+
+        RelayEndpoints endpoints = new RelayEndpoints(Arrays.asList(wsUrl(slow), wsUrl(fast)));
+        endpoints.probe(client);
+
+        assertEquals(wsUrl(fast), endpoints.current());
+        assertTrue(endpoints.latencyOf(wsUrl(fast)) < endpoints.latencyOf(wsUrl(slow)));
+        assertEquals("/health", fast.takeRequest().getPath());
+    }
+
+    @Test
+    public void deadEndpointIsRankedLastAndProbeReturnsQuickly() throws Exception {
+        String dead = deadUrl();
+        fast.enqueue(new MockResponse().setBody("{\"ok\":true}"));
+
+        RelayEndpoints endpoints = new RelayEndpoints(Arrays.asList(dead, wsUrl(fast)));
+        long startedAt = System.nanoTime();
+        endpoints.probe(client);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        assertEquals(wsUrl(fast), endpoints.current());
+        assertEquals(RelayEndpoints.UNREACHABLE, endpoints.latencyOf(dead));
+        assertTrue("探测耗时 " + elapsedMs + "ms", elapsedMs < RelayEndpoints.PROBE_TIMEOUT_MS + 500);
+    }
+
+    @Test
+    public void failedEndpointCoolsDownBeforeBeingPreferredAgain() {
+        AtomicLong now = new AtomicLong(1000);
+        String first = wsUrl(fast);
+        String second = wsUrl(slow);
+        RelayEndpoints endpoints = new RelayEndpoints(Arrays.asList(first, second), now::get);
+
+        assertEquals(first, endpoints.current());
+        assertTrue(endpoints.markFailed(first));
+        assertEquals(second, endpoints.current());
+
+        // 全部失败时没有可以立即切换的地址，选最早失败的
+        now.addAndGet(100);
+        assertFalse(endpoints.markFailed(second));
+        assertEquals(first, endpoints.current());
+
+        // 冷却期结束后重新可用，连接成功清除失败记录
+        now.addAndGet(RelayEndpoints.FAILURE_COOLDOWN_MS);
+        assertTrue(endpoints.markFailed(second));
+        assertEquals(first, endpoints.current());
+        endpoints.markConnected(first);
+        assertEquals(first, endpoints.current());
+    }
+
+    @Test
+    public void setEndpointsKeepsKnownLatencies() {
+        fast.enqueue(new MockResponse().setBody("{\"ok\":true}"));
+        slow.enqueue(new MockResponse().setBody("{\"ok\":true}").setHeadersDelay(300, TimeUnit.MILLISECONDS));
+
+        RelayEndpoints endpoints = new RelayEndpoints(Arrays.asList(wsUrl(slow), wsUrl(fast)));
+        endpoints.probe(client);
+        long latency = endpoints.latencyOf(wsUrl(fast));
+
+        endpoints.setEndpoints(Arrays.asList(wsUrl(fast), "ws://10.255.255.1:9000/device/"));
+        assertEquals(latency, endpoints.latencyOf(wsUrl(fast)));
+        assertEquals(wsUrl(fast), endpoints.current());
+        assertEquals(2, endpoints.urls().size());
+    }
+
+    @Test
+    public void failsOverToNextEndpointWithinSeconds() throws Exception {
+        String dead = deadUrl();
+        CountDownLatch serverOpened = new CountDownLatch(1);
+        CountDownLatch serverClosed = new CountDownLatch(1);
+        fast.enqueue(new MockResponse().withWebSocketUpgrade(new WebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                serverOpened.countDown();
+            }
+
+            // 客户端连接成功后立即关闭，服务端回应关闭帧，否则MockWebServer关闭时一直等待这个连接
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                webSocket.close(1000, null);
+            }
+
+            @Override
+            public void onClosed(WebSocket webSocket, int code, String reason) {
+                serverClosed.countDown();
+            }
+        }));
+
+        // 与WebSocketManager相同的流程：连接失败即标记失败并立即连接下一个地址
+        RelayEndpoints endpoints = new RelayEndpoints(Arrays.asList(dead, wsUrl(fast)));
+        AtomicReference<String> connectedTo = new AtomicReference<>();
+        CountDownLatch opened = new CountDownLatch(1);
+        long startedAt = System.nanoTime();
+        connect(endpoints, connectedTo, opened);
+
+        assertTrue(opened.await(5, TimeUnit.SECONDS));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        assertEquals(wsUrl(fast), connectedTo.get());
+        assertTrue(serverOpened.await(1, TimeUnit.SECONDS));
+        assertTrue("切换耗时 " + elapsedMs + "ms", elapsedMs < 3000);
+        assertEquals("/device/001", fast.takeRequest().getPath());
+        assertTrue(serverClosed.await(2, TimeUnit.SECONDS));
+    }
+
+    private void connect(RelayEndpoints endpoints, AtomicReference<String> connectedTo, CountDownLatch opened) {
+        String url = endpoints.current();
+        client.newWebSocket(new Request.Builder().url(url + "001").build(), new WebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                endpoints.markConnected(url);
+                connectedTo.set(url);
+                opened.countDown();
+                webSocket.close(1000, null);
+            }
+
+            @Override
+            public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                if (endpoints.markFailed(url)) {
+                    connect(endpoints, connectedTo, opened);
+                }
+            }
+        });
+    }
+}
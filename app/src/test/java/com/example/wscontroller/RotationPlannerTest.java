@@ -0,0 +1,129 @@
+package com.example.wscontroller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class RotationPlannerTest {
+    private static final long MINUTE = 60 * 1000;
+    private static final long T0 = 1718013600000L; // 2024-06-10 10:00 UTC
+
+    private final AtomicLong now = new AtomicLong(T0);
+    private final AtomicLong randomValue = new AtomicLong(-1); // -1表示取区间中点，即不抖动
+    private final RotationPlanner planner = new RotationPlanner(now::get, () -> TimeZone.getTimeZone("UTC"),
+            bound -> randomValue.get() < 0 ? bound / 2 : randomValue.get());
+
+    private static RotationPolicy policy(String json) {
+        return RotationPolicy.fromJson(new JSONObject(json));
+    }
+
+    private static void assertRejected(String json) {
+        try {
+            policy(json);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        throw new AssertionError("应当拒绝: " + json);
+    }
+
+    @Test
+    public void parsesPolicyAndRoundTripsThroughMap() {
+        RotationPolicy policy = policy("{\"version\":2,\"intervalMs\":600000,\"jitterMs\":60000,"
+                + "\"quietHours\":{\"start\":\"23:00\",\"end\":\"07:30\"},\"maxPerHour\":4}");
+        assertTrue(policy.enabled);
+        assertEquals(23 * 60, policy.quietStartMinute);
+        assertEquals(7 * 60 + 30, policy.quietEndMinute);
+        assertTrue(policy.isQuiet(0));
+        assertFalse(policy.isQuiet(7 * 60 + 30));
+
+        RotationPolicy restored = RotationPolicy.fromMap(policy.toMap());
+        assertEquals(policy.toString(), restored.toString());
+
+        assertFalse(policy("{\"version\":3,\"enabled\":false}").enabled);
+    }
+
+    @Test
+    public void rejectsInvalidPolicies() {
+        assertRejected("{\"intervalMs\":600000}");
+        assertRejected("{\"version\":1}");
+        assertRejected("{\"version\":1,\"intervalMs\":1000}");
+        assertRejected("{\"version\":1,\"intervalMs\":600000,\"jitterMs\":400000}");
+        assertRejected("{\"version\":1,\"intervalMs\":600000,\"maxPerHour\":100}");
+        assertRejected("{\"version\":1,\"intervalMs\":\"600000\"}");
+        assertRejected("{\"version\":1,\"intervalMs\":600000,\"quietHours\":{\"start\":\"25:00\",\"end\":\"07:00\"}}");
+        assertRejected("{\"version\":1,\"intervalMs\":600000,\"quietHours\":{\"start\":\"07:00\",\"end\":\"07:00\"}}");
+    }
+
+    @Test
+    public void rotatesEveryIntervalWithJitter() {
+        planner.setPolicy(policy("{\"version\":1,\"intervalMs\":600000,\"jitterMs\":60000}"), Collections.emptyList());
+        assertEquals(T0 + 10 * MINUTE, planner.nextRotationAt());
+        assertFalse(planner.isDue());
+
+        now.set(T0 + 10 * MINUTE);
+        assertTrue(planner.isDue());
+        randomValue.set(0); // 抖动取下限
+        assertEquals(1, planner.onRotationStarted());
+        assertEquals(T0 + 19 * MINUTE, planner.nextRotationAt());
+
+        // 闹钟被Doze推迟，下一次从实际开始的时间算起
+        now.set(T0 + 25 * MINUTE);
+        randomValue.set(2 * MINUTE); // 抖动取上限
+        assertEquals(2, planner.onRotationStarted());
+        assertEquals(T0 + 36 * MINUTE, planner.nextRotationAt());
+    }
+
+    @Test
+    public void hourlyLimitDefersUntilOldestLeavesWindow() {
+        planner.setPolicy(policy("{\"version\":1,\"intervalMs\":600000,\"maxPerHour\":2}"), Collections.emptyList());
+        now.set(T0 + 10 * MINUTE);
+        planner.onRotationStarted();
+        assertEquals(T0 + 20 * MINUTE, planner.nextRotationAt());
+
+        now.set(T0 + 20 * MINUTE);
+        planner.onRotationStarted();
+        // 第三次要等到T0+10分钟那次满一小时
+        assertEquals(T0 + 70 * MINUTE, planner.nextRotationAt());
+        assertEquals(Arrays.asList(T0 + 10 * MINUTE, T0 + 20 * MINUTE), planner.history());
+    }
+
+    @Test
+    public void savedHistorySurvivesRestart() {
+        RotationPolicy policy = policy("{\"version\":1,\"intervalMs\":600000,\"maxPerHour\":2}");
+        now.set(T0 + 30 * MINUTE);
+        // 一小时前的记录已经过期，只有最近两次计入上限
+        planner.setPolicy(policy, Arrays.asList(T0 - 40 * MINUTE, T0 + 15 * MINUTE, T0 + 25 * MINUTE));
+        assertEquals(T0 + 75 * MINUTE, planner.nextRotationAt());
+        assertEquals(2, planner.history().size());
+    }
+
+    @Test
+    public void quietHoursPushToEndOfWindow() {
+        // 本地（UTC）22:00-06:00静默，现在10:00，间隔12小时落在22:00
+        planner.setPolicy(policy("{\"version\":1,\"intervalMs\":43200000,"
+                + "\"quietHours\":{\"start\":\"22:00\",\"end\":\"06:00\"}}"), Collections.emptyList());
+        assertEquals(T0 + 20 * 60 * MINUTE, planner.nextRotationAt());
+
+        // 同一天内的静默时段
+        planner.setPolicy(policy("{\"version\":2,\"intervalMs\":600000,"
+                + "\"quietHours\":{\"start\":\"10:05\",\"end\":\"12:00\"}}"), Collections.emptyList());
+        assertEquals(T0 + 120 * MINUTE, planner.nextRotationAt());
+    }
+
+    @Test
+    public void disabledPolicyStopsPlanning() {
+        planner.setPolicy(policy("{\"version\":1,\"intervalMs\":600000}"), Collections.emptyList());
+        planner.setPolicy(policy("{\"version\":2,\"enabled\":false}"), Collections.emptyList());
+        assertEquals(-1, planner.nextRotationAt());
+        now.set(T0 + 24 * 60 * MINUTE);
+        assertFalse(planner.isDue());
+    }
+}
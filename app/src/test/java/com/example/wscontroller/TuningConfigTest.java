@@ -0,0 +1,97 @@
+package com.example.wscontroller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TuningConfigTest {
+    private static JSONObject pushed(long version, JSONObject values) {
+        JSONObject json = new JSONObject();
+        json.put("version", version);
+        json.put("values", values);
+        return json;
+    }
+
+    private static void assertRejected(JSONObject json) {
+        try {
+            TuningConfig.fromJson(json);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        throw new AssertionError("应当拒绝: " + json);
+    }
+
+    @Test
+    public void defaultsMatchPreviousConstants() {
+        TuningConfig defaults = TuningConfig.DEFAULTS;
+        assertEquals(0, defaults.version());
+        assertEquals(15000, defaults.get(TuningConfig.Key.HEARTBEAT_INTERACTIVE));
+        assertEquals(5000, defaults.get(TuningConfig.Key.RECONNECT_BASE));
+        assertEquals(2, defaults.get(TuningConfig.Key.REQUIRED_FAILED_CHECKS));
+        assertEquals(60, defaults.tapOffsets()[1]);
+    }
+
+    @Test
+    public void missingValuesFallBackToDefaultsAndUnknownAreIgnored() {
+        JSONObject values = new JSONObject();
+        values.put("heartbeatInteractiveMs", 20000);
+        values.put("futureParameter", 1);
+        TuningConfig config = TuningConfig.fromJson(pushed(3, values));
+
+        assertEquals(3, config.version());
+        assertEquals(20000, config.get(TuningConfig.Key.HEARTBEAT_INTERACTIVE));
+        assertEquals(60000, config.get(TuningConfig.Key.HEARTBEAT_SCREEN_OFF));
+    }
+
+    @Test
+    public void invalidConfigIsRejectedAsAWhole() {
+        assertRejected(new JSONObject());
+
+        JSONObject outOfRange = new JSONObject();
+        outOfRange.put("heartbeatInteractiveMs", 20000);
+        outOfRange.put("requiredFailedChecks", 0);
+        assertRejected(pushed(4, outOfRange));
+
+        JSONObject notNumber = new JSONObject();
+        notNumber.put("pongTimeoutMs", "15000");
+        assertRejected(pushed(4, notNumber));
+
+        JSONObject inconsistent = new JSONObject();
+        inconsistent.put("reconnectBaseMs", 30000);
+        inconsistent.put("reconnectMaxMs", 10000);
+        assertRejected(pushed(4, inconsistent));
+    }
+
+    @Test
+    public void roundTripsThroughStoredMap() {
+        JSONObject values = new JSONObject();
+        values.put("tapOffset1Px", 30);
+        values.put("airplaneHoldMs", 3000);
+        TuningConfig config = TuningConfig.fromJson(pushed(7, values));
+
+        Map<String, Long> stored = config.toMap();
+        TuningConfig restored = TuningConfig.fromMap(stored);
+        assertEquals(7, restored.version());
+        assertEquals(30, restored.tapOffsets()[0]);
+        assertEquals(3000, restored.get(TuningConfig.Key.AIRPLANE_HOLD));
+    }
+
+    @Test
+    public void onlyNewerVersionsReplaceCurrent() {
+        long base = TuningConfig.current().version() + 100;
+        JSONObject values = new JSONObject();
+        values.put("heartbeatInteractiveMs", 30000);
+        TuningConfig newer = TuningConfig.fromJson(pushed(base, values));
+        TuningConfig older = TuningConfig.fromJson(pushed(base - 1, new JSONObject()));
+
+        assertTrue(TuningConfig.apply(newer));
+        assertFalse(TuningConfig.apply(older));
+        assertFalse(TuningConfig.apply(newer));
+        assertEquals(30000, TuningConfig.current().get(TuningConfig.Key.HEARTBEAT_INTERACTIVE));
+    }
+}
@@ -0,0 +1,108 @@
+// bench/fanout-bench.js - 分组广播吞吐量：逐个连接序列化 vs 只序列化一次
+//
+// 用法: node bench/fanout-bench.js [连接数] [轮数]
+// 在本机启动一个ws服务器并建立指定数量的客户端连接，每轮向全部连接广播一条消息，
+// 等所有客户端都收到后再开始下一轮，统计每秒投递的消息数。
+const http = require('http');
+const WebSocket = require('ws');
+const { fanOut } = require('../relay/groups');
+
+const N = Number(process.argv[2]) || 1000;
+const ROUNDS = Number(process.argv[3]) || 200;
+
+const message = {
+    type: 'text',
+    content: '请切换网络',
+    group: 'bench',
+    extra: 'x'.repeat(200)
+};
+
+// 原实现：对每个目标设备单独构造并序列化消息
+function perSocket(ids, clients) {
+    let delivered = 0;
+    for (const id of ids) {
+        const client = clients.get(id);
+        if (client && client.ws.readyState === WebSocket.OPEN) {
+            client.ws.send(JSON.stringify({ ...message, targetDevice: id, messageId: `msg_${Date.now()}` }));
+            delivered++;
+        }
+    }
+    return delivered;
+}
+
+// 新实现：序列化一次，所有连接共用同一个Buffer
+function serializeOnce(ids, clients) {
+    const payload = JSON.stringify({ ...message, messageId: `bcast_${Date.now()}` });
+    return fanOut(ids, id => clients.get(id), payload).delivered;
+}
+
+async function main() {
+    const server = http.createServer();
+    const wss = new WebSocket.Server({ server });
+    const clients = new Map();
+    wss.on('connection', (ws, req) => {
+        const id = req.url.slice(1);
+        clients.set(id, { id, ws });
+    });
+    await new Promise(resolve => server.listen(0, resolve));
+    const port = server.address().port;
+
+    let received = 0;
+    let onReceived = null;
+    const sockets = [];
+    for (let i = 0; i < N; i++) {
+        const ws = new WebSocket(`ws://127.0.0.1:${port}/${String(i).padStart(4, '0')}`);
+        ws.on('message', () => {
+            received++;
+            if (onReceived) onReceived();
+        });
+        sockets.push(new Promise(resolve => ws.on('open', resolve)));
+    }
+    await Promise.all(sockets);
+    while (clients.size < N) {
+        await new Promise(resolve => setImmediate(resolve));
+    }
+    const ids = Array.from(clients.keys());
+
+    for (const [name, send] of [['per-socket', perSocket], ['serialize-once', serializeOnce]]) {
+        // 预热
+        for (let r = 0; r < 10; r++) {
+            await broadcastRound(send, ids, clients);
+        }
+        let cpu = 0n;
+        const start = process.hrtime.bigint();
+        for (let r = 0; r < ROUNDS; r++) {
+            cpu += await broadcastRound(send, ids, clients);
+        }
+        const elapsedMs = Number(process.hrtime.bigint() - start) / 1e6;
+        const total = ROUNDS * ids.length;
+        console.log(`${name.padEnd(14)} ${total} 条消息, 耗时 ${elapsedMs.toFixed(1)} ms, ` +
+            `${Math.round(total / (elapsedMs / 1000))} 条/秒, 发送循环 ${(Number(cpu) / 1e6 / ROUNDS).toFixed(2)} ms/轮`);
+    }
+
+    wss.clients.forEach(ws => ws.terminate());
+    server.close();
+    process.exit(0);
+
+    // 广播一轮并等待全部客户端收到，返回发送循环本身的耗时
+    function broadcastRound(send, targetIds, map) {
+        return new Promise(resolve => {
+            const target = received + targetIds.length;
+            let loop = 0n;
+            onReceived = () => {
+                if (received >= target) {
+                    onReceived = null;
+                    resolve(loop);
+                }
+            };
+            const start = process.hrtime.bigint();
+            send(targetIds, map);
+            loop = process.hrtime.bigint() - start;
+        });
+    }
+}
+
+main().catch(error => {
+    console.error(error);
+    process.exit(1);
+});
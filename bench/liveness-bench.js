@@ -0,0 +1,162 @@
+// bench/liveness-bench.js - 对比旧的两个全量扫描循环与时间轮存活检测的开销
+//
+// 用法: node bench/liveness-bench.js [连接数] [模拟分钟数]
+// 使用虚拟时钟模拟：每个设备每15秒发送一次ping，其中1%的设备在中途静默断线。
+// 统计两种方式访问连接的次数、创建的定时器数量、CPU耗时和单次刻度最长占用。
+// CPU耗时包含收到心跳时更新连接的开销（时间轮需要改挂槽位），最长占用只统计定时器刻度，
+// 心跳在各自的消息回调中处理，不会集中到一次事件循环里。
+const { LivenessTracker } = require('../relay/liveness');
+
+const N = Number(process.argv[2]) || 10000;
+const MINUTES = Number(process.argv[3]) || 10;
+const DURATION = MINUTES * 60 * 1000;
+const HEARTBEAT = 15000;
+const SILENT_RATIO = 0.01;
+// 第一分钟用于JIT预热，不计入最长单次占用
+const WARMUP = 60000;
+
+function makeSocket() {
+    return { readyState: 1, ping() {}, terminate() { this.readyState = 3; }, close() { this.readyState = 3; } };
+}
+
+// 每个设备的心跳相位和静默时间固定，两种方式使用同一份场景
+function makeScenario() {
+    const devices = [];
+    for (let i = 0; i < N; i++) {
+        devices.push({
+            id: String(i).padStart(5, '0'),
+            phase: Math.floor(Math.random() * HEARTBEAT / 1000) * 1000,
+            silentAt: Math.random() < SILENT_RATIO ? Math.floor(Math.random() * DURATION) : Infinity
+        });
+    }
+    return devices;
+}
+
+// 按1秒步进推进虚拟时间，返回每一步需要发送心跳的设备
+function heartbeatsAt(devices, now) {
+    const due = [];
+    for (const d of devices) {
+        if (now < d.silentAt && (now - d.phase) % HEARTBEAT === 0 && now >= d.phase) {
+            due.push(d);
+        }
+    }
+    return due;
+}
+
+// 旧实现：每15秒和每30秒各扫描一次全部连接，每个可疑连接一个setTimeout
+function runLegacy(devices, schedule) {
+    const clients = new Map();
+    for (const d of devices) {
+        clients.set(d.id, { ws: makeSocket(), lastSeen: d.phase - HEARTBEAT });
+    }
+    const timers = [];
+    let visits = 0;
+    let timersCreated = 0;
+    let cpu = 0n;
+    let maxPause = 0n;
+
+    for (let now = 0; now <= DURATION; now += 1000) {
+        const touchStart = process.hrtime.bigint();
+        for (const d of schedule.get(now) || []) {
+            const c = clients.get(d.id);
+            if (c) c.lastSeen = now;
+        }
+        cpu += process.hrtime.bigint() - touchStart;
+
+        const start = process.hrtime.bigint();
+        // 到期的setTimeout
+        for (let i = timers.length - 1; i >= 0; i--) {
+            if (timers[i].at <= now) {
+                timers[i].fn();
+                timers.splice(i, 1);
+            }
+        }
+        if (now % 15000 === 0) {
+            clients.forEach((client, id) => {
+                visits++;
+                const since = now - client.lastSeen;
+                if (since > 30000) {
+                    if (since > 45000) {
+                        client.ws.close();
+                        clients.delete(id);
+                    } else {
+                        client.ws.ping();
+                        timersCreated++;
+                        timers.push({ at: now + 10000, fn: () => {
+                            if (clients.has(id) && clients.get(id).lastSeen < now) clients.delete(id);
+                        } });
+                    }
+                }
+            });
+        }
+        if (now % 30000 === 0) {
+            clients.forEach((client, id) => {
+                visits++;
+                if (now - client.lastSeen > 60000) {
+                    client.ws.ping();
+                    timersCreated++;
+                    timers.push({ at: now + 5000, fn: () => {
+                        if (clients.has(id) && now - clients.get(id).lastSeen > 60000) {
+                            client.ws.terminate();
+                            clients.delete(id);
+                        }
+                    } });
+                }
+            });
+        }
+        const pause = process.hrtime.bigint() - start;
+        cpu += pause;
+        if (now >= WARMUP && pause > maxPause) maxPause = pause;
+    }
+    return { visits, timersCreated, cpuMs: Number(cpu) / 1e6, maxPauseMs: Number(maxPause) / 1e6, remaining: clients.size };
+}
+
+// 新实现：单个时间轮，心跳时改挂到新的截止时间，刻度只访问到期的连接
+function runWheel(devices, schedule) {
+    const clients = new Map();
+    const tracker = new LivenessTracker({
+        idleTimeout: 30000,
+        probeTimeout: 10000,
+        now: 0,
+        onDead: client => clients.delete(client.id)
+    });
+    for (const d of devices) {
+        const client = { id: d.id, ws: makeSocket(), lastSeen: d.phase - HEARTBEAT };
+        clients.set(d.id, client);
+        tracker.track(client, 0);
+    }
+    let cpu = 0n;
+    let maxPause = 0n;
+
+    for (let now = 0; now <= DURATION; now += 1000) {
+        const touchStart = process.hrtime.bigint();
+        for (const d of schedule.get(now) || []) {
+            const c = clients.get(d.id);
+            if (c) tracker.touch(c, now);
+        }
+        cpu += process.hrtime.bigint() - touchStart;
+
+        const start = process.hrtime.bigint();
+        tracker.tick(now);
+        const pause = process.hrtime.bigint() - start;
+        cpu += pause;
+        if (now >= WARMUP && pause > maxPause) maxPause = pause;
+    }
+    return { visits: tracker.stats.expirations, timersCreated: 0, cpuMs: Number(cpu) / 1e6, maxPauseMs: Number(maxPause) / 1e6, remaining: clients.size };
+}
+
+const devices = makeScenario();
+const schedule = new Map();
+for (let now = 0; now <= DURATION; now += 1000) {
+    schedule.set(now, heartbeatsAt(devices, now));
+}
+const silent = devices.filter(d => d.silentAt !== Infinity).length;
+
+const wheel = runWheel(devices, schedule);
+const legacy = runLegacy(devices, schedule);
+
+console.log(`连接数 ${N}, 模拟 ${MINUTES} 分钟, 静默断线 ${silent} 个`);
+for (const [name, r] of [['legacy', legacy], ['wheel', wheel]]) {
+    console.log(`${name.padEnd(7)} 访问连接 ${r.visits} 次 (${Math.round(r.visits / MINUTES)}/分钟), ` +
+        `创建定时器 ${r.timersCreated} 个, CPU ${r.cpuMs.toFixed(1)} ms, 最长单次 ${r.maxPauseMs.toFixed(2)} ms, 剩余连接 ${r.remaining}`);
+}
@@ -0,0 +1,89 @@
+// bench/logger-bench.js - 对比中转服务器消息热路径上 console.log 与缓冲日志的吞吐量
+//
+// 用法: node bench/logger-bench.js [消息数]
+// 每种模式在子进程中运行，子进程的stdout通过管道交给父进程读取并丢弃，
+// 与生产环境中stdout被进程管理器接管的情况一致。
+const { spawn } = require('child_process');
+
+// console: 原实现; logger-all: 缓冲日志但不采样; logger: 缓冲日志+默认采样
+const MODES = ['console', 'logger-all', 'logger'];
+
+function runChild(mode, count) {
+    const { createLogger } = require('../relay/logger');
+    let log = null;
+    if (mode === 'logger') {
+        log = createLogger({ sampling: { message: 0.01, ping: 0 } });
+    } else if (mode === 'logger-all') {
+        log = createLogger({ level: 'debug', repeatLimit: Infinity });
+    }
+
+    // 模拟一批设备交替发送ping和状态消息
+    const frames = [];
+    for (let i = 0; i < 1000; i++) {
+        const deviceId = String(i).padStart(3, '0');
+        frames.push([deviceId, JSON.stringify({ type: 'ping', timestamp: Date.now(), deviceId })]);
+        frames.push([deviceId, JSON.stringify({ type: 'status', status: 'ready' })]);
+    }
+
+    // 每批消息后让出事件循环，与服务器逐帧处理消息时的调度方式一致
+    const BATCH = 500;
+    const start = process.hrtime.bigint();
+    let sent = 0;
+    const runBatch = () => {
+        const end = Math.min(count, sent + BATCH);
+        for (; sent < end; sent++) {
+            const [deviceId, message] = frames[sent % frames.length];
+            const data = JSON.parse(message);
+            if (log) {
+                log.info('message', '收到设备消息', { deviceId, type: data.type });
+                if (data.type === 'ping') {
+                    log.debug('ping', '设备发送了连接检查ping', { deviceId });
+                }
+            } else {
+                console.log(`收到来自 ${deviceId} 的消息:`, data);
+            }
+        }
+        if (sent < count) {
+            setImmediate(runBatch);
+            return;
+        }
+        const elapsedMs = Number(process.hrtime.bigint() - start) / 1e6;
+        if (log) {
+            log.close();
+        }
+        process.stderr.write(JSON.stringify({ mode, count, elapsedMs }) + '\n');
+    };
+    runBatch();
+}
+
+function runParent(count) {
+    const results = [];
+    const next = () => {
+        const mode = MODES[results.length];
+        if (!mode) {
+            for (const r of results) {
+                const rate = Math.round(r.count / (r.elapsedMs / 1000));
+                console.log(`${r.mode.padEnd(10)} ${r.count} 条消息, 耗时 ${r.elapsedMs.toFixed(1)} ms, ${rate} 条/秒`);
+            }
+            return;
+        }
+        const child = spawn(process.execPath, [__filename, '--child', mode, String(count)], {
+            stdio: ['ignore', 'pipe', 'pipe']
+        });
+        let stderr = '';
+        child.stdout.resume();
+        child.stderr.on('data', chunk => { stderr += chunk; });
+        child.on('exit', () => {
+            const line = stderr.trim().split('\n').pop();
+            results.push(JSON.parse(line));
+            next();
+        });
+    };
+    next();
+}
+
+if (process.argv[2] === '--child') {
+    runChild(process.argv[3], Number(process.argv[4]));
+} else {
+    runParent(Number(process.argv[2]) || 200000);
+}
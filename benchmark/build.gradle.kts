@@ -0,0 +1,118 @@
+import groovy.json.JsonSlurper
+
+plugins {
+    alias(libs.plugins.android.test)
+    alias(libs.plugins.kotlin.android)
+    alias(libs.plugins.androidx.baselineprofile)
+}
+
+// 测试设备使用的设备编号和中转服务器HTTP地址，必须显式指定，不默认连生产服务器：
+// -Pwsc.benchmarkDevice=... -Pwsc.benchmarkRelay=http://host:port
+val benchmarkDevice = findProperty("wsc.benchmarkDevice") as String?
+val benchmarkRelay = findProperty("wsc.benchmarkRelay") as String?
+
+android {
+    namespace = "com.example.wscontroller.benchmark"
+    compileSdk = 35
+
+    defaultConfig {
+        minSdk = 28 // Baseline Profile生成需要Android 9及以上
+        targetSdk = 35
+
+        testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
+        // 连接等待时间可用 -Pandroid.testInstrumentationRunnerArguments.connectTimeoutMs=... 覆盖
+        benchmarkDevice?.let { testInstrumentationRunnerArguments["deviceNumber"] = it }
+        benchmarkRelay?.let { testInstrumentationRunnerArguments["relayHttpUrl"] = it }
+        testInstrumentationRunnerArguments["connectTimeoutMs"] = "15000"
+    }
+
+    compileOptions {
+        sourceCompatibility = JavaVersion.VERSION_11
+        targetCompatibility = JavaVersion.VERSION_11
+    }
+    kotlinOptions {
+        jvmTarget = "11"
+    }
+
+    targetProjectPath = ":app"
+}
+
+// 生成Baseline Profile和测量启动都使用连接的真机或模拟器；
+// 插件会为app和本模块创建nonMinifiedRelease（生成）和benchmarkRelease（测量）构建类型
+baselineProfile {
+    useConnectedDevices = true
+}
+
+dependencies {
+    implementation(libs.androidx.junit)
+    implementation(libs.androidx.uiautomator)
+    implementation(libs.androidx.benchmark.macro.junit4)
+}
+
+// 启动耗时回归检查：读取Macrobenchmark输出的JSON，冷启动中位数超过阈值时构建失败。
+// 阈值可用 -Pwsc.maxStartupMs=... -Pwsc.maxConnectMs=... 覆盖
+val maxStartupMs = (findProperty("wsc.maxStartupMs") as String? ?: "1000").toDouble()
+val maxConnectMs = (findProperty("wsc.maxConnectMs") as String? ?: "3000").toDouble()
+val benchmarkOutput = layout.buildDirectory.dir("outputs/connected_android_test_additional_output")
+
+val checkStartupRegression by tasks.registering {
+    group = "verification"
+    description = "冷启动或首次连接耗时超过阈值时失败"
+    doLast {
+        val reports = benchmarkOutput.get().asFile.walkTopDown()
+            .filter { it.name.endsWith("benchmarkData.json") }
+            .toList()
+        if (reports.isEmpty()) {
+            throw GradleException("没有找到Macrobenchmark结果，先运行connectedBenchmarkReleaseAndroidTest")
+        }
+        // 每项指标: 指标名 -> 阈值，只检查使用Baseline Profile的冷启动
+        val limits = mapOf(
+            "timeToInitialDisplayMs" to maxStartupMs,
+            "timeToFullDisplayMs" to maxConnectMs
+        )
+        val failures = mutableListOf<String>()
+        var checked = 0
+        for (report in reports) {
+            @Suppress("UNCHECKED_CAST")
+            val root = JsonSlurper().parse(report) as Map<String, Any?>
+            @Suppress("UNCHECKED_CAST")
+            val benchmarks = root["benchmarks"] as List<Map<String, Any?>>
+            for (benchmark in benchmarks.filter { it["name"] == "coldStartToConnected" }) {
+                @Suppress("UNCHECKED_CAST")
+                val metrics = benchmark["metrics"] as Map<String, Map<String, Any?>>
+                for ((metric, limit) in limits) {
+                    val median = (metrics[metric]?.get("median") as Number?)?.toDouble()
+                    if (median == null) {
+                        failures += "$metric 缺失 (${report.name})"
+                        continue
+                    }
+                    checked++
+                    logger.lifecycle("${report.parentFile.name} $metric 中位数 ${median}ms，阈值 ${limit}ms")
+                    if (median > limit) {
+                        failures += "$metric 中位数 ${median}ms 超过阈值 ${limit}ms (${report.name})"
+                    }
+                }
+            }
+        }
+        // 测试或指标改名后结果里可能一项都对不上，不能当作通过
+        if (checked == 0) {
+            throw GradleException("Macrobenchmark结果中没有coldStartToConnected的受检指标: ${limits.keys}")
+        }
+        if (failures.isNotEmpty()) {
+            throw GradleException("启动耗时回归:\n" + failures.joinToString("\n"))
+        }
+    }
+}
+
+tasks.matching { it.name == "connectedBenchmarkReleaseAndroidTest" }.configureEach {
+    finalizedBy(checkStartupRegression)
+}
+
+// 测量和生成Baseline Profile都要连真实的中转服务器，没有指定目标时在运行前失败
+tasks.matching { it.name.startsWith("connected") && it.name.endsWith("AndroidTest") }.configureEach {
+    doFirst {
+        if (benchmarkDevice.isNullOrBlank() || benchmarkRelay.isNullOrBlank()) {
+            throw GradleException("需要指定测试目标: -Pwsc.benchmarkDevice=设备编号 -Pwsc.benchmarkRelay=http://host:port")
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.wscontroller.benchmark
+
+import androidx.benchmark.macro.MacrobenchmarkScope
+import androidx.test.platform.app.InstrumentationRegistry
+import androidx.test.uiautomator.By
+import androidx.test.uiautomator.Until
+import java.net.HttpURLConnection
+import java.net.URL
+import java.net.URLEncoder
+
+const val TARGET_PACKAGE = "com.example.wscontroller"
+
+// 与app中StartupTracer的trace段名保持一致
+const val SECTION_APP_ON_CREATE = "wsc:app.onCreate"
+const val SECTION_MAIN_CRITICAL = "wsc:main.critical"
+const val SECTION_SERVICE_ON_CREATE = "wsc:service.onCreate"
+const val SECTION_SERVICE_START = "wsc:service.onStartCommand"
+const val SECTION_CONNECT = "wsc:connect"
+
+private val arguments get() = InstrumentationRegistry.getArguments()
+
+// 设备编号和中转服务器地址由构建参数 -Pwsc.benchmarkDevice / -Pwsc.benchmarkRelay 传入，没有默认值
+private fun requiredArgument(name: String): String =
+    arguments.getString(name) ?: throw IllegalStateException("缺少instrumentation参数$name")
+
+val deviceNumber: String get() = requiredArgument("deviceNumber")
+
+val connectTimeoutMs: Long get() = arguments.getString("connectTimeoutMs", "15000").toLong()
+
+val relayHttpUrl: String get() = requiredArgument("relayHttpUrl")
+
+// 设备编号保存在应用自己的存储里，整个测试进程只需要设置一次
+private var deviceNumberReady = false
+
+// 授予通知权限、关闭无障碍提示框并设置设备编号，之后冷启动会直接连接
+fun MacrobenchmarkScope.ensureDeviceNumber() {
+    if (deviceNumberReady) {
+        return
+    }
+    device.executeShellCommand("pm grant $TARGET_PACKAGE android.permission.POST_NOTIFICATIONS")
+    startActivityAndWait()
+    dismissDialogs()
+
+    val current = device.wait(Until.findObject(By.res(TARGET_PACKAGE, "deviceNumberTextView")), 5000)
+    if (current?.text != deviceNumber) {
+        device.findObject(By.res(TARGET_PACKAGE, "setDeviceNumberButton")).click()
+        val input = device.wait(Until.findObject(By.res(TARGET_PACKAGE, "deviceNumberEditText")), 5000)
+        input.text = deviceNumber
+        device.findObject(By.text("保存")).click()
+    }
+    deviceNumberReady = true
+}
+
+// 无障碍服务未启用时界面会弹出提示框
+fun MacrobenchmarkScope.dismissDialogs() {
+    device.wait(Until.findObject(By.text("取消")), 1000)?.click()
+}
+
+// 等待界面显示已连接，超时说明中转服务器不可用，测量结果没有意义，直接失败
+fun MacrobenchmarkScope.waitForConnected() {
+    val connected = device.wait(
+        Until.hasObject(By.res(TARGET_PACKAGE, "connectionStatusTextView").text("已连接")),
+        connectTimeoutMs
+    )
+    check(connected) { "${connectTimeoutMs}ms内未连接到中转服务器，设备编号: $deviceNumber" }
+}
+
+// 通过中转服务器的/send接口给测试设备发一条指令，走一遍WebSocketManager的收消息、通知和handleMessage路径。
+// 动作名不是已知指令，设备只记录"未知动作"，不会切换网络
+fun sendProbeCommand(index: Int) {
+    val message = """{"type":"command","action":"profile_probe","content":"baseline $index"}"""
+    val url = URL("$relayHttpUrl/send?targetDevice=$deviceNumber&message=" + URLEncoder.encode(message, "UTF-8"))
+    val connection = url.openConnection() as HttpURLConnection
+    try {
+        connection.connectTimeout = 5000
+        connection.readTimeout = 5000
+        check(connection.responseCode == 200) { "发送测试指令失败: HTTP ${connection.responseCode}" }
+    } finally {
+        connection.disconnect()
+    }
+}
+
+// 等待界面日志里出现测试指令，说明设备已处理完这条消息
+fun MacrobenchmarkScope.waitForProbe(index: Int) {
+    device.wait(Until.hasObject(By.textContains("baseline $index")), connectTimeoutMs)
+}
@@ -0,0 +1,40 @@
+package com.example.wscontroller.benchmark
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * 生成app的Baseline Profile，覆盖冷启动、前台服务建立连接和收到指令后的处理路径。
+ *
+ * 运行: ./gradlew :app:generateBaselineProfile -Pwsc.benchmarkDevice=... -Pwsc.benchmarkRelay=...
+ * 需要设备能访问中转服务器，结果写入app/src/release/generated/baselineProfiles。
+ */
+@RunWith(AndroidJUnit4::class)
+class BaselineProfileGenerator {
+    @get:Rule
+    val rule = BaselineProfileRule()
+
+    @Test
+    fun generate() = rule.collect(
+        packageName = TARGET_PACKAGE,
+        // 启动和连接部分同时写入Startup Profile，用于dex布局
+        includeInStartupProfile = true
+    ) {
+        ensureDeviceNumber()
+        pressHome()
+        killProcess()
+
+        // 冷启动 -> 服务连接
+        startActivityAndWait()
+        waitForConnected()
+
+        // 收消息 -> 通知合并 -> 事件分发 -> handleMessage；连续几条让合并通知和日志列表的刷新也被覆盖
+        repeat(5) { index ->
+            sendProbeCommand(index)
+            waitForProbe(index)
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.wscontroller.benchmark
+
+import androidx.benchmark.macro.BaselineProfileMode
+import androidx.benchmark.macro.CompilationMode
+import androidx.benchmark.macro.ExperimentalMetricApi
+import androidx.benchmark.macro.StartupMode
+import androidx.benchmark.macro.StartupTimingMetric
+import androidx.benchmark.macro.TraceSectionMetric
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * 冷启动到连接成功的耗时。
+ *
+ * 需要真机或模拟器能访问中转服务器；设备编号和中转服务器地址通过-Pwsc.benchmarkDevice、-Pwsc.benchmarkRelay指定。
+ * timeToFullDisplayMs是进程启动到界面显示已连接（app在首次连接成功时调用reportFullyDrawn），
+ * 各wsc:段是StartupTracer记录的启动阶段，其中wsc:service.*也是服务被系统重启时走的路径。
+ *
+ * 运行: ./gradlew :benchmark:connectedBenchmarkReleaseAndroidTest，结束后checkStartupRegression
+ * 用coldStartToConnected的中位数对比阈值，超过时构建失败。
+ */
+@RunWith(AndroidJUnit4::class)
+class StartupBenchmark {
+    @get:Rule
+    val rule = MacrobenchmarkRule()
+
+    // 按app中的Baseline Profile预编译，即用户从应用商店安装后的情况；还没有生成过Profile时退化为不编译
+    @Test
+    fun coldStartToConnected() = startup(CompilationMode.Partial(BaselineProfileMode.UseIfAvailable))
+
+    // 没有任何AOT编译时的最差情况，和上面对比可以看出Baseline Profile的收益
+    @Test
+    fun coldStartToConnectedNoCompilation() = startup(CompilationMode.None())
+
+    @OptIn(ExperimentalMetricApi::class)
+    private fun startup(compilationMode: CompilationMode) = rule.measureRepeated(
+        packageName = TARGET_PACKAGE,
+        metrics = listOf(
+            StartupTimingMetric(),
+            TraceSectionMetric(SECTION_APP_ON_CREATE),
+            TraceSectionMetric(SECTION_MAIN_CRITICAL),
+            TraceSectionMetric(SECTION_SERVICE_ON_CREATE),
+            TraceSectionMetric(SECTION_SERVICE_START),
+            TraceSectionMetric(SECTION_CONNECT)
+        ),
+        compilationMode = compilationMode,
+        startupMode = StartupMode.COLD,
+        iterations = 10,
+        setupBlock = {
+            ensureDeviceNumber()
+        }
+    ) {
+        startActivityAndWait()
+        waitForConnected()
+    }
+}
@@ -0,0 +1,41 @@
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// 直接编译app中不依赖Android的类，不复制代码；新增的类只要不引用android.*就可以加到这里
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include(
+                "com/example/wscontroller/Protocol.java",
+                "com/example/wscontroller/ReconnectBackoff.java",
+                "com/example/wscontroller/LogBuffer.java",
+                "com/example/wscontroller/EventTopic.java"
+            )
+        }
+    }
+}
+
+dependencies {
+    // Android上org.json由系统提供
+    implementation(libs.json)
+}
+
+// ./gradlew :jmh:jmh，结果在build/results/jmh/results.json
+// gc分析器输出每次操作分配的字节数(gc.alloc.rate.norm)，改动前后对比这一项和吞吐量
+jmh {
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    // 只跑部分基准: ./gradlew :jmh:jmh -PjmhInclude=Protocol
+    (findProperty("jmhInclude") as String?)?.let { includes.set(listOf(it)) }
+}
@@ -0,0 +1,39 @@
+package com.example.wscontroller;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+// 收到消息后的事件分发：MESSAGE主题保留20条重放，订阅者为界面和服务
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EventTopicBenchmark {
+    @Param({"0", "2"})
+    public int subscribers;
+
+    private EventTopic<String> topic;
+    private long recorded;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        topic = new EventTopic<>("message", 20, latencyMicros -> recorded += latencyMicros, (name, error) -> { });
+        for (int i = 0; i < subscribers; i++) {
+            topic.subscribe(blackhole::consume);
+        }
+    }
+
+    @Benchmark
+    public long publish() {
+        topic.publish("{\"type\":\"command\",\"content\":\"请切换网络\"}");
+        return recorded;
+    }
+}
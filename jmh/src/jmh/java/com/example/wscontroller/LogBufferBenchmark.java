@@ -0,0 +1,49 @@
+package com.example.wscontroller;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// 界面日志：缓冲区已满时加入一条（覆盖最旧一条）和列表绑定时读取一行。
+// 取代了原来MainActivity中对整段文本的countLines/trimLog
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LogBufferBenchmark {
+    @Param({"500"})
+    public int capacity;
+
+    private LogBuffer buffer;
+    private long time;
+    private int position;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        buffer = new LogBuffer(capacity);
+        time = 1718000000000L;
+        for (int i = 0; i < capacity; i++) {
+            buffer.add(time, "收到消息: {\"type\":\"command\",\"content\":\"请切换网络\"}");
+        }
+    }
+
+    // 每次加入间隔约50ms，同一秒内复用时间戳字符串
+    @Benchmark
+    public boolean addWhenFull() {
+        time += 50;
+        return buffer.add(time, "收到消息: {\"type\":\"command\",\"content\":\"请切换网络\"}");
+    }
+
+    @Benchmark
+    public String get() {
+        position = (position + 1) % capacity;
+        return buffer.get(position);
+    }
+}
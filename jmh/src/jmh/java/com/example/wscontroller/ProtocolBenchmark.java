@@ -0,0 +1,64 @@
+package com.example.wscontroller;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+// 收消息路径（解析+分类，每条消息一次）和心跳帧构造
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProtocolBenchmark {
+    private static final String DEVICE_ID = "tenant-1024";
+
+    // 控制端发来的切换网络指令，带wait模式的messageId
+    private final String command = "{\"type\":\"command\",\"action\":\"switch\",\"content\":\"请切换网络\","
+            + "\"targetDevice\":\"tenant-1024\",\"messageId\":\"m-20240601-000001\",\"expectResult\":true}";
+    private final String pong = "{\"type\":\"pong\",\"echo\":1718000000000,\"timestamp\":1718000000042}";
+    private final String otherDevice = "{\"type\":\"command\",\"action\":\"switch\",\"content\":\"请切换网络\","
+            + "\"targetDevice\":\"tenant-2048\"}";
+    private final String plainText = "请切换网络";
+    private long timestamp = 1718000000000L;
+
+    @Benchmark
+    public Protocol.Command command() {
+        return Protocol.classify(command, Protocol.parse(command), DEVICE_ID);
+    }
+
+    @Benchmark
+    public Protocol.Command pong() {
+        return Protocol.classify(pong, Protocol.parse(pong), DEVICE_ID);
+    }
+
+    @Benchmark
+    public Protocol.Command notForDevice() {
+        return Protocol.classify(otherDevice, Protocol.parse(otherDevice), DEVICE_ID);
+    }
+
+    // 不是JSON的文本，解析失败要构造异常
+    @Benchmark
+    public Protocol.Command plainText() {
+        return Protocol.classify(plainText, Protocol.parse(plainText), DEVICE_ID);
+    }
+
+    @Benchmark
+    public String pingFrame() {
+        return Protocol.ping(DEVICE_ID, timestamp++);
+    }
+
+    // 原来用JSONObject构造心跳帧，作为pingFrame的对照
+    @Benchmark
+    public String pingFrameJsonObject() {
+        JSONObject json = new JSONObject();
+        json.put("type", "ping");
+        json.put("timestamp", timestamp++);
+        json.put("deviceId", DEVICE_ID);
+        return json.toString();
+    }
+}
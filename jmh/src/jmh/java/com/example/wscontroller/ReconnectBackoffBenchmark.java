@@ -0,0 +1,30 @@
+package com.example.wscontroller;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+// 两种重连退避的计算开销，尝试次数在0到9之间循环，避免被常量折叠
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ReconnectBackoffBenchmark {
+    private int attempts = 0;
+
+    @Benchmark
+    public long autoReconnectDelay() {
+        attempts = (attempts + 1) % 10;
+        return ReconnectBackoff.autoReconnectDelay(attempts);
+    }
+
+    @Benchmark
+    public long reconnectDelay() {
+        attempts = (attempts + 1) % 10;
+        return ReconnectBackoff.reconnectDelay(attempts);
+    }
+}
@@ -0,0 +1,113 @@
+// relay/backpressure.js - 按连接的发送缓冲高低水位控制写入
+//
+// ws的bufferedAmount是已经交给send()、但还没写入内核的字节数。蜂窝网络较慢时，
+// 如果一直写入，缓冲会无限增长。缓冲超过高水位后连接进入拥塞状态：
+// 控制指令由调用方拒绝（/send返回429），可合并的帧（pong）只保留最新一条，
+// 可丢弃的帧直接丢弃；缓冲降到低水位以下后退出拥塞状态，并补发合并的帧。
+
+const WS_OPEN = 1;
+
+class Backpressure {
+    constructor(options = {}) {
+        this.highWatermark = options.highWatermark || 256 * 1024;
+        this.lowWatermark = options.lowWatermark || 64 * 1024;
+        // ws没有对外的drain事件，拥塞的连接由一个共用定时器轮询
+        this.pollMs = options.pollMs || 100;
+        this.onChange = options.onChange || (() => {});
+        this.saturated = new Set();
+        this.timer = null;
+        this.stats = { saturations: 0, merged: 0, dropped: 0 };
+    }
+
+    // 判断连接是否拥塞，超过高水位时进入拥塞状态
+    isSaturated(client) {
+        if (client.saturated) {
+            return true;
+        }
+        if (client.ws.bufferedAmount >= this.highWatermark) {
+            this.enter(client);
+            return true;
+        }
+        return false;
+    }
+
+    // 按策略写入一帧，policy: 'always' 总是写入; 'merge' 拥塞时只保留最新一条; 'drop' 拥塞时丢弃
+    // 返回 'sent' | 'merged' | 'dropped' | 'closed'
+    send(client, data, policy = 'always') {
+        const ws = client.ws;
+        if (ws.readyState !== WS_OPEN) {
+            return 'closed';
+        }
+        if (policy !== 'always' && this.isSaturated(client)) {
+            if (policy === 'merge') {
+                client.mergedFrame = data;
+                this.stats.merged++;
+                return 'merged';
+            }
+            this.stats.dropped++;
+            return 'dropped';
+        }
+        ws.send(data);
+        if (!client.saturated && ws.bufferedAmount >= this.highWatermark) {
+            this.enter(client);
+        }
+        return 'sent';
+    }
+
+    // 连接移除时调用
+    forget(client) {
+        if (this.saturated.delete(client)) {
+            client.saturated = false;
+            client.mergedFrame = undefined;
+            this.stopIfIdle();
+        }
+    }
+
+    enter(client) {
+        client.saturated = true;
+        this.stats.saturations++;
+        this.saturated.add(client);
+        this.onChange(client, true);
+        if (!this.timer) {
+            this.timer = setInterval(() => this.poll(), this.pollMs);
+            if (this.timer.unref) {
+                this.timer.unref();
+            }
+        }
+    }
+
+    poll() {
+        for (const client of this.saturated) {
+            const ws = client.ws;
+            if (ws.readyState !== WS_OPEN) {
+                this.forget(client);
+                continue;
+            }
+            if (ws.bufferedAmount > this.lowWatermark) {
+                continue;
+            }
+            this.saturated.delete(client);
+            client.saturated = false;
+            this.onChange(client, false);
+            const frame = client.mergedFrame;
+            if (frame !== undefined) {
+                client.mergedFrame = undefined;
+                try {
+                    ws.send(frame);
+                } catch (e) {
+                    // 连接正在关闭，交给close事件清理
+                }
+            }
+        }
+        this.stopIfIdle();
+    }
+
+    stopIfIdle() {
+        if (this.saturated.size === 0 && this.timer) {
+            clearInterval(this.timer);
+            this.timer = null;
+        }
+    }
+}
+
+module.exports = { Backpressure };
@@ -0,0 +1,296 @@
+// relay/cluster.js - 多实例集群：设备位置目录与实例间转发
+//
+// 每个实例只持有连到自己的设备连接。设备连上或改编号时，实例在目录中登记
+// "设备 -> 实例"，目录为每次登记分配递增的epoch；断开时只有epoch仍匹配才删除登记，
+// 避免旧实例的关闭事件删掉新实例的登记。
+// 收到/send的实例如果本地没有该设备，查目录后把请求转发给持有连接的实例。
+// wait模式的messageId末尾带上挂起请求的实例ID（@nodeId），设备切换网络后重连到其他实例时，
+// 那个实例按实例ID从目录查到地址，把执行结果转交回挂起请求的实例。
+//
+// 目录接口（全部返回Promise），可以换成Redis等共享存储的实现：
+//   announce(nodeId, url)                 实例心跳，登记自己的转发地址
+//   claim(deviceId, nodeId)               登记设备位置，返回 { epoch, previous: { nodeId, epoch, url } | null }
+//   release(deviceId, nodeId, epoch)      删除登记，epoch不匹配时不删除
+//   lookup(deviceId)                      返回 { nodeId, url, epoch }，实例心跳过期视为不在线
+//   nodes()                               返回在线实例列表
+
+const crypto = require('crypto');
+
+const NODE_TTL = 15000;
+
+// 进程内目录，用于测试和单机多实例
+class MemoryDirectory {
+    constructor(options = {}) {
+        this.nodeTtl = options.nodeTtl || NODE_TTL;
+        this.locations = new Map(); // 设备编号 -> { nodeId, epoch }
+        this.members = new Map(); // 实例ID -> { url, seenAt }
+        this.epoch = 0;
+    }
+
+    async announce(nodeId, url) {
+        this.members.set(nodeId, { url, seenAt: Date.now() });
+    }
+
+    async claim(deviceId, nodeId) {
+        const location = this.locations.get(deviceId);
+        let previous = null;
+        if (location) {
+            const member = this.members.get(location.nodeId);
+            previous = { nodeId: location.nodeId, epoch: location.epoch, url: member ? member.url : null };
+        }
+        const epoch = ++this.epoch;
+        this.locations.set(deviceId, { nodeId, epoch });
+        return { epoch, previous };
+    }
+
+    async release(deviceId, nodeId, epoch) {
+        const current = this.locations.get(deviceId);
+        if (!current || current.nodeId !== nodeId || current.epoch !== epoch) {
+            return false;
+        }
+        this.locations.delete(deviceId);
+        return true;
+    }
+
+    async lookup(deviceId) {
+        const location = this.locations.get(deviceId);
+        if (!location) {
+            return null;
+        }
+        const member = this.members.get(location.nodeId);
+        if (!member || Date.now() - member.seenAt > this.nodeTtl) {
+            return null;
+        }
+        return { nodeId: location.nodeId, url: member.url, epoch: location.epoch };
+    }
+
+    async nodes() {
+        const now = Date.now();
+        const result = [];
+        this.members.forEach((member, nodeId) => {
+            if (now - member.seenAt <= this.nodeTtl) {
+                result.push({ nodeId, url: member.url, seenAt: member.seenAt });
+            }
+        });
+        return result;
+    }
+}
+
+// 通过HTTP访问另一个实例上的目录（该实例用mountDirectory挂载目录接口）
+class HttpDirectory {
+    constructor(options) {
+        this.baseUrl = options.url.replace(/\/$/, '');
+        this.secret = options.secret || '';
+        this.timeout = options.timeout || 3000;
+    }
+
+    async call(op, body) {
+        const response = await fetch(`${this.baseUrl}/cluster/directory/${op}`, {
+            method: 'POST',
+            headers: { 'Content-Type': 'application/json', 'X-Cluster-Secret': this.secret },
+            body: JSON.stringify(body),
+            signal: AbortSignal.timeout(this.timeout)
+        });
+        if (!response.ok) {
+            throw new Error(`目录请求失败: ${op} ${response.status}`);
+        }
+        return (await response.json()).result;
+    }
+
+    announce(nodeId, url) {
+        return this.call('announce', { nodeId, url });
+    }
+
+    claim(deviceId, nodeId) {
+        return this.call('claim', { deviceId, nodeId });
+    }
+
+    release(deviceId, nodeId, epoch) {
+        return this.call('release', { deviceId, nodeId, epoch });
+    }
+
+    lookup(deviceId) {
+        return this.call('lookup', { deviceId });
+    }
+
+    nodes() {
+        return this.call('nodes', {});
+    }
+}
+
+const DIRECTORY_OPS = {
+    announce: (directory, b) => directory.announce(b.nodeId, b.url),
+    claim: (directory, b) => directory.claim(b.deviceId, b.nodeId),
+    release: (directory, b) => directory.release(b.deviceId, b.nodeId, b.epoch),
+    lookup: (directory, b) => directory.lookup(b.deviceId),
+    nodes: directory => directory.nodes()
+};
+
+// 在express应用上挂载目录接口，供其他实例的HttpDirectory访问
+function mountDirectory(app, directory, secret) {
+    requireSecret(secret);
+    app.post('/cluster/directory/:op', (req, res) => {
+        if (!checkSecret(req, secret)) {
+            return res.status(403).json({ success: false, error: '集群密钥错误' });
+        }
+        const op = DIRECTORY_OPS[req.params.op];
+        if (!op) {
+            return res.status(404).json({ success: false, error: '未知的目录操作' });
+        }
+        Promise.resolve(op(directory, req.body || {}))
+            .then(result => res.json({ success: true, result: result === undefined ? null : result }))
+            .catch(error => res.status(500).json({ success: false, error: error.message }));
+    });
+}
+
+// 实例间接口能登记设备位置、转发指令和替换连接，必须配置共享密钥
+function requireSecret(secret) {
+    if (!secret) {
+        throw new Error('集群模式必须配置CLUSTER_SECRET');
+    }
+}
+
+// 常量时间比较，避免通过响应时间逐字节猜出密钥
+function checkSecret(req, secret) {
+    if (!secret) {
+        return false;
+    }
+    const expected = Buffer.from(secret);
+    const actual = Buffer.from(req.get('X-Cluster-Secret') || '');
+    return actual.length === expected.length && crypto.timingSafeEqual(actual, expected);
+}
+
+class ClusterNode {
+    constructor(options) {
+        this.nodeId = options.nodeId;
+        this.url = options.url.replace(/\/$/, '');
+        this.directory = options.directory;
+        this.secret = options.secret;
+        requireSecret(this.secret);
+        this.log = options.log;
+        this.announceInterval = options.announceInterval || 5000;
+        // 转发请求的基础超时，wait模式会再加上等待时间
+        this.forwardTimeout = options.forwardTimeout || 5000;
+        this.timer = null;
+    }
+
+    start() {
+        const announce = () => this.directory.announce(this.nodeId, this.url)
+            .catch(error => this.log.error('cluster', '实例心跳失败', { error }));
+        announce();
+        this.timer = setInterval(announce, this.announceInterval);
+        if (this.timer.unref) {
+            this.timer.unref();
+        }
+    }
+
+    stop() {
+        clearInterval(this.timer);
+        this.timer = null;
+    }
+
+    // 登记设备连到了本实例，返回本次登记的epoch，调用方保存在连接记录上
+    // 如果之前在其他实例上，通知该实例替换旧连接
+    async claim(deviceId) {
+        const { epoch, previous } = await this.directory.claim(deviceId, this.nodeId);
+        if (previous && previous.nodeId !== this.nodeId && previous.url) {
+            this.post(previous.url, '/cluster/evict', { deviceId, epoch: previous.epoch }, this.forwardTimeout)
+                .catch(error => this.log.warn('cluster', '通知旧实例替换连接失败', { deviceId, node: previous.nodeId, error }));
+        }
+        return epoch;
+    }
+
+    // 设备从本实例断开或改编号，epoch是该连接登记时拿到的值
+    release(deviceId, epoch) {
+        return this.directory.release(deviceId, this.nodeId, epoch);
+    }
+
+    // 查找持有设备连接的其他实例，设备不在线或就在本实例时返回null
+    async locate(deviceId) {
+        const owner = await this.directory.lookup(deviceId);
+        if (!owner || owner.nodeId === this.nodeId) {
+            return null;
+        }
+        return owner;
+    }
+
+    // 在messageId末尾标记本实例，设备重连到其他实例后上报的结果可以转交回来
+    tagMessageId(messageId) {
+        return `${messageId}@${this.nodeId}`;
+    }
+
+    // 结果不属于本实例挂起的请求时，转交给messageId中标记的实例，返回对方是否匹配上
+    async forwardResult(messageId, deviceId, result) {
+        const nodeId = parkingNodeOf(messageId);
+        if (!nodeId || nodeId === this.nodeId) {
+            return false;
+        }
+        const member = (await this.directory.nodes()).find(node => node.nodeId === nodeId);
+        if (!member) {
+            return false;
+        }
+        const { body } = await this.post(member.url, '/cluster/result', { messageId, deviceId, result }, this.forwardTimeout);
+        return body.matched === true;
+    }
+
+    // 把/send请求转发给持有连接的实例，返回 { status, body }
+    async forward(owner, body, extraTimeout = 0) {
+        return this.post(owner.url, '/cluster/deliver', body, this.forwardTimeout + extraTimeout);
+    }
+
+    async post(baseUrl, path, body, timeout) {
+        const response = await fetch(`${baseUrl}${path}`, {
+            method: 'POST',
+            headers: {
+                'Content-Type': 'application/json',
+                'X-Cluster-Secret': this.secret,
+                'X-Cluster-From': this.nodeId
+            },
+            body: JSON.stringify(body),
+            signal: AbortSignal.timeout(timeout)
+        });
+        return { status: response.status, body: await response.json() };
+    }
+
+    checkSecret(req) {
+        return checkSecret(req, this.secret);
+    }
+}
+
+// 取messageId中标记的实例ID，没有标记时返回null
+function parkingNodeOf(messageId) {
+    if (typeof messageId !== 'string') {
+        return null;
+    }
+    const index = messageId.indexOf('@');
+    return index >= 0 ? messageId.slice(index + 1) : null;
+}
+
+// 根据环境变量创建集群实例，未配置CLUSTER_NODE_URL时不启用集群模式
+//   CLUSTER_NODE_ID        实例ID，默认取主机名和端口
+//   CLUSTER_NODE_URL       其他实例访问本实例的HTTP地址
+//   CLUSTER_DIRECTORY      目录实例的HTTP地址；设为local表示由本实例提供目录
+//   CLUSTER_SECRET         实例间请求携带的共享密钥，集群模式下必须配置，否则拒绝启动
+function createClusterFromEnv(env, app, log, port) {
+    if (!env.CLUSTER_NODE_URL) {
+        return null;
+    }
+    const secret = env.CLUSTER_SECRET || '';
+    requireSecret(secret);
+    let directory;
+    if (!env.CLUSTER_DIRECTORY || env.CLUSTER_DIRECTORY === 'local') {
+        directory = new MemoryDirectory();
+        mountDirectory(app, directory, secret);
+    } else {
+        directory = new HttpDirectory({ url: env.CLUSTER_DIRECTORY, secret });
+    }
+    return new ClusterNode({
+        nodeId: env.CLUSTER_NODE_ID || `${require('os').hostname()}:${port}`,
+        url: env.CLUSTER_NODE_URL,
+        directory,
+        secret,
+        log
+    });
+}
+
+module.exports = { ClusterNode, MemoryDirectory, HttpDirectory, mountDirectory, createClusterFromEnv, parkingNodeOf, NODE_TTL };
@@ -0,0 +1,33 @@
+// relay/deviceId.js - 设备编号格式
+//
+// 编号格式为 [租户-]数字编号：租户以小写字母开头，最长16个字符；数字编号3到10位。
+// 不带租户的三位数字编号（旧格式）属于默认租户，继续有效。
+// 设备端 DeviceIds.java 使用同一个规则，修改时两边需要同步。
+
+const DEVICE_ID = /^(?:([a-z][a-z0-9_]{0,15})-)?(\d{3,10})$/;
+const DEFAULT_TENANT = '';
+const INVALID_MESSAGE = '设备编号格式无效，应为3到10位数字，可带租户前缀（如 acme-0001）';
+
+function isValidDeviceId(id) {
+    return typeof id === 'string' && DEVICE_ID.test(id);
+}
+
+// 解析编号，格式无效时返回null
+function parseDeviceId(id) {
+    if (typeof id !== 'string') {
+        return null;
+    }
+    const match = DEVICE_ID.exec(id);
+    if (!match) {
+        return null;
+    }
+    return { tenant: match[1] || DEFAULT_TENANT, number: match[2] };
+}
+
+// 取编号所属租户，不做格式校验，只看第一个短横线之前的部分
+function tenantOf(id) {
+    const index = id.indexOf('-');
+    return index > 0 ? id.slice(0, index) : DEFAULT_TENANT;
+}
+
+module.exports = { DEVICE_ID, DEFAULT_TENANT, INVALID_MESSAGE, isValidDeviceId, parseDeviceId, tenantOf };
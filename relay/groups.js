@@ -0,0 +1,127 @@
+// relay/groups.js - 设备分组索引与分组广播
+
+const WS_OPEN = 1;
+const GROUP_NAME = /^[\w-]{1,32}$/;
+const MAX_GROUPS_PER_DEVICE = 16;
+
+// 过滤设备上报的分组名，非法的直接丢弃
+function sanitizeGroups(groups) {
+    if (!Array.isArray(groups)) {
+        return [];
+    }
+    const result = [];
+    for (const name of groups) {
+        if (typeof name === 'string' && GROUP_NAME.test(name) && !result.includes(name)) {
+            result.push(name);
+            if (result.length >= MAX_GROUPS_PER_DEVICE) {
+                break;
+            }
+        }
+    }
+    return result;
+}
+
+class GroupIndex {
+    constructor() {
+        this.members = new Map(); // 分组名 -> Set<设备ID>
+        this.byDevice = new Map(); // 设备ID -> 分组名数组
+    }
+
+    // 覆盖设备所属的分组
+    setGroups(deviceId, groups) {
+        this.removeDevice(deviceId);
+        if (groups.length === 0) {
+            return;
+        }
+        this.byDevice.set(deviceId, groups);
+        for (const name of groups) {
+            let set = this.members.get(name);
+            if (!set) {
+                set = new Set();
+                this.members.set(name, set);
+            }
+            set.add(deviceId);
+        }
+    }
+
+    removeDevice(deviceId) {
+        const groups = this.byDevice.get(deviceId);
+        if (!groups) {
+            return;
+        }
+        this.byDevice.delete(deviceId);
+        for (const name of groups) {
+            const set = this.members.get(name);
+            if (set) {
+                set.delete(deviceId);
+                if (set.size === 0) {
+                    this.members.delete(name);
+                }
+            }
+        }
+    }
+
+    // 设备编号变更时分组跟随
+    renameDevice(fromId, toId) {
+        const groups = this.byDevice.get(fromId);
+        this.removeDevice(fromId);
+        if (groups) {
+            this.setGroups(toId, groups);
+        }
+    }
+
+    groupsOf(deviceId) {
+        return this.byDevice.get(deviceId) || [];
+    }
+
+    membersOf(name) {
+        const set = this.members.get(name);
+        return set ? Array.from(set) : [];
+    }
+
+    list() {
+        const result = [];
+        this.members.forEach((set, name) => {
+            result.push({ group: name, count: set.size, devices: Array.from(set) });
+        });
+        return result;
+    }
+}
+
+// 将同一份已序列化的消息写入多个连接，返回每个设备的投递结果
+// lookup(deviceId)返回连接记录（含ws），不存在返回undefined
+// isSaturated(client)返回true时跳过该设备，避免继续堆积慢连接的发送缓冲
+function fanOut(deviceIds, lookup, payload, isSaturated) {
+    // 只编码一次，所有连接共用同一个Buffer，以文本帧发送
+    const data = Buffer.isBuffer(payload) ? payload : Buffer.from(payload);
+    const results = new Array(deviceIds.length);
+    let delivered = 0;
+
+    for (let i = 0; i < deviceIds.length; i++) {
+        const deviceId = deviceIds[i];
+        const client = lookup(deviceId);
+        if (!client) {
+            results[i] = { deviceId, delivered: false, error: 'not_connected' };
+            continue;
+        }
+        if (client.ws.readyState !== WS_OPEN) {
+            results[i] = { deviceId, delivered: false, error: 'connection_closed' };
+            continue;
+        }
+        if (isSaturated && isSaturated(client)) {
+            results[i] = { deviceId, delivered: false, error: 'backpressure' };
+            continue;
+        }
+        try {
+            client.ws.send(data, { binary: false });
+            results[i] = { deviceId, delivered: true };
+            delivered++;
+        } catch (e) {
+            results[i] = { deviceId, delivered: false, error: e.message };
+        }
+    }
+
+    return { delivered, results };
+}
+
+module.exports = { GroupIndex, fanOut, sanitizeGroups };
@@ -0,0 +1,187 @@
+// relay/liveness.js - 基于时间轮的连接存活检测
+//
+// 每个连接只挂在自己真正的截止时间上：收到消息时通过touch把它移到新的槽位（O(1)），
+// 正常发心跳的连接永远不会到期，刻度只处理需要探测或断开的连接，开销随到期数增长而不是随连接数。
+// 所有连接共用一个定时器推进时间轮，不再为每个连接创建setTimeout。
+
+const WS_OPEN = 1;
+
+class TimingWheel {
+    constructor(options = {}) {
+        this.tickMs = options.tickMs || 1000;
+        // 时间轮跨度应大于最长的截止时间，超出跨度的条目会在转过一圈后再判断
+        // 每个槽位是一个侵入式双向循环链表（头节点为哨兵），改挂和取消都是O(1)的指针操作，
+        // 处理槽位时不会遇到失效的引用
+        this.slots = new Array(options.slots || 512);
+        for (let i = 0; i < this.slots.length; i++) {
+            const head = { wheelPrev: null, wheelNext: null };
+            head.wheelPrev = head;
+            head.wheelNext = head;
+            this.slots[i] = head;
+        }
+        this.currentTick = Math.floor((options.now !== undefined ? options.now : Date.now()) / this.tickMs);
+        this.size = 0;
+    }
+
+    // 将条目挂到deadline所在的槽位，不会早于deadline触发；已挂在其他槽位时先摘下
+    schedule(entry, deadline) {
+        const tick = Math.max(Math.ceil(deadline / this.tickMs), this.currentTick + 1);
+        if (entry.wheelTick === tick) {
+            return; // 同一刻度内的重复续期
+        }
+        if (entry.wheelTick === undefined) {
+            this.size++;
+        } else {
+            unlink(entry);
+        }
+        entry.wheelTick = tick;
+        const head = this.slots[tick % this.slots.length];
+        entry.wheelPrev = head.wheelPrev;
+        entry.wheelNext = head;
+        head.wheelPrev.wheelNext = entry;
+        head.wheelPrev = entry;
+    }
+
+    cancel(entry) {
+        if (entry.wheelTick !== undefined) {
+            unlink(entry);
+            entry.wheelTick = undefined;
+            this.size--;
+        }
+    }
+
+    // 推进到now，对每个到期条目调用onExpire，返回到期条目数
+    advance(now, onExpire) {
+        const targetTick = Math.floor(now / this.tickMs);
+        const length = this.slots.length;
+        let expired = 0;
+        // 落后超过一圈时，每个槽位只需处理一次
+        const firstTick = Math.max(this.currentTick + 1, targetTick - length + 1);
+        for (let tick = firstTick; tick <= targetTick; tick++) {
+            this.currentTick = tick;
+            const head = this.slots[tick % length];
+            // onExpire中重新挂入同一槽位的条目接在链表尾部，属于后面的圈，遍历到时会被跳过
+            let entry = head.wheelNext;
+            while (entry !== head) {
+                const next = entry.wheelNext;
+                if (entry.wheelTick <= targetTick) {
+                    unlink(entry);
+                    entry.wheelTick = undefined;
+                    this.size--;
+                    expired++;
+                    onExpire(entry);
+                }
+                entry = next;
+            }
+        }
+        this.currentTick = Math.max(this.currentTick, targetTick);
+        return expired;
+    }
+}
+
+function unlink(entry) {
+    entry.wheelPrev.wheelNext = entry.wheelNext;
+    entry.wheelNext.wheelPrev = entry.wheelPrev;
+    entry.wheelPrev = null;
+    entry.wheelNext = null;
+}
+
+class LivenessTracker {
+    constructor(options = {}) {
+        // 超过idleTimeout没有活动则发送ping帧探测，probeTimeout内仍无活动则断开
+        this.idleTimeout = options.idleTimeout || 30000;
+        this.probeTimeout = options.probeTimeout || 10000;
+        this.onDead = options.onDead || (() => {});
+        this.log = options.log;
+        this.wheel = new TimingWheel({ tickMs: options.tickMs || 1000, slots: options.slots, now: options.now });
+        this.stats = { expirations: 0, probes: 0, reaped: 0 };
+        this.now = 0;
+        this.expireEntry = client => this.expire(client, this.now);
+    }
+
+    // 开始跟踪一个连接，client需要有ws和lastSeen字段
+    track(client, now = Date.now()) {
+        client.livenessPhase = 'idle';
+        this.wheel.schedule(client, (client.lastSeen !== undefined ? client.lastSeen : now) + this.idleTimeout);
+    }
+
+    // 收到连接的任何消息或pong时调用，把截止时间推迟到now + idleTimeout；
+    // 探测期间收到活动则恢复正常。请求断开的连接只更新时间戳，仍在下一个刻度关闭
+    touch(client, now = Date.now()) {
+        client.lastSeen = now;
+        if (client.livenessPhase === undefined || client.disconnectRequested) {
+            return;
+        }
+        client.livenessPhase = 'idle';
+        this.wheel.schedule(client, now + this.idleTimeout);
+    }
+
+    untrack(client) {
+        this.wheel.cancel(client);
+        client.livenessPhase = undefined;
+    }
+
+    // 客户端请求断开时，下一个刻度就处理
+    expedite(client, now = Date.now()) {
+        if (client.livenessPhase !== undefined) {
+            this.wheel.schedule(client, now);
+        }
+    }
+
+    get size() {
+        return this.wheel.size;
+    }
+
+    tick(now = Date.now()) {
+        this.now = now;
+        return this.wheel.advance(now, this.expireEntry);
+    }
+
+    expire(client, now) {
+        this.stats.expirations++;
+        const ws = client.ws;
+
+        try {
+            // 请求断开的连接直接关闭
+            if (client.disconnectRequested) {
+                this.reap(client, 'disconnect_requested', () => ws.close());
+                return;
+            }
+
+            // 连接不是OPEN状态，直接清理
+            if (ws.readyState !== WS_OPEN) {
+                this.reap(client, 'not_open', null);
+                return;
+            }
+
+            // 探测期间有活动时touch已经把连接移回idle，到这里说明探测超时
+            if (client.livenessPhase === 'probe') {
+                this.reap(client, 'probe_timeout', () => ws.terminate());
+                return;
+            }
+
+            // 空闲超时，发送ping帧探测
+            client.livenessPhase = 'probe';
+            this.stats.probes++;
+            ws.ping();
+            this.wheel.schedule(client, now + this.probeTimeout);
+        } catch (e) {
+            this.reap(client, 'error', () => ws.terminate());
+        }
+    }
+
+    reap(client, reason, closeFn) {
+        this.stats.reaped++;
+        client.livenessPhase = undefined;
+        if (closeFn) {
+            try {
+                closeFn();
+            } catch (e) {
+                // 关闭失败时仍然清理映射
+            }
+        }
+        this.onDead(client, reason);
+    }
+}
+
+module.exports = { TimingWheel, LivenessTracker, WS_OPEN };
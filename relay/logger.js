@@ -0,0 +1,221 @@
+// relay/logger.js - 异步缓冲的结构化日志（分级、按类别采样、重复日志限流）
+const fs = require('fs');
+
+const LEVELS = { debug: 10, info: 20, warn: 30, error: 40, silent: 100 };
+
+// 解析形如 "message=0.01,ping=0" 的采样配置
+function parseSampling(spec) {
+    const rates = {};
+    if (!spec) {
+        return rates;
+    }
+    spec.split(',').forEach(pair => {
+        const [category, rate] = pair.split('=').map(s => s && s.trim());
+        const value = Number(rate);
+        if (category && Number.isFinite(value)) {
+            rates[category] = Math.min(1, Math.max(0, value));
+        }
+    });
+    return rates;
+}
+
+class Logger {
+    constructor(options = {}) {
+        this.level = LEVELS[options.level] || LEVELS.info;
+        // 每个类别的采样率，warn及以上级别不采样
+        this.sampling = Object.assign({}, options.sampling);
+        // 重复日志限流：同一类别+消息在窗口内最多输出repeatLimit次
+        this.repeatWindow = options.repeatWindow || 10000;
+        this.repeatLimit = options.repeatLimit || 5;
+        // 缓冲区上限，超过后丢弃并计数，保证日志不会拖垮主循环
+        this.maxBufferBytes = options.maxBufferBytes || 1024 * 1024;
+        this.flushInterval = options.flushInterval || 100;
+        this.stream = options.stream || process.stdout;
+
+        this.buffer = [];
+        this.bufferBytes = 0;
+        this.flushScheduled = false;
+        this.waitingDrain = false;
+        this.dropped = 0;
+        this.repeats = new Map();
+        this.random = options.random || Math.random;
+
+        this.flushTimer = setInterval(() => this.flush(), this.flushInterval);
+        this.flushTimer.unref();
+        this.repeatTimer = setInterval(() => this.sweepRepeats(), this.repeatWindow);
+        this.repeatTimer.unref();
+    }
+
+    enabled(level) {
+        return LEVELS[level] >= this.level;
+    }
+
+    debug(category, msg, fields) {
+        this.log('debug', category, msg, fields);
+    }
+
+    info(category, msg, fields) {
+        this.log('info', category, msg, fields);
+    }
+
+    warn(category, msg, fields) {
+        this.log('warn', category, msg, fields);
+    }
+
+    error(category, msg, fields) {
+        this.log('error', category, msg, fields);
+    }
+
+    log(level, category, msg, fields) {
+        if (!this.enabled(level)) {
+            return;
+        }
+
+        // 低级别日志按类别采样
+        if (LEVELS[level] < LEVELS.warn) {
+            const rate = this.sampling[category];
+            if (rate !== undefined && (rate === 0 || this.random() >= rate)) {
+                return;
+            }
+        }
+
+        // 重复日志限流，以类别+消息模板+设备为键（其余变量放在fields中）
+        const deviceId = fields && fields.deviceId !== undefined ? fields.deviceId : '';
+        const key = `${category}\u0000${msg}\u0000${deviceId}`;
+        const now = Date.now();
+        let entry = this.repeats.get(key);
+        if (!entry || now - entry.since > this.repeatWindow) {
+            if (entry && entry.suppressed > 0) {
+                this.emitSuppressed(category, msg, entry, deviceId);
+            }
+            entry = { since: now, count: 0, suppressed: 0, level };
+            this.repeats.set(key, entry);
+        }
+        entry.count++;
+        if (entry.count > this.repeatLimit) {
+            entry.suppressed++;
+            return;
+        }
+
+        this.write(level, category, msg, fields, now);
+    }
+
+    write(level, category, msg, fields, time) {
+        const record = { time: new Date(time).toISOString(), level, cat: category, msg };
+        if (fields) {
+            for (const name of Object.keys(fields)) {
+                const value = fields[name];
+                record[name] = value instanceof Error ? { message: value.message, stack: value.stack } : value;
+            }
+        }
+
+        let line;
+        try {
+            line = JSON.stringify(record) + '\n';
+        } catch (e) {
+            line = JSON.stringify({ time: record.time, level, cat: category, msg }) + '\n';
+        }
+
+        if (this.bufferBytes + line.length > this.maxBufferBytes) {
+            this.dropped++;
+            return;
+        }
+        this.buffer.push(line);
+        this.bufferBytes += line.length;
+
+        // 缓冲较多时尽快在本轮事件循环之后写出，否则等定时刷新
+        if (this.bufferBytes >= 64 * 1024 && !this.flushScheduled) {
+            this.flushScheduled = true;
+            setImmediate(() => this.flush());
+        }
+    }
+
+    emitSuppressed(category, msg, entry, deviceId) {
+        this.write(entry.level, category, '重复日志已省略', {
+            original: msg,
+            deviceId: deviceId || undefined,
+            suppressed: entry.suppressed,
+            windowMs: this.repeatWindow
+        }, Date.now());
+    }
+
+    // 输出窗口已结束的限流统计
+    sweepRepeats() {
+        const now = Date.now();
+        this.repeats.forEach((entry, key) => {
+            if (now - entry.since > this.repeatWindow) {
+                if (entry.suppressed > 0) {
+                    const [category, msg, deviceId] = key.split('\u0000');
+                    this.emitSuppressed(category, msg, entry, deviceId);
+                }
+                this.repeats.delete(key);
+            }
+        });
+    }
+
+    takeChunk() {
+        if (this.dropped > 0) {
+            const dropped = this.dropped;
+            this.dropped = 0;
+            this.buffer.push(JSON.stringify({
+                time: new Date().toISOString(), level: 'warn', cat: 'logger', msg: '日志缓冲已满，部分日志被丢弃', dropped
+            }) + '\n');
+        }
+        const chunk = this.buffer.join('');
+        this.buffer = [];
+        this.bufferBytes = 0;
+        return chunk;
+    }
+
+    // 一次性写出缓冲区，输出流阻塞时等待drain事件
+    flush() {
+        this.flushScheduled = false;
+        if (this.waitingDrain || (this.buffer.length === 0 && this.dropped === 0)) {
+            return;
+        }
+        const chunk = this.takeChunk();
+        if (!this.stream.write(chunk)) {
+            this.waitingDrain = true;
+            this.stream.once('drain', () => {
+                this.waitingDrain = false;
+                this.flush();
+            });
+        }
+    }
+
+    // 进程退出时同步写出剩余日志
+    flushSync() {
+        if (this.buffer.length === 0 && this.dropped === 0) {
+            return;
+        }
+        const chunk = this.takeChunk();
+        try {
+            if (typeof this.stream.fd === 'number') {
+                fs.writeSync(this.stream.fd, chunk);
+            } else {
+                this.stream.write(chunk);
+            }
+        } catch (e) {
+            // 退出阶段无法再做更多处理
+        }
+    }
+
+    close() {
+        clearInterval(this.flushTimer);
+        clearInterval(this.repeatTimer);
+        this.flushSync();
+    }
+}
+
+// 根据环境变量创建日志实例：LOG_LEVEL=debug|info|warn|error，LOG_SAMPLE=message=0.01,ping=0
+function createLogger(defaults = {}) {
+    const sampling = Object.assign({}, defaults.sampling, parseSampling(process.env.LOG_SAMPLE));
+    const logger = new Logger(Object.assign({}, defaults, {
+        level: process.env.LOG_LEVEL || defaults.level || 'info',
+        sampling
+    }));
+    process.on('exit', () => logger.flushSync());
+    return logger;
+}
+
+module.exports = { Logger, createLogger, parseSampling, LEVELS };
@@ -0,0 +1,105 @@
+// relay/logpull.js - 从设备拉取磁盘日志
+//
+// 服务器发送log_pull后，设备按时间范围读取日志，以log_chunk分块上报，最后发送log_end。
+// 每个拉取请求按requestId挂起，收到的块立即交给sink写入HTTP响应，不在服务器上缓存整份日志。
+// 两块之间超过idleTimeout没有数据、或设备断开时拉取失败。
+
+class LogPulls {
+    constructor(options = {}) {
+        this.idleTimeout = options.idleTimeout || 90000;
+        // 同时进行的拉取上限，日志拉取只用于排查问题，不需要很多
+        this.maxPulls = options.maxPulls || 50;
+        this.pulls = new Map();
+    }
+
+    get size() {
+        return this.pulls.size;
+    }
+
+    // 开始一次拉取，client是设备连接记录，只接受该连接上报的块
+    // sink: { chunk(data), end(summary), fail(reason) }
+    // 返回false表示同时进行的拉取已达上限
+    start(requestId, client, sink) {
+        if (this.pulls.size >= this.maxPulls) {
+            return false;
+        }
+        const entry = { client, sink, nextSeq: 0, bytes: 0, timer: null };
+        this.pulls.set(requestId, entry);
+        this.touch(requestId, entry);
+        return true;
+    }
+
+    // 设备上报一块日志，块必须按顺序到达
+    chunk(requestId, client, seq, data) {
+        const entry = this.pulls.get(requestId);
+        if (!entry || entry.client !== client) {
+            return false;
+        }
+        if (seq !== entry.nextSeq || typeof data !== 'string') {
+            this.finish(requestId, entry);
+            entry.sink.fail('chunk_out_of_order');
+            return false;
+        }
+        entry.nextSeq++;
+        entry.bytes += Buffer.byteLength(data);
+        this.touch(requestId, entry);
+        entry.sink.chunk(data);
+        return true;
+    }
+
+    // 设备上报拉取结束
+    end(requestId, client, summary) {
+        const entry = this.pulls.get(requestId);
+        if (!entry || entry.client !== client) {
+            return false;
+        }
+        this.finish(requestId, entry);
+        if (summary.error) {
+            entry.sink.fail(summary.error);
+        } else {
+            entry.sink.end({
+                chunks: entry.nextSeq,
+                bytes: entry.bytes,
+                truncated: !!summary.truncated
+            });
+        }
+        return true;
+    }
+
+    // HTTP请求方提前断开
+    cancel(requestId) {
+        const entry = this.pulls.get(requestId);
+        if (!entry) {
+            return false;
+        }
+        this.finish(requestId, entry);
+        return true;
+    }
+
+    // 设备连接断开，该连接上的拉取全部失败
+    failClient(client) {
+        this.pulls.forEach((entry, requestId) => {
+            if (entry.client === client) {
+                this.finish(requestId, entry);
+                entry.sink.fail('device_disconnected');
+            }
+        });
+    }
+
+    touch(requestId, entry) {
+        clearTimeout(entry.timer);
+        entry.timer = setTimeout(() => {
+            if (this.pulls.get(requestId) === entry) {
+                this.pulls.delete(requestId);
+                entry.sink.fail('timeout');
+            }
+        }, this.idleTimeout);
+    }
+
+    finish(requestId, entry) {
+        this.pulls.delete(requestId);
+        clearTimeout(entry.timer);
+    }
+}
+
+module.exports = { LogPulls };
@@ -0,0 +1,247 @@
+// relay/metrics.js - 设备指标聚合（固定大小的每设备环形缓冲 + 全局分位数）
+
+// 支持的指标序列：设备上报的字段名 -> Prometheus指标名
+const SERIES = {
+    heartbeatRtt: {
+        name: 'wsc_heartbeat_rtt_ms',
+        help: '设备心跳往返时间(毫秒)'
+    },
+    reconnectDuration: {
+        name: 'wsc_reconnect_duration_ms',
+        help: '设备断线到重新连接成功的耗时(毫秒)'
+    },
+    rotationLatency: {
+        name: 'wsc_rotation_latency_ms',
+        help: '从收到切换网络指令到重新连接成功的耗时(毫秒)'
+    },
+    eventDispatch: {
+        name: 'wsc_event_dispatch_us',
+        help: '设备进程内事件从发布到所有监听器处理完成的耗时(微秒)'
+    },
+    wakeDuration: {
+        name: 'wsc_wake_duration_ms',
+        help: '设备保活唤醒从持有唤醒锁到释放的时长(毫秒)'
+    }
+};
+
+const QUANTILES = [0.5, 0.95, 0.99];
+
+// 单个样本上限，防止异常值污染分位数（1小时）
+const MAX_SAMPLE_VALUE = 60 * 60 * 1000;
+
+// 固定容量的环形缓冲，写满后覆盖最旧的样本
+class SampleRing {
+    constructor(capacity) {
+        this.buffer = new Float64Array(capacity);
+        this.size = 0;
+        this.next = 0;
+    }
+
+    push(value) {
+        this.buffer[this.next] = value;
+        this.next = (this.next + 1) % this.buffer.length;
+        if (this.size < this.buffer.length) {
+            this.size++;
+        }
+    }
+
+    // 将当前样本复制到target的offset位置，返回复制的数量
+    copyInto(target, offset) {
+        if (this.size < this.buffer.length) {
+            target.set(this.buffer.subarray(0, this.size), offset);
+        } else {
+            target.set(this.buffer, offset);
+        }
+        return this.size;
+    }
+}
+
+class MetricsStore {
+    constructor(options = {}) {
+        this.ringSize = options.ringSize || 128;
+        // 超过该时间未上报的设备不再参与聚合
+        this.staleAfter = options.staleAfter || 60 * 60 * 1000;
+        // 渲染结果缓存时间，避免频繁抓取时重复排序
+        this.cacheTtl = options.cacheTtl || 5000;
+        this.devices = new Map();
+        this.snapshotsReceived = 0;
+        this.samplesRejected = 0;
+        this.cachedText = null;
+        this.cachedAt = 0;
+    }
+
+    // 接收设备上报的指标快照，返回接受的样本数
+    ingest(deviceId, snapshot) {
+        if (!snapshot || typeof snapshot.samples !== 'object' || snapshot.samples === null) {
+            return 0;
+        }
+
+        let entry = this.devices.get(deviceId);
+        if (!entry) {
+            entry = { rings: {}, carrier: 'unknown', rom: 'unknown', updatedAt: 0 };
+            for (const key of Object.keys(SERIES)) {
+                entry.rings[key] = new SampleRing(this.ringSize);
+            }
+            this.devices.set(deviceId, entry);
+        }
+
+        if (typeof snapshot.carrier === 'string' && snapshot.carrier) {
+            entry.carrier = snapshot.carrier.slice(0, 64);
+        }
+        if (typeof snapshot.rom === 'string' && snapshot.rom) {
+            entry.rom = snapshot.rom.slice(0, 64);
+        }
+        entry.updatedAt = Date.now();
+
+        let accepted = 0;
+        for (const key of Object.keys(SERIES)) {
+            const values = snapshot.samples[key];
+            if (!Array.isArray(values)) {
+                continue;
+            }
+            // 单次快照最多取ringSize个样本，多余的只会被覆盖
+            const start = Math.max(0, values.length - this.ringSize);
+            for (let i = start; i < values.length; i++) {
+                const value = Number(values[i]);
+                if (!Number.isFinite(value) || value < 0 || value > MAX_SAMPLE_VALUE) {
+                    this.samplesRejected++;
+                    continue;
+                }
+                entry.rings[key].push(value);
+                accepted++;
+            }
+        }
+
+        this.snapshotsReceived++;
+        this.cachedText = null;
+        return accepted;
+    }
+
+    // 清理长时间未上报的设备
+    pruneStale(now = Date.now()) {
+        this.devices.forEach((entry, id) => {
+            if (now - entry.updatedAt > this.staleAfter) {
+                this.devices.delete(id);
+            }
+        });
+    }
+
+    // 计算一组设备在某个序列上的分位数
+    summarize(key, entries) {
+        let total = 0;
+        for (const entry of entries) {
+            total += entry.rings[key].size;
+        }
+
+        const merged = new Float64Array(total);
+        let offset = 0;
+        for (const entry of entries) {
+            offset += entry.rings[key].copyInto(merged, offset);
+        }
+        merged.sort();
+
+        let sum = 0;
+        for (let i = 0; i < merged.length; i++) {
+            sum += merged[i];
+        }
+
+        const quantiles = QUANTILES.map(q => {
+            if (merged.length === 0) {
+                return [q, NaN];
+            }
+            // 最近秩法
+            const rank = Math.max(1, Math.ceil(q * merged.length));
+            return [q, merged[rank - 1]];
+        });
+
+        return { quantiles, sum, count: merged.length };
+    }
+
+    // 按标签（carrier/rom）对设备分组
+    groupBy(label) {
+        const groups = new Map();
+        this.devices.forEach(entry => {
+            const value = entry[label];
+            if (!groups.has(value)) {
+                groups.set(value, []);
+            }
+            groups.get(value).push(entry);
+        });
+        return groups;
+    }
+
+    // 以Prometheus文本格式输出
+    render(connectedDevices) {
+        const now = Date.now();
+        if (this.cachedText && now - this.cachedAt < this.cacheTtl) {
+            return this.cachedText + renderGauges(connectedDevices, this);
+        }
+
+        this.pruneStale(now);
+
+        const all = Array.from(this.devices.values());
+        const byCarrier = this.groupBy('carrier');
+        const byRom = this.groupBy('rom');
+        const lines = [];
+
+        for (const key of Object.keys(SERIES)) {
+            const { name, help } = SERIES[key];
+            lines.push(`# HELP ${name} ${help}`);
+            lines.push(`# TYPE ${name} summary`);
+            writeSummary(lines, name, '', this.summarize(key, all));
+
+            byCarrier.forEach((entries, carrier) => {
+                writeSummary(lines, name, `carrier="${escapeLabel(carrier)}"`, this.summarize(key, entries));
+            });
+            byRom.forEach((entries, rom) => {
+                writeSummary(lines, name, `rom="${escapeLabel(rom)}"`, this.summarize(key, entries));
+            });
+        }
+
+        this.cachedText = lines.join('\n') + '\n';
+        this.cachedAt = now;
+        return this.cachedText + renderGauges(connectedDevices, this);
+    }
+}
+
+function writeSummary(lines, name, labels, summary) {
+    const prefix = labels ? `${labels},` : '';
+    for (const [q, value] of summary.quantiles) {
+        lines.push(`${name}{${prefix}quantile="${q}"} ${formatValue(value)}`);
+    }
+    const suffix = labels ? `{${labels}}` : '';
+    lines.push(`${name}_sum${suffix} ${formatValue(summary.sum)}`);
+    lines.push(`${name}_count${suffix} ${summary.count}`);
+}
+
+// 计数类指标不缓存，每次抓取都是最新值
+function renderGauges(connectedDevices, store) {
+    return [
+        '# HELP wsc_connected_devices 当前连接的设备数',
+        '# TYPE wsc_connected_devices gauge',
+        `wsc_connected_devices ${connectedDevices}`,
+        '# HELP wsc_reporting_devices 最近上报过指标的设备数',
+        '# TYPE wsc_reporting_devices gauge',
+        `wsc_reporting_devices ${store.devices.size}`,
+        '# HELP wsc_metrics_snapshots_total 收到的指标快照总数',
+        '# TYPE wsc_metrics_snapshots_total counter',
+        `wsc_metrics_snapshots_total ${store.snapshotsReceived}`,
+        '# HELP wsc_metrics_samples_rejected_total 被拒绝的无效样本总数',
+        '# TYPE wsc_metrics_samples_rejected_total counter',
+        `wsc_metrics_samples_rejected_total ${store.samplesRejected}`,
+        ''
+    ].join('\n');
+}
+
+function formatValue(value) {
+    if (Number.isNaN(value)) {
+        return 'NaN';
+    }
+    return String(Math.round(value * 1000) / 1000);
+}
+
+function escapeLabel(value) {
+    return String(value).replace(/\\/g, '\\\\').replace(/"/g, '\\"').replace(/\n/g, '\\n');
+}
+
+module.exports = { MetricsStore, SERIES };
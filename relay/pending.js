@@ -0,0 +1,70 @@
+// relay/pending.js - 按messageId挂起HTTP请求，等待设备上报执行结果
+
+class PendingResults {
+    constructor(options = {}) {
+        this.defaultTimeout = options.defaultTimeout || 60000;
+        this.maxTimeout = options.maxTimeout || 120000;
+        // 同时挂起的请求上限，防止控制端异常时无限占用内存
+        this.maxPending = options.maxPending || 10000;
+        this.pending = new Map();
+    }
+
+    get size() {
+        return this.pending.size;
+    }
+
+    // 限制调用方传入的超时时间
+    clampTimeout(value) {
+        const timeout = Number(value);
+        if (!Number.isFinite(timeout) || timeout <= 0) {
+            return this.defaultTimeout;
+        }
+        return Math.min(timeout, this.maxTimeout);
+    }
+
+    // 挂起一个请求，设备上报结果或超时后调用callback(error, result)
+    // 返回false表示挂起数量已达上限，或同一messageId已在等待（不覆盖，否则前一个请求永远得不到回调）
+    add(messageId, deviceId, timeoutMs, callback) {
+        if (this.pending.size >= this.maxPending || this.pending.has(messageId)) {
+            return false;
+        }
+        const entry = {
+            deviceId,
+            callback,
+            createdAt: Date.now(),
+            timer: setTimeout(() => {
+                if (this.pending.get(messageId) === entry) {
+                    this.pending.delete(messageId);
+                    callback(new Error('timeout'), null, Date.now() - entry.createdAt);
+                }
+            }, timeoutMs)
+        };
+        this.pending.set(messageId, entry);
+        return true;
+    }
+
+    // 设备上报结果，只接受目标设备本身上报的结果
+    resolve(messageId, deviceId, result) {
+        const entry = this.pending.get(messageId);
+        if (!entry || entry.deviceId !== deviceId) {
+            return false;
+        }
+        this.pending.delete(messageId);
+        clearTimeout(entry.timer);
+        entry.callback(null, result, Date.now() - entry.createdAt);
+        return true;
+    }
+
+    // 控制端断开或发送失败时取消
+    cancel(messageId) {
+        const entry = this.pending.get(messageId);
+        if (!entry) {
+            return false;
+        }
+        this.pending.delete(messageId);
+        clearTimeout(entry.timer);
+        return true;
+    }
+}
+
+module.exports = { PendingResults };
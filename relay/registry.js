@@ -0,0 +1,103 @@
+// relay/registry.js - 按租户分片的设备连接表
+//
+// 接口与Map一致（get/set/has/delete/size/forEach/迭代），server.js可以直接替换原来的Map。
+// 每个租户一个分片：按编号查找、替换重复编号都只访问一个分片的Map，
+// 按租户列出设备只遍历该租户的分片，不再扫描全部连接。
+
+const { tenantOf } = require('./deviceId');
+
+class DeviceRegistry {
+    constructor() {
+        this.shards = new Map(); // 租户 -> Map<设备编号, 连接记录>
+        this.count = 0;
+    }
+
+    get size() {
+        return this.count;
+    }
+
+    get(id) {
+        const shard = this.shards.get(tenantOf(id));
+        return shard ? shard.get(id) : undefined;
+    }
+
+    has(id) {
+        const shard = this.shards.get(tenantOf(id));
+        return shard ? shard.has(id) : false;
+    }
+
+    set(id, client) {
+        const tenant = tenantOf(id);
+        let shard = this.shards.get(tenant);
+        if (!shard) {
+            shard = new Map();
+            this.shards.set(tenant, shard);
+        }
+        if (!shard.has(id)) {
+            this.count++;
+        }
+        shard.set(id, client);
+        return this;
+    }
+
+    delete(id) {
+        const tenant = tenantOf(id);
+        const shard = this.shards.get(tenant);
+        if (!shard || !shard.delete(id)) {
+            return false;
+        }
+        this.count--;
+        if (shard.size === 0) {
+            this.shards.delete(tenant);
+        }
+        return true;
+    }
+
+    forEach(callback) {
+        this.shards.forEach(shard => shard.forEach((client, id) => callback(client, id, this)));
+    }
+
+    *entries() {
+        for (const shard of this.shards.values()) {
+            yield* shard.entries();
+        }
+    }
+
+    *keys() {
+        for (const shard of this.shards.values()) {
+            yield* shard.keys();
+        }
+    }
+
+    *values() {
+        for (const shard of this.shards.values()) {
+            yield* shard.values();
+        }
+    }
+
+    [Symbol.iterator]() {
+        return this.entries();
+    }
+
+    // 只遍历一个租户的设备
+    forEachInTenant(tenant, callback) {
+        const shard = this.shards.get(tenant);
+        if (shard) {
+            shard.forEach((client, id) => callback(client, id, this));
+        }
+    }
+
+    tenantSize(tenant) {
+        const shard = this.shards.get(tenant);
+        return shard ? shard.size : 0;
+    }
+
+    // 各租户的在线设备数
+    tenants() {
+        const result = [];
+        this.shards.forEach((shard, tenant) => result.push({ tenant, count: shard.size }));
+        return result;
+    }
+}
+
+module.exports = { DeviceRegistry };
@@ -0,0 +1,70 @@
+// relay/rotation.js - 设备定时切换网络的统计，按设备编号保存
+//
+// 每次切换都会断网重连，统计如果挂在连接记录上会随新连接清零，重连后补报的结果也会记到
+// 当前连接上，所以和指标环形缓冲一样按设备编号保存，长时间没有上报的设备定期清理。
+
+class RotationStats {
+    constructor(options = {}) {
+        // 超过该时间没有确认、上报或注册的设备被清理
+        this.staleAfter = options.staleAfter || 24 * 60 * 60 * 1000;
+        this.devices = new Map();
+    }
+
+    entry(deviceId) {
+        let entry = this.devices.get(deviceId);
+        if (!entry) {
+            entry = { version: 0, count: 0, failures: 0, last: null, updatedAt: 0 };
+            this.devices.set(deviceId, entry);
+        }
+        entry.updatedAt = Date.now();
+        return entry;
+    }
+
+    // 设备注册或确认策略时上报当前生效的策略版本
+    setVersion(deviceId, version) {
+        if (typeof version === 'number' && version >= 0) {
+            this.entry(deviceId).version = version;
+        }
+    }
+
+    // 记录一次切换结果；补报的结果可能来自旧策略，版本只取见到的最高值
+    record(deviceId, result) {
+        const entry = this.entry(deviceId);
+        if (typeof result.policyVersion === 'number' && result.policyVersion > entry.version) {
+            entry.version = result.policyVersion;
+        }
+        entry.count++;
+        if (!result.success) {
+            entry.failures++;
+        }
+        if (!entry.last || result.startedAt >= entry.last.startedAt) {
+            entry.last = {
+                seq: result.seq,
+                success: result.success,
+                error: result.error,
+                scheduledAt: result.scheduledAt,
+                startedAt: result.startedAt,
+                timings: result.timings
+            };
+        }
+    }
+
+    // /status返回的统计，设备没有记录时返回全零
+    get(deviceId) {
+        const entry = this.devices.get(deviceId);
+        if (!entry) {
+            return { version: 0, count: 0, failures: 0, last: null };
+        }
+        return { version: entry.version, count: entry.count, failures: entry.failures, last: entry.last };
+    }
+
+    pruneStale(now = Date.now()) {
+        this.devices.forEach((entry, id) => {
+            if (now - entry.updatedAt > this.staleAfter) {
+                this.devices.delete(id);
+            }
+        });
+    }
+}
+
+module.exports = { RotationStats };
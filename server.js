@@ -2,12 +2,154 @@
 const WebSocket = require('ws');
 const express = require('express');
 const http = require('http');
+const https = require('https');
+const fs = require('fs');
+const crypto = require('crypto');
+const { MetricsStore } = require('./relay/metrics');
+const { RotationStats } = require('./relay/rotation');
+const { createLogger } = require('./relay/logger');
+const { LivenessTracker } = require('./relay/liveness');
+const { PendingResults } = require('./relay/pending');
+const { LogPulls } = require('./relay/logpull');
+const { GroupIndex, fanOut, sanitizeGroups } = require('./relay/groups');
+const { Backpressure } = require('./relay/backpressure');
+const { DeviceRegistry } = require('./relay/registry');
+const { INVALID_MESSAGE, isValidDeviceId } = require('./relay/deviceId');
+const { createClusterFromEnv } = require('./relay/cluster');
 const app = express();
-const server = http.createServer(app);
+
+// 配置TLS_CERT和TLS_KEY（PEM文件路径）时使用HTTPS/WSS
+// 会话票据默认开启，设备重连时可以恢复TLS会话；多实例部署时配置相同的TLS_TICKET_KEYS（96位十六进制），
+// 设备换到另一个实例也能恢复会话
+function createServer() {
+    if (!process.env.TLS_CERT || !process.env.TLS_KEY) {
+        return http.createServer(app);
+    }
+    const options = {
+        cert: fs.readFileSync(process.env.TLS_CERT),
+        key: fs.readFileSync(process.env.TLS_KEY),
+        minVersion: 'TLSv1.2',
+        sessionTimeout: 24 * 60 * 60
+    };
+    if (process.env.TLS_TICKET_KEYS) {
+        options.ticketKeys = Buffer.from(process.env.TLS_TICKET_KEYS, 'hex');
+    }
+    return https.createServer(options, app);
+}
+const server = createServer();
+// 设备会提前建立连接留在连接池中（最多60秒），服务器的空闲超时要比它长
+server.keepAliveTimeout = 65000;
+server.headersTimeout = 66000;
 const wss = new WebSocket.Server({ server });
 
-// 存储客户端连接，使用设备编号作为键
-const clients = new Map();
+// 结构化日志：逐条消息日志默认按1%采样，ping默认不记录
+const log = createLogger({
+    sampling: { message: 0.01, ping: 0 }
+});
+
+// 存储客户端连接，使用设备编号作为键，按租户分片
+const clients = new DeviceRegistry();
+
+// 连接存活检测：30秒无活动发送ping帧，再过10秒仍无活动则断开
+const liveness = new LivenessTracker({
+    idleTimeout: 30000,
+    probeTimeout: 10000,
+    tickMs: 1000,
+    onDead: (client, reason) => {
+        log.info('sweep', '清理失活连接', { deviceId: client.id, reason });
+        removeClient(client.id, client);
+    }
+});
+
+// 设备分组索引，设备在register消息中上报所属分组
+const groupIndex = new GroupIndex();
+
+// 发送缓冲背压：超过256KB进入拥塞状态，降到64KB以下恢复
+const backpressure = new Backpressure({
+    highWatermark: 256 * 1024,
+    lowWatermark: 64 * 1024,
+    onChange: (client, saturated) => {
+        log.warn('backpressure', saturated ? '设备发送缓冲超过高水位' : '设备发送缓冲已恢复', {
+            deviceId: client.id,
+            bufferedAmount: client.ws.bufferedAmount
+        });
+    }
+});
+
+// 从映射中移除连接，只有当映射仍指向该连接时才删除，避免误删替换后的新连接
+function removeClient(id, client) {
+    liveness.untrack(client);
+    backpressure.forget(client);
+    logPulls.failClient(client);
+    if (clients.get(id) === client) {
+        clients.delete(id);
+        groupIndex.removeDevice(id);
+        releaseDevice(id, client);
+    }
+}
+
+// 通知旧连接已被相同编号的新连接替换并关闭它
+function replaceConnection(id, client) {
+    if (client.ws.readyState !== WebSocket.OPEN) {
+        return;
+    }
+    try {
+        client.ws.send(JSON.stringify({
+            type: 'system',
+            action: 'connection_replaced',
+            message: '您的连接已被相同编号的新设备替换'
+        }));
+        client.ws.close();
+    } catch (e) {
+        log.error('register', '通知旧设备时出错', { deviceId: id, error: e });
+    }
+}
+
+// 集群模式：在目录中登记设备连到了本实例
+function claimDevice(id, client) {
+    if (!cluster) {
+        return;
+    }
+    cluster.claim(id).then(epoch => {
+        if (clients.get(id) !== client) {
+            // 登记完成前连接已经断开或改了编号
+            cluster.release(id, epoch).catch(() => {});
+            return;
+        }
+        client.clusterEpoch = epoch;
+        // 登记完成前其他实例已经要求替换这个连接
+        if (client.evictEpoch !== undefined && epoch <= client.evictEpoch) {
+            replaceConnection(id, client);
+        }
+    }).catch(error => {
+        log.error('cluster', '登记设备位置失败', { deviceId: id, error });
+    });
+}
+
+// 集群模式：连接断开或改编号时删除登记，登记已被其他实例覆盖时目录会忽略
+function releaseDevice(id, client) {
+    if (!cluster || client.clusterEpoch === undefined) {
+        return;
+    }
+    const epoch = client.clusterEpoch;
+    client.clusterEpoch = undefined;
+    cluster.release(id, epoch).catch(error => {
+        log.warn('cluster', '删除设备位置登记失败', { deviceId: id, error });
+    });
+}
+
+// wait模式下挂起的/send请求，按messageId等待设备上报执行结果
+const pending = new PendingResults({ defaultTimeout: 60000, maxTimeout: 120000 });
+
+// 进行中的设备日志拉取，两块之间超过90秒没有数据视为失败。
+// 设备在发送队列拥塞时最多等待60秒（LOG_PULL_TIMEOUT）再截断，这里必须比它长，否则设备还在等待时拉取就已失败
+const logPulls = new LogPulls({ idleTimeout: 90000 });
+
+// 设备上报的性能指标（每设备固定大小环形缓冲）
+const metrics = new MetricsStore({ ringSize: 128 });
+
+// 设备定时切换网络的统计，按设备编号保存，不随切换后的重连清零
+const rotationStats = new RotationStats();
 
 // 启用JSON请求体解析
 app.use(express.json());
@@ -24,113 +166,198 @@ app.use((req, res, next) => {
   }
 });
 
+// 集群模式，未配置CLUSTER_NODE_URL时为单实例
+const cluster = createClusterFromEnv(process.env, app, log, process.env.PORT || 9000);
+if (cluster) {
+    cluster.start();
+    log.info('cluster', '集群模式已启用', { nodeId: cluster.nodeId, url: cluster.url });
+}
+
+// 通知设备编号格式无效，连接时和register消息中使用同一个错误
+function rejectDeviceId(ws) {
+    try {
+        ws.send(JSON.stringify({
+            type: 'system',
+            action: 'register_failed',
+            message: INVALID_MESSAGE
+        }));
+    } catch (e) {
+        log.warn('register', '发送编号无效通知失败', { error: e });
+    }
+}
+
 // WebSocket连接处理
 wss.on('connection', (ws, req) => {
     // 获取初始连接ID（后续可能会更新）
     const initialId = req.url.split('/').pop();
     let deviceId = initialId;
     
-    console.log(`设备初始连接, ID: ${deviceId}`);
-    clients.set(deviceId, { ws, lastSeen: Date.now() });
+    log.info('conn', '设备初始连接', { deviceId });
+    
+    // 编号无效时不登记连接，也不写入集群目录
+    if (!isValidDeviceId(deviceId)) {
+        log.warn('conn', '设备使用无效的编号连接', { deviceId });
+        rejectDeviceId(ws);
+        ws.close(1008);
+        return;
+    }
+    const self = { id: deviceId, ws, lastSeen: Date.now() };
+    clients.set(deviceId, self);
+    liveness.track(self);
+    claimDevice(deviceId, self);
     
     // 添加连接计数日志
-    console.log(`新连接建立，当前连接数: ${clients.size}`);
+    log.debug('conn', '新连接建立', { connections: clients.size });
     
     // 处理连接关闭
     ws.on('close', (code, reason) => {
-        console.log(`设备 ${deviceId} 连接关闭，代码: ${code}, 原因: ${reason || '未提供'}`);
-        clients.delete(deviceId);
-        console.log(`连接关闭后，当前连接数: ${clients.size}`);
+        log.info('conn', '设备连接关闭', { deviceId, code, reason: String(reason || '未提供') });
+        removeClient(deviceId, self);
+        log.debug('conn', '连接关闭后连接数', { connections: clients.size });
     });
     
     // 添加连接错误事件处理
     ws.on('error', (error) => {
-        console.error(`设备 ${deviceId} 连接错误:`, error);
+        log.error('conn', '设备连接错误', { deviceId, error });
     });
     
     // 处理来自B手机的消息
     ws.on('message', (message) => {
         try {
             const data = JSON.parse(message);
-            console.log(`收到来自 ${deviceId} 的消息:`, data);
+            log.info('message', '收到设备消息', { deviceId, type: data.type });
+            
+            // 任何消息都算作活动，把连接在时间轮上的截止时间往后推
+            liveness.touch(self);
             
             // 处理ping消息，立即回复pong
             if (data.type === 'ping') {
-                // 更新最后活动时间
-                if (clients.has(deviceId)) {
-                    clients.get(deviceId).lastSeen = Date.now();
-                    
-                    // 如果是连接检查ping，记录信息
-                    if (data.checkConnection) {
-                        console.log(`设备 ${deviceId} 发送了连接检查ping`);
-                    }
+                // 如果是连接检查ping，记录信息
+                if (data.checkConnection) {
+                    log.debug('ping', '设备发送了连接检查ping', { deviceId });
                 }
                 
                 try {
-                    // 立即回复pong
-                    ws.send(JSON.stringify({
+                    // 立即回复pong，发送缓冲拥塞时只保留最新的一条
+                    backpressure.send(self, JSON.stringify({
                         type: 'pong',
                         timestamp: Date.now(),
                         echo: data.timestamp // 回显客户端发送的时间戳
-                    }));
+                    }), 'merge');
                 } catch (e) {
-                    console.error(`回复pong消息失败:`, e);
+                    log.error('ping', '回复pong消息失败', { deviceId, error: e });
                     
                     // 如果发送失败，可能连接已断开
-                    if (clients.has(deviceId)) {
-                        clients.delete(deviceId);
-                    }
+                    removeClient(deviceId, self);
                 }
                 return; // 不需要进一步处理ping消息
             }
             
+            // 处理设备上报的指令执行结果
+            if (data.type === 'result') {
+                const matched = pending.resolve(data.messageId, deviceId, data);
+                log.info('result', '设备上报执行结果', { deviceId, messageId: data.messageId, success: data.success, matched });
+                if (!matched && cluster) {
+                    // 设备切换网络后重连到了本实例，等待结果的请求挂在原来的实例上
+                    cluster.forwardResult(data.messageId, deviceId, data).then(forwarded => {
+                        log.info('cluster', '转交执行结果', { deviceId, messageId: data.messageId, forwarded });
+                    }).catch(error => {
+                        log.warn('cluster', '转交执行结果失败', { deviceId, messageId: data.messageId, error });
+                    });
+                }
+                return;
+            }
+            
+            // 处理设备上报的磁盘日志块
+            if (data.type === 'log_chunk') {
+                logPulls.chunk(data.requestId, self, data.seq, data.data);
+                return;
+            }
+            if (data.type === 'log_end') {
+                const matched = logPulls.end(data.requestId, self, data);
+                log.info('logs', '设备日志上传结束', { deviceId, requestId: data.requestId, chunks: data.chunks, bytes: data.bytes, matched });
+                return;
+            }
+            
+            // 处理设备上报的指标快照
+            if (data.type === 'metrics') {
+                const accepted = metrics.ingest(deviceId, data);
+                log.debug('metrics', '设备上报指标样本', { deviceId, accepted });
+                return;
+            }
+            
+            // 处理设备对下发运行参数的确认
+            if (data.type === 'tuning_ack') {
+                if (data.applied === true) {
+                    self.tuningVersion = data.version;
+                }
+                log.info('tuning', '设备确认运行参数', { deviceId, version: data.version, applied: data.applied, error: data.error });
+                return;
+            }
+            
+            // 处理设备对定时切换策略的确认
+            if (data.type === 'rotation_ack') {
+                if (data.applied === true) {
+                    rotationStats.setVersion(deviceId, data.version);
+                }
+                log.info('rotation', '设备确认定时切换策略', { deviceId, version: data.version, applied: data.applied, error: data.error });
+                return;
+            }
+            
+            // 处理设备按策略自行切换网络的结果，断线期间的结果在重连后补报
+            if (data.type === 'rotation_result') {
+                rotationStats.record(deviceId, data);
+                log.info('rotation', '设备上报定时切换结果', { deviceId, seq: data.seq, success: data.success, error: data.error, timings: data.timings });
+                return;
+            }
+            
             // 处理状态更新
             if (data.type === 'status') {
                 if (clients.has(deviceId)) {
                     clients.get(deviceId).status = data.status;
-                    console.log(`设备 ${deviceId} 状态更新为: ${data.status}`);
+                    log.info('status', '设备状态更新', { deviceId, status: data.status });
                 }
             }
             
             // 处理设备编号注册/更新
             if (data.type === 'register') {
                 const newDeviceId = data.deviceNumber;
+                // 设备当前使用的运行参数版本，旧版本APP不上报
+                if (typeof data.tuningVersion === 'number') {
+                    self.tuningVersion = data.tuningVersion;
+                }
                 
                 // 验证设备编号格式
-                if (!newDeviceId.match(/^\d{3}$/)) {
-                    console.error(`设备 ${deviceId} 尝试注册无效的编号: ${newDeviceId}`);
+                if (!isValidDeviceId(newDeviceId)) {
+                    log.warn('register', '设备尝试注册无效的编号', { deviceId, newDeviceId });
+                    rejectDeviceId(ws);
                     return;
                 }
                 
                 // 更新设备编号映射
                 if (deviceId !== newDeviceId) {
-                    console.log(`设备编号从 ${deviceId} 更新为 ${newDeviceId}`);
+                    log.info('register', '设备编号更新', { from: deviceId, to: newDeviceId });
                     
                     // 检查新编号是否已被使用
                     if (clients.has(newDeviceId)) {
-                        console.warn(`编号 ${newDeviceId} 已被使用，将替换现有连接`);
+                        log.warn('register', '编号已被使用，将替换现有连接', { deviceId: newDeviceId });
                         
                         // 通知旧设备连接被替换（如果还连接着）
-                        const oldClient = clients.get(newDeviceId);
-                        if (oldClient.ws.readyState === WebSocket.OPEN) {
-                            try {
-                                oldClient.ws.send(JSON.stringify({
-                                    type: 'system',
-                                    action: 'connection_replaced',
-                                    message: '您的连接已被相同编号的新设备替换'
-                                }));
-                                oldClient.ws.close();
-                            } catch (e) {
-                                console.error('通知旧设备时出错:', e);
-                            }
-                        }
+                        replaceConnection(newDeviceId, clients.get(newDeviceId));
                     }
                     
                     // 移除旧映射，创建新映射
-                    const clientData = clients.get(deviceId);
-                    clients.delete(deviceId);
-                    clients.set(newDeviceId, clientData);
+                    if (clients.get(deviceId) === self) {
+                        clients.delete(deviceId);
+                        releaseDevice(deviceId, self);
+                    }
+                    clients.set(newDeviceId, self);
+                    groupIndex.renameDevice(deviceId, newDeviceId);
                     deviceId = newDeviceId;
+                    self.id = newDeviceId;
+                    
+                    // 集群模式下新编号在其他实例上的旧连接由那个实例替换
+                    claimDevice(deviceId, self);
                     
                     // 确认注册成功
                     ws.send(JSON.stringify({
@@ -139,19 +366,26 @@ wss.on('connection', (ws, req) => {
                         deviceNumber: deviceId
                     }));
                 }
+                
+                // 更新设备所属分组
+                if (data.groups !== undefined && clients.get(deviceId) === self) {
+                    groupIndex.setGroups(deviceId, sanitizeGroups(data.groups));
+                }
+                
+                // 设备当前生效的定时切换策略版本，旧版本APP不上报
+                rotationStats.setVersion(deviceId, data.rotationVersion);
             }
             
             // 处理客户端主动断开连接
             if (data.type === 'disconnect') {
-                console.log(`设备 ${deviceId} 请求断开连接`);
-                // 不立即删除，等待连接真正关闭
-                if (clients.has(deviceId)) {
-                    clients.get(deviceId).disconnectRequested = true;
-                }
+                log.info('conn', '设备请求断开连接', { deviceId });
+                // 不立即删除，等待连接真正关闭，下一个刻度由存活检测处理
+                self.disconnectRequested = true;
+                liveness.expedite(self);
                 return;
             }
         } catch (e) {
-            console.error('解析消息错误:', e);
+            log.warn('message', '解析消息错误', { deviceId, error: e });
         }
     });
     
@@ -159,67 +393,259 @@ wss.on('connection', (ws, req) => {
     ws.isAlive = true;
     ws.on('pong', () => {
         ws.isAlive = true;
-        if (clients.has(deviceId)) {
-            clients.get(deviceId).lastSeen = Date.now();
-        }
+        liveness.touch(self);
     });
 });
 
-// 简化连接清理机制，保留核心功能
-const connectionCheckInterval = setInterval(() => {
-    const now = Date.now();
-    const timeout = 30 * 1000; // 30秒超时
+// 单个定时器推进时间轮，每个刻度只处理到期的连接
+const livenessInterval = setInterval(() => {
+    liveness.tick(Date.now());
+}, 1000);
+
+// 每小时清理长时间没有消息的设备的切换统计
+const rotationPruneInterval = setInterval(() => {
+    rotationStats.pruneStale();
+}, 60 * 60 * 1000);
+
+// 清理interval当服务器关闭
+wss.on('close', () => {
+    clearInterval(livenessInterval);
+    clearInterval(rotationPruneInterval);
+});
+
+// 判断请求是否要求等待设备执行结果
+function isWaitRequested(value) {
+    return value === true || value === 1 || value === '1' || value === 'true';
+}
+
+// 向设备投递消息；wait模式下挂起请求，直到设备上报执行结果或超时
+// 集群模式下设备不在本实例时转发给持有连接的实例，allowForward为false时只投递本地连接
+function deliverToDevice(res, targetDevice, message, waitParam, timeoutParam, allowForward = true) {
+    // 验证设备编号格式
+    if (!isValidDeviceId(targetDevice)) {
+        return res.status(400).json({
+            success: false,
+            error: INVALID_MESSAGE
+        });
+    }
     
-    // 简单记录当前连接数
-    console.log(`当前连接数: ${clients.size}`);
+    // 检查设备是否连接
+    if (!clients.has(targetDevice)) {
+        if (cluster && allowForward) {
+            return forwardToOwner(res, targetDevice, message, waitParam, timeoutParam);
+        }
+        return res.status(404).json({
+            success: false,
+            error: '目标设备未连接'
+        });
+    }
+    
+    const wait = isWaitRequested(waitParam);
+    // 同一毫秒内的多个请求也不会重复，否则wait模式下后一个请求会顶掉前一个的等待；
+    // 集群模式下带上本实例ID，设备重连到其他实例后结果仍能转交回来
+    const messageId = cluster ? cluster.tagMessageId(`msg_${crypto.randomUUID()}`) : `msg_${crypto.randomUUID()}`;
     
-    clients.forEach((client, id) => {
-        // 检查连接状态
-        const connectionState = client.ws.readyState;
-        const timeSinceLastSeen = now - client.lastSeen;
+    try {
+        // 向B发送消息
+        const client = clients.get(targetDevice);
+        if (client.ws.readyState !== WebSocket.OPEN) {
+            // 清理无效连接
+            removeClient(targetDevice, client);
+            return res.status(410).json({
+                success: false,
+                error: '目标设备连接已关闭'
+            });
+        }
+        
+        // 设备发送缓冲已满时拒绝新指令，由控制端稍后重试
+        if (backpressure.isSaturated(client)) {
+            res.set('Retry-After', '1');
+            return res.status(429).json({
+                success: false,
+                error: '设备发送队列已满，请稍后重试',
+                bufferedAmount: client.ws.bufferedAmount
+            });
+        }
         
-        // 如果客户端请求断开连接，或者超过30秒没有活动，检查连接
-        if (client.disconnectRequested || timeSinceLastSeen > timeout) {
-            console.log(`设备 ${id} 需要检查连接: ${client.disconnectRequested ? '请求断开' : '超时'}`);
+        // 添加目标设备ID和消息ID，wait模式要求设备上报执行结果
+        const messageToSend = {
+            ...message,
+            targetDevice,
+            messageId
+        };
+        if (wait) {
+            messageToSend.expectResult = true;
             
-            try {
-                if (connectionState === WebSocket.OPEN) {
-                    // 如果是请求断开或超时严重，直接关闭
-                    if (client.disconnectRequested || timeSinceLastSeen > timeout + 15000) {
-                        console.log(`关闭设备 ${id} 的连接`);
-                        client.ws.close();
-                        clients.delete(id);
-                    } else {
-                        // 否则发送ping帧检测连接
-                        client.ws.ping();
-                        
-                        // 设置10秒后检查
-                        setTimeout(() => {
-                            if (clients.has(id)) {
-                                const newTimeSinceLastSeen = Date.now() - clients.get(id).lastSeen;
-                                if (newTimeSinceLastSeen > timeSinceLastSeen) {
-                                    console.log(`设备 ${id} 未响应ping，清理连接`);
-                                    clients.delete(id);
-                                }
-                            }
-                        }, 10000);
-                    }
-                } else {
-                    // 如果连接不是OPEN状态，直接清理
-                    console.log(`设备 ${id} 连接状态异常(${connectionState})，清理连接`);
-                    clients.delete(id);
+            const timeoutMs = pending.clampTimeout(timeoutParam);
+            const added = pending.add(messageId, targetDevice, timeoutMs, (error, result, waitedMs) => {
+                if (res.headersSent) {
+                    return;
+                }
+                if (error) {
+                    return res.status(504).json({
+                        success: false,
+                        error: '等待设备执行结果超时',
+                        messageId,
+                        timings: { relayWaitMs: waitedMs }
+                    });
+                }
+                res.json({
+                    success: result.success !== false,
+                    message: result.success !== false ? '设备已执行' : '设备执行失败',
+                    messageId,
+                    result: result.result !== undefined ? result.result : null,
+                    error: result.error,
+                    timings: Object.assign({}, result.timings, { relayWaitMs: waitedMs }),
+                    deviceStatus: client.status || 'unknown'
+                });
+            });
+            if (!added) {
+                return res.status(503).json({
+                    success: false,
+                    error: '等待中的请求过多，请稍后重试'
+                });
+            }
+            
+            // 控制端提前断开时不再等待
+            res.on('close', () => {
+                if (!res.writableFinished) {
+                    pending.cancel(messageId);
                 }
-            } catch (e) {
-                console.error(`检测设备 ${id} 连接时出错:`, e);
-                clients.delete(id);
+            });
+        }
+        
+        backpressure.send(client, JSON.stringify(messageToSend));
+        
+        if (!wait) {
+            res.json({
+                success: true,
+                message: '消息已发送',
+                messageId,
+                deviceStatus: client.status || 'unknown'
+            });
+        }
+    } catch (error) {
+        pending.cancel(messageId);
+        log.error('http', '发送消息错误', { targetDevice, error });
+        res.status(500).json({
+            success: false,
+            error: '发送消息失败'
+        });
+    }
+}
+
+// 集群模式：转发给持有设备连接的实例
+async function forwardToOwner(res, targetDevice, message, waitParam, timeoutParam) {
+    const wait = isWaitRequested(waitParam);
+    const extraTimeout = wait ? pending.clampTimeout(timeoutParam) : 0;
+    
+    // 设备在转发途中迁移到其他实例时，重新查找一次
+    for (let attempt = 0; attempt < 2; attempt++) {
+        let owner;
+        try {
+            owner = await cluster.locate(targetDevice);
+        } catch (error) {
+            log.error('cluster', '查询设备位置失败', { targetDevice, error });
+            return res.status(503).json({
+                success: false,
+                error: '设备位置目录不可用'
+            });
+        }
+        if (!owner) {
+            return res.status(404).json({
+                success: false,
+                error: '目标设备未连接'
+            });
+        }
+        
+        try {
+            const { status, body } = await cluster.forward(owner, {
+                targetDevice,
+                message,
+                wait,
+                timeout: timeoutParam
+            }, extraTimeout);
+            if (status === 404 && attempt === 0) {
+                continue;
             }
+            if (status === 429) {
+                res.set('Retry-After', '1');
+            }
+            return res.status(status).json(Object.assign(body, { node: owner.nodeId }));
+        } catch (error) {
+            log.warn('cluster', '转发到设备所在实例失败', { targetDevice, node: owner.nodeId, error });
+            return res.status(502).json({
+                success: false,
+                error: '转发到设备所在实例失败',
+                node: owner.nodeId
+            });
         }
-    });
-}, 15000); // 每15秒检查一次
+    }
+}
 
-// 清理interval当服务器关闭
-wss.on('close', () => {
-    clearInterval(connectionCheckInterval);
+// 集群内部接口：其他实例转发来的/send请求，只投递本地连接
+app.post('/cluster/deliver', (req, res) => {
+    if (!cluster || !cluster.checkSecret(req)) {
+        return res.status(403).json({ success: false, error: '集群密钥错误' });
+    }
+    const { targetDevice, message, wait, timeout } = req.body;
+    if (!targetDevice || !message) {
+        return res.status(400).json({ 
+            success: false, 
+            error: '缺少目标设备ID或消息内容'
+        });
+    }
+    deliverToDevice(res, targetDevice, message, wait, timeout, false);
+});
+
+// 集群内部接口：设备重连到其他实例后上报的执行结果，交给本实例挂起的请求
+app.post('/cluster/result', (req, res) => {
+    if (!cluster || !cluster.checkSecret(req)) {
+        return res.status(403).json({ success: false, error: '集群密钥错误' });
+    }
+    const { messageId, deviceId, result } = req.body || {};
+    if (!isValidDeviceId(deviceId) || !result) {
+        return res.status(400).json({ success: false, error: '缺少设备ID或执行结果' });
+    }
+    const matched = pending.resolve(messageId, deviceId, result);
+    log.info('result', '其他实例转交的执行结果', { deviceId, messageId, from: req.get('X-Cluster-From'), matched });
+    res.json({ success: true, matched });
+});
+
+// 集群内部接口：设备在其他实例上重新注册，替换本实例上的旧连接
+app.post('/cluster/evict', (req, res) => {
+    if (!cluster || !cluster.checkSecret(req)) {
+        return res.status(403).json({ success: false, error: '集群密钥错误' });
+    }
+    const { deviceId, epoch } = req.body;
+    const client = clients.get(deviceId);
+    if (!client) {
+        return res.json({ success: true, evicted: false });
+    }
+    if (client.clusterEpoch === undefined) {
+        // 本地登记还没完成，登记完成后再比较
+        client.evictEpoch = epoch;
+        return res.json({ success: true, evicted: false });
+    }
+    if (client.clusterEpoch > epoch) {
+        // 本地连接比被替换的那次登记更新，不处理
+        return res.json({ success: true, evicted: false });
+    }
+    log.info('cluster', '设备已在其他实例注册，替换本地连接', { deviceId, from: req.get('X-Cluster-From') });
+    replaceConnection(deviceId, client);
+    res.json({ success: true, evicted: true });
+});
+
+// 集群在线实例列表
+app.get('/cluster/nodes', (req, res) => {
+    if (!cluster) {
+        return res.json({ enabled: false, nodes: [] });
+    }
+    cluster.directory.nodes().then(nodes => {
+        res.json({ enabled: true, nodeId: cluster.nodeId, nodes });
+    }).catch(error => {
+        res.status(503).json({ enabled: true, error: error.message });
+    });
 });
 
 // 修改发送消息API - 从POST改为GET
@@ -259,118 +685,164 @@ app.get('/send', (req, res) => {
         });
     }
     
-    // 验证设备编号格式
-    if (!targetDevice.match(/^\d{3}$/)) {
+    deliverToDevice(res, targetDevice, message, req.query.wait, req.query.timeout);
+});
+
+// 保留原有的POST方法以保持向后兼容性
+app.post('/send', (req, res) => {
+    const { targetDevice, message } = req.body;
+    
+    // 验证请求
+    if (!targetDevice || !message) {
+        return res.status(400).json({ 
+            success: false, 
+            error: '缺少目标设备ID或消息内容'
+        });
+    }
+    
+    deliverToDevice(res, targetDevice, message, req.body.wait, req.body.timeout);
+});
+
+// 向一组设备广播同一条消息，消息只序列化一次
+function broadcastToDevices(res, group, targetDevices, message) {
+    let deviceIds;
+    if (group) {
+        deviceIds = groupIndex.membersOf(group);
+    } else if (Array.isArray(targetDevices)) {
+        deviceIds = Array.from(new Set(targetDevices.map(String)));
+        if (!deviceIds.every(isValidDeviceId)) {
+            return res.status(400).json({
+                success: false,
+                error: INVALID_MESSAGE
+            });
+        }
+    } else {
         return res.status(400).json({
             success: false,
-            error: '设备编号格式无效，必须是三位数字'
+            error: '缺少分组(group)或目标设备列表(targetDevices)'
         });
     }
     
-    // 检查设备是否连接
-    if (!clients.has(targetDevice)) {
+    if (deviceIds.length === 0) {
         return res.status(404).json({
             success: false,
-            error: '目标设备未连接'
+            error: '没有可投递的目标设备'
         });
     }
     
+    const messageId = `bcast_${crypto.randomUUID()}`;
+    const payload = JSON.stringify({
+        ...message,
+        group: group || undefined,
+        messageId
+    });
+    
     try {
-        // 向B发送消息
-        const client = clients.get(targetDevice);
-        if (client.ws.readyState !== WebSocket.OPEN) {
-            // 清理无效连接
-            clients.delete(targetDevice);
-            return res.status(410).json({
-                success: false,
-                error: '目标设备连接已关闭'
-            });
-        }
-        
-        // 添加目标设备ID和消息ID
-        const messageToSend = {
-            ...message,
-            targetDevice,
-            messageId: `msg_${Date.now()}_${Math.floor(Math.random() * 1000)}`
-        };
-        
-        client.ws.send(JSON.stringify(messageToSend));
-        
+        const { delivered, results } = fanOut(deviceIds, id => clients.get(id), payload,
+            client => backpressure.isSaturated(client));
+        log.info('http', '分组广播', { group, total: deviceIds.length, delivered });
         res.json({
-            success: true,
-            message: '消息已发送',
-            deviceStatus: client.status || 'unknown'
+            success: delivered > 0,
+            messageId,
+            total: deviceIds.length,
+            delivered,
+            failed: deviceIds.length - delivered,
+            results
         });
     } catch (error) {
-        console.error('发送消息错误:', error);
+        log.error('http', '分组广播错误', { group, error });
         res.status(500).json({
             success: false,
-            error: '发送消息失败'
+            error: '广播消息失败'
         });
     }
-});
+}
 
-// 保留原有的POST方法以保持向后兼容性
-app.post('/send', (req, res) => {
-    const { targetDevice, message } = req.body;
+// 分组广播API
+app.post('/broadcast', (req, res) => {
+    const { group, targetDevices, message } = req.body;
     
-    // 验证请求
-    if (!targetDevice || !message) {
-        return res.status(400).json({ 
-            success: false, 
-            error: '缺少目标设备ID或消息内容'
+    if (!message) {
+        return res.status(400).json({
+            success: false,
+            error: '缺少消息内容'
         });
     }
     
+    broadcastToDevices(res, group, targetDevices, message);
+});
+
+app.get('/broadcast', (req, res) => {
+    let message;
+    try {
+        message = JSON.parse(req.query.message);
+    } catch (e) {
+        if (!req.query.content) {
+            return res.status(400).json({
+                success: false,
+                error: '缺少消息内容参数(content或message)'
+            });
+        }
+        message = {
+            type: req.query.type || 'text',
+            content: req.query.content
+        };
+    }
+    
+    // targetDevices可以用逗号分隔
+    const targetDevices = req.query.targetDevices ? String(req.query.targetDevices).split(',') : undefined;
+    broadcastToDevices(res, req.query.group, targetDevices, message);
+});
+
+// 获取所有分组
+app.get('/groups', (req, res) => {
+    const groups = groupIndex.list();
+    res.json({
+        count: groups.length,
+        groups
+    });
+});
+
+// 修改设备所属分组，设备保存后会重新注册
+app.post('/devices/:deviceId/groups', (req, res) => {
+    const deviceId = req.params.deviceId;
+    
     // 验证设备编号格式
-    if (!targetDevice.match(/^\d{3}$/)) {
+    if (!isValidDeviceId(deviceId)) {
         return res.status(400).json({
             success: false,
-            error: '设备编号格式无效，必须是三位数字'
+            error: INVALID_MESSAGE
         });
     }
     
-    // 检查设备是否连接
-    if (!clients.has(targetDevice)) {
+    const client = clients.get(deviceId);
+    if (!client || client.ws.readyState !== WebSocket.OPEN) {
         return res.status(404).json({
             success: false,
             error: '目标设备未连接'
         });
     }
     
-    try {
-        // 向B发送消息
-        const client = clients.get(targetDevice);
-        if (client.ws.readyState !== WebSocket.OPEN) {
-            // 清理无效连接
-            clients.delete(targetDevice);
-            return res.status(410).json({
-                success: false,
-                error: '目标设备连接已关闭'
-            });
-        }
-        
-        // 添加目标设备ID和消息ID
-        const messageToSend = {
-            ...message,
-            targetDevice,
-            messageId: `msg_${Date.now()}_${Math.floor(Math.random() * 1000)}`
-        };
-        
-        client.ws.send(JSON.stringify(messageToSend));
-        
-        res.json({
-            success: true,
-            message: '消息已发送',
-            deviceStatus: client.status || 'unknown'
-        });
-    } catch (error) {
-        console.error('发送消息错误:', error);
-        res.status(500).json({
+    // 与/send相同，设备发送缓冲已满时拒绝，由调用方稍后重试
+    if (backpressure.isSaturated(client)) {
+        res.set('Retry-After', '1');
+        return res.status(429).json({
             success: false,
-            error: '发送消息失败'
+            error: '设备发送队列已满，请稍后重试',
+            bufferedAmount: client.ws.bufferedAmount
         });
     }
+    
+    const groups = sanitizeGroups(req.body.groups);
+    backpressure.send(client, JSON.stringify({
+        type: 'system',
+        action: 'set_groups',
+        groups
+    }));
+    res.json({
+        success: true,
+        groups
+    });
 });
 
 // 获取设备状态API
@@ -378,10 +850,10 @@ app.get('/status/:deviceId', (req, res) => {
     const deviceId = req.params.deviceId;
     
     // 验证设备编号格式
-    if (!deviceId.match(/^\d{3}$/)) {
+    if (!isValidDeviceId(deviceId)) {
         return res.status(400).json({
             success: false,
-            error: '设备编号格式无效，必须是三位数字'
+            error: INVALID_MESSAGE
         });
     }
     
@@ -390,7 +862,19 @@ app.get('/status/:deviceId', (req, res) => {
         res.json({
             online: true,
             lastSeen: client.lastSeen,
-            status: client.status || 'unknown'
+            status: client.status || 'unknown',
+            tuningVersion: client.tuningVersion || 0,
+            rotation: rotationStats.get(deviceId),
+            groups: groupIndex.groupsOf(deviceId),
+            bufferedAmount: client.ws.bufferedAmount,
+            saturated: !!client.saturated
+        });
+    } else if (cluster) {
+        // 设备可能连在其他实例上
+        cluster.locate(deviceId).then(owner => {
+            res.json(owner ? { online: true, node: owner.nodeId } : { online: false });
+        }).catch(() => {
+            res.json({ online: false });
         });
     } else {
         res.json({
@@ -399,17 +883,103 @@ app.get('/status/:deviceId', (req, res) => {
     }
 });
 
-// 获取所有在线设备
+// 拉取设备磁盘日志：from、to为毫秒时间戳（默认最近1小时），maxBytes默认1MB、最多8MB
+// 设备分块上报，服务器收到一块就写一块（text/plain分块传输），每行：时间戳\t级别\t标签\t内容
+// 超过上限被截断时最后一行是"# truncated"，传输中途失败时最后一行是"# error: 原因"
+const LOG_PULL_DEFAULT_BYTES = 1024 * 1024;
+const LOG_PULL_MAX_BYTES = 8 * 1024 * 1024;
+
+app.get('/logs/:deviceId', (req, res) => {
+    const deviceId = req.params.deviceId;
+    if (!isValidDeviceId(deviceId)) {
+        return res.status(400).json({
+            success: false,
+            error: INVALID_MESSAGE
+        });
+    }
+    
+    const client = clients.get(deviceId);
+    if (!client || client.ws.readyState !== WebSocket.OPEN) {
+        if (!cluster) {
+            return res.status(404).json({ success: false, error: '目标设备未连接' });
+        }
+        // 设备连在其他实例上时重定向过去
+        return cluster.locate(deviceId).then(owner => {
+            if (owner) {
+                return res.redirect(307, `${owner.url}${req.originalUrl}`);
+            }
+            res.status(404).json({ success: false, error: '目标设备未连接' });
+        }).catch(() => {
+            res.status(503).json({ success: false, error: '设备位置目录不可用' });
+        });
+    }
+    
+    const to = Number(req.query.to) || Date.now();
+    const from = Number(req.query.from) || to - 60 * 60 * 1000;
+    const maxBytes = Math.min(Number(req.query.maxBytes) || LOG_PULL_DEFAULT_BYTES, LOG_PULL_MAX_BYTES);
+    const requestId = `logs_${crypto.randomUUID()}`;
+    
+    const started = logPulls.start(requestId, client, {
+        chunk: data => {
+            if (!res.headersSent) {
+                res.type('text');
+            }
+            res.write(data);
+        },
+        end: summary => {
+            if (!res.headersSent) {
+                res.type('text');
+            }
+            res.end(summary.truncated ? '# truncated\n' : '');
+            log.info('logs', '设备日志拉取完成', { deviceId, requestId, chunks: summary.chunks, bytes: summary.bytes });
+        },
+        fail: reason => {
+            log.warn('logs', '设备日志拉取失败', { deviceId, requestId, reason });
+            if (!res.headersSent) {
+                const status = reason === 'timeout' ? 504 : reason === 'device_disconnected' ? 410 : 502;
+                return res.status(status).json({ success: false, error: '拉取设备日志失败', reason });
+            }
+            res.end(`# error: ${reason}\n`);
+        }
+    });
+    if (!started) {
+        return res.status(503).json({ success: false, error: '进行中的日志拉取过多，请稍后重试' });
+    }
+    
+    // 请求方提前断开时不再转发后续的块
+    res.on('close', () => {
+        if (!res.writableFinished) {
+            logPulls.cancel(requestId);
+        }
+    });
+    
+    backpressure.send(client, JSON.stringify({
+        type: 'system',
+        action: 'log_pull',
+        requestId,
+        from,
+        to,
+        maxBytes
+    }));
+});
+
+// 获取所有在线设备，可用tenant参数只列出一个租户的设备（旧格式编号属于空租户）
 app.get('/devices', (req, res) => {
     const onlineDevices = [];
-    
-    clients.forEach((value, key) => {
+    const collect = (value, key) => {
         onlineDevices.push({
             deviceId: key,
             lastSeen: value.lastSeen,
-            status: value.status || 'unknown'
+            status: value.status || 'unknown',
+            groups: groupIndex.groupsOf(key)
         });
-    });
+    };
+    
+    if (req.query.tenant !== undefined) {
+        clients.forEachInTenant(String(req.query.tenant), collect);
+    } else {
+        clients.forEach(collect);
+    }
     
     res.json({
         count: onlineDevices.length,
@@ -417,6 +987,25 @@ app.get('/devices', (req, res) => {
     });
 });
 
+// 各租户在线设备数
+app.get('/tenants', (req, res) => {
+    res.json({
+        total: clients.size,
+        tenants: clients.tenants()
+    });
+});
+
+// 健康检查，设备用来探测握手延迟
+app.get('/health', (req, res) => {
+    res.json({ ok: true, connections: clients.size });
+});
+
+// Prometheus指标抓取接口
+app.get('/metrics', (req, res) => {
+    res.set('Content-Type', 'text/plain; version=0.0.4; charset=utf-8');
+    res.send(metrics.render(clients.size));
+});
+
 // 主页路由 - 简单状态页面
 app.get('/', (req, res) => {
     const connectedDevices = [];
@@ -464,45 +1053,5 @@ app.use((req, res) => {
 // 启动服务器
 const PORT = process.env.PORT || 9000;
 server.listen(PORT, () => {
-    console.log(`WebSocket服务器已启动，监听端口 ${PORT}`);
+    log.info('server', 'WebSocket服务器已启动', { port: PORT, tls: server instanceof https.Server });
 });
-
-// 在server.js中添加更频繁的ping检查
-const PING_INTERVAL = 30000; // 30秒检查一次
-
-// 定期检查所有连接
-setInterval(() => {
-    const now = Date.now();
-    
-    clients.forEach((client, deviceId) => {
-        // 如果超过60秒没有活动，发送ping检查连接
-        if (now - client.lastSeen > 60000) {
-            try {
-                // 检查连接是否仍然打开
-                if (client.ws.readyState === WebSocket.OPEN) {
-                    console.log(`设备 ${deviceId} 超过60秒无活动，发送ping检查`);
-                    
-                    // 发送ping帧
-                    client.ws.ping();
-                    
-                    // 设置超时检查
-                    setTimeout(() => {
-                        // 如果在5秒内没有收到pong，认为连接已断开
-                        if (clients.has(deviceId) && now - clients.get(deviceId).lastSeen > 60000) {
-                            console.log(`设备 ${deviceId} ping超时，关闭连接`);
-                            client.ws.terminate(); // 强制关闭连接
-                            clients.delete(deviceId);
-                        }
-                    }, 5000);
-                } else {
-                    // 连接已关闭，清理
-                    console.log(`设备 ${deviceId} 连接已关闭，清理`);
-                    clients.delete(deviceId);
-                }
-            } catch (e) {
-                console.error(`检查设备 ${deviceId} 连接时出错:`, e);
-                clients.delete(deviceId);
-            }
-        }
-    });
-}, PING_INTERVAL);
@@ -21,4 +21,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "WSController"
 include(":app")
- 
\ No newline at end of file
+include(":benchmark")
+include(":jmh")
+include(":simulator")
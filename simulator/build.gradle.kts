@@ -0,0 +1,37 @@
+plugins {
+    java
+    application
+}
+
+// java.net.http的WebSocket客户端：所有连接共用一个选择器线程，单机可以模拟数千台设备
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+// 与jmh模块一样直接编译app中的协议代码，模拟设备和真机发出同样的帧
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include(
+                "com/example/wscontroller/Protocol.java",
+                "com/example/wscontroller/ReconnectBackoff.java",
+                "com/example/wscontroller/FleetSimulator.java",
+                "com/example/wscontroller/SimulatedDevice.java",
+                "com/example/wscontroller/LatencyRecorder.java"
+            )
+        }
+    }
+}
+
+dependencies {
+    // Android上org.json由系统提供
+    implementation(libs.json)
+}
+
+application {
+    mainClass.set("com.example.wscontroller.FleetSimulator")
+    // 连接数较多时固定堆大小，避免扩容影响每个连接的内存估算
+    applicationDefaultJvmArgs = listOf("-Xms1g", "-Xmx1g")
+}
@@ -0,0 +1,220 @@
+package com.example.wscontroller;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+// 设备集群模拟器：启动大量SimulatedDevice连接中转服务器，全部连上后以固定速率通过/send?wait=true
+// 向随机设备发送切换网络指令，最后输出连接速率、连接耗时、指令往返耗时分位数和每个连接占用的堆内存。
+//
+// 用法: ./gradlew :simulator:run --args="--devices=2000 --ramp=200 --rate=20 --duration=60"
+// 参数见Config，均为--名称=值的形式。设备编号为sim-000001起，属于sim租户，不会与真机冲突。
+public final class FleetSimulator {
+    static final class Config {
+        String relay = "ws://127.0.0.1:9000/device/"; // 设备连接地址，后面拼接设备编号
+        String http = "http://127.0.0.1:9000"; // 控制端接口
+        int devices = 1000;
+        int ramp = 200; // 每秒发起的连接数
+        long heartbeatMillis = 15000;
+        long toggleMillis = 1500; // 模拟切换网络的耗时
+        boolean toggleReconnect = true; // 切换时断开连接，重连后上报结果
+        long reconnectMillis = 500; // 切换网络后的重连延迟
+        double rate = 10; // 每秒发送的指令数
+        long durationSeconds = 60; // 全部连上后发送指令的时长
+        long commandTimeoutMillis = 15000;
+
+        static Config parse(String[] args) {
+            Config config = new Config();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                    throw new IllegalArgumentException("参数格式应为--名称=值: " + arg);
+                }
+                String name = arg.substring(2, arg.indexOf('='));
+                String value = arg.substring(arg.indexOf('=') + 1);
+                switch (name) {
+                    case "relay": config.relay = value.endsWith("/") ? value : value + "/"; break;
+                    case "http": config.http = value; break;
+                    case "devices": config.devices = Integer.parseInt(value); break;
+                    case "ramp": config.ramp = Integer.parseInt(value); break;
+                    case "heartbeat": config.heartbeatMillis = Long.parseLong(value) * 1000; break;
+                    case "toggleMs": config.toggleMillis = Long.parseLong(value); break;
+                    case "toggleReconnect": config.toggleReconnect = Boolean.parseBoolean(value); break;
+                    case "reconnectMs": config.reconnectMillis = Long.parseLong(value); break;
+                    case "rate": config.rate = Double.parseDouble(value); break;
+                    case "duration": config.durationSeconds = Long.parseLong(value); break;
+                    case "timeoutMs": config.commandTimeoutMillis = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("未知参数: " + name);
+                }
+            }
+            if (config.devices < 1 || config.devices > 999999 || config.ramp < 1) {
+                throw new IllegalArgumentException("devices应为1到999999，ramp至少为1");
+            }
+            return config;
+        }
+    }
+
+    static final class Stats {
+        final LongAdder connectAttempts = new LongAdder();
+        final LongAdder connectFailures = new LongAdder();
+        final LongAdder disconnects = new LongAdder();
+        final LongAdder framesSent = new LongAdder();
+        final LongAdder commandsReceived = new LongAdder();
+        final LongAdder commandsSent = new LongAdder();
+        final LongAdder commandFailures = new LongAdder();
+        final AtomicInteger connected = new AtomicInteger();
+        final AtomicInteger peakConnected = new AtomicInteger();
+        final LatencyRecorder connectTime = new LatencyRecorder();
+        final LatencyRecorder pongRtt = new LatencyRecorder();
+        final LatencyRecorder commandLatency = new LatencyRecorder();
+
+        void onConnected() {
+            peakConnected.accumulateAndGet(connected.incrementAndGet(), Math::max);
+        }
+
+        void onDisconnected() {
+            connected.decrementAndGet();
+            disconnects.increment();
+        }
+    }
+
+    private static final long TICK_MILLIS = 100;
+    private static final long PROGRESS_MILLIS = 5000;
+
+    private final Config config;
+    private final Stats stats = new Stats();
+    private final ScheduledExecutorService scheduler =
+            Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final List<SimulatedDevice> devices = new ArrayList<>();
+
+    private FleetSimulator(Config config) {
+        this.config = config;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new FleetSimulator(Config.parse(args)).run();
+    }
+
+    private void run() throws InterruptedException {
+        System.out.printf(Locale.ROOT, "模拟%d台设备，中转服务器%s，每秒连接%d台，每秒%.1f条指令，持续%d秒%n",
+                config.devices, config.relay, config.ramp, config.rate, config.durationSeconds);
+        long heapBefore = usedHeap();
+
+        // 连接阶段：按ramp逐步发起连接，等待全部连上或超时
+        long rampStartedAt = System.nanoTime();
+        for (int i = 1; i <= config.devices; i++) {
+            devices.add(new SimulatedDevice(String.format(Locale.ROOT, "sim-%06d", i), config.relay,
+                    client, scheduler, config, stats));
+        }
+        int perTick = Math.max(1, (int) (config.ramp * TICK_MILLIS / 1000));
+        for (int i = 0; i < devices.size(); i += perTick) {
+            for (int j = i; j < Math.min(i + perTick, devices.size()); j++) {
+                devices.get(j).connect();
+            }
+            Thread.sleep(TICK_MILLIS);
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        long lastProgress = 0;
+        while (stats.connected.get() < config.devices && System.nanoTime() < deadline) {
+            lastProgress = printProgress(lastProgress);
+            Thread.sleep(TICK_MILLIS);
+        }
+        double rampSeconds = (System.nanoTime() - rampStartedAt) / 1e9;
+        int connectedAfterRamp = stats.connected.get();
+        long heapPerConnection = connectedAfterRamp > 0 ? (usedHeap() - heapBefore) / connectedAfterRamp : 0;
+
+        // 指令阶段：以固定速率向随机的在线设备发送切换网络指令
+        long commandEndAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+        double due = 0;
+        while (System.nanoTime() < commandEndAt) {
+            due += config.rate * TICK_MILLIS / 1000;
+            for (; due >= 1; due--) {
+                sendCommand();
+            }
+            lastProgress = printProgress(lastProgress);
+            Thread.sleep(TICK_MILLIS);
+        }
+        // 等待最后一批指令的结果
+        Thread.sleep(Math.min(config.commandTimeoutMillis, config.toggleMillis + config.reconnectMillis + 5000));
+
+        for (SimulatedDevice device : devices) {
+            device.stop();
+        }
+        scheduler.shutdownNow();
+
+        System.out.println("==== 结果 ====");
+        System.out.printf(Locale.ROOT, "连接: %d/%d台，用时%.1f秒，%.0f台/秒，峰值%d台，失败%d次，断开%d次%n",
+                connectedAfterRamp, config.devices, rampSeconds, connectedAfterRamp / rampSeconds,
+                stats.peakConnected.get(), stats.connectFailures.sum(), stats.disconnects.sum());
+        System.out.println("连接耗时(ms): " + stats.connectTime.summary());
+        System.out.println("心跳往返(ms): " + stats.pongRtt.summary());
+        System.out.printf(Locale.ROOT, "指令: 发送%d条，设备收到%d条，失败%d条%n",
+                stats.commandsSent.sum(), stats.commandsReceived.sum(), stats.commandFailures.sum());
+        System.out.println("指令往返(ms): " + stats.commandLatency.summary());
+        System.out.printf(Locale.ROOT, "堆内存: 每个连接约%.1fKB（%d个连接，GC后测量）%n",
+                heapPerConnection / 1024.0, connectedAfterRamp);
+    }
+
+    // 控制端调用：/send?wait=true等设备上报结果，只统计成功的往返耗时
+    private void sendCommand() {
+        SimulatedDevice target = devices.get(ThreadLocalRandom.current().nextInt(devices.size()));
+        if (!target.isConnected()) {
+            return;
+        }
+        String message = new JSONObject().put("content", Protocol.SWITCH_NETWORK_TEXT).toString();
+        URI uri = URI.create(config.http + "/send?wait=true"
+                + "&timeout=" + config.commandTimeoutMillis
+                + "&targetDevice=" + target.deviceId()
+                + "&message=" + URLEncoder.encode(message, StandardCharsets.UTF_8));
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMillis(config.commandTimeoutMillis + 5000))
+                .GET()
+                .build();
+        long startedAt = System.nanoTime();
+        stats.commandsSent.increment();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+            JSONObject body = response != null ? Protocol.parse(response.body()) : null;
+            if (error == null && response.statusCode() == 200 && body != null && body.optBoolean("success", false)) {
+                stats.commandLatency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+            } else {
+                stats.commandFailures.increment();
+            }
+        });
+    }
+
+    private long printProgress(long lastProgress) {
+        long now = System.currentTimeMillis();
+        if (now - lastProgress < PROGRESS_MILLIS) {
+            return lastProgress;
+        }
+        System.out.printf(Locale.ROOT, "在线%d台，发送帧%d，指令%d条（失败%d）%n",
+                stats.connected.get(), stats.framesSent.sum(), stats.commandsSent.sum(), stats.commandFailures.sum());
+        return now;
+    }
+
+    // GC后的已用堆内存，用于估算每个连接的内存占用
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
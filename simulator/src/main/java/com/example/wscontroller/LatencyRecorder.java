@@ -0,0 +1,40 @@
+package com.example.wscontroller;
+
+import java.util.Arrays;
+
+// 记录一组耗时样本（毫秒），结束时排序取分位数。多个线程同时写入
+final class LatencyRecorder {
+    private long[] samples = new long[1024];
+    private int count = 0;
+
+    synchronized void record(long millis) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = millis;
+    }
+
+    synchronized int count() {
+        return count;
+    }
+
+    // 例如 "n=1200 p50=35 p90=80 p99=210 max=480"，没有样本时只输出n=0
+    synchronized String summary() {
+        if (count == 0) {
+            return "n=0";
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return "n=" + count
+                + " p50=" + percentile(sorted, 50)
+                + " p90=" + percentile(sorted, 90)
+                + " p99=" + percentile(sorted, 99)
+                + " max=" + sorted[count - 1];
+    }
+
+    // 最近秩法，sorted已排序且不为空
+    static long percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p / 100 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.wscontroller;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// 一台模拟的手机B：与WebSocketManager使用同一个Protocol构造注册、状态、心跳和结果帧，
+// 按同样的规则分类收到的消息。切换网络用固定延迟代替无障碍操作，
+// 可选在切换时断开连接、重连后再上报结果，和真机飞行模式切换的行为一致。
+// 所有连接共用一个HttpClient（一个NIO选择器线程），回调里不做阻塞操作。
+final class SimulatedDevice implements WebSocket.Listener {
+    static final List<String> GROUPS = Collections.singletonList("sim");
+
+    private final String deviceId;
+    private final URI uri;
+    private final HttpClient client;
+    private final ScheduledExecutorService scheduler;
+    private final FleetSimulator.Config config;
+    private final FleetSimulator.Stats stats;
+
+    private final StringBuilder partial = new StringBuilder();
+    private volatile WebSocket webSocket;
+    private volatile boolean running = true;
+    private CompletableFuture<WebSocket> sendChain; // java.net.http.WebSocket同一时刻只允许一个未完成的发送
+    private ScheduledFuture<?> heartbeat;
+    private long connectStartedAt;
+    private int reconnectAttempts = 0;
+    private boolean switching = false; // 切换网络导致的断开，重连不退避
+    // 切换网络期间断开重连，重连后上报的结果；null表示没有
+    private String pendingResult;
+
+    SimulatedDevice(String deviceId, String relayUrl, HttpClient client, ScheduledExecutorService scheduler,
+                    FleetSimulator.Config config, FleetSimulator.Stats stats) {
+        this.deviceId = deviceId;
+        this.uri = URI.create(relayUrl + deviceId);
+        this.client = client;
+        this.scheduler = scheduler;
+        this.config = config;
+        this.stats = stats;
+    }
+
+    String deviceId() {
+        return deviceId;
+    }
+
+    boolean isConnected() {
+        return webSocket != null;
+    }
+
+    void connect() {
+        if (!running) {
+            return;
+        }
+        connectStartedAt = System.nanoTime();
+        stats.connectAttempts.increment();
+        client.newWebSocketBuilder()
+                .connectTimeout(java.time.Duration.ofSeconds(10))
+                .buildAsync(uri, this)
+                .whenComplete((ws, error) -> {
+                    if (error != null) {
+                        stats.connectFailures.increment();
+                        scheduleReconnect();
+                    }
+                });
+    }
+
+    void stop() {
+        running = false;
+        WebSocket ws;
+        synchronized (this) {
+            cancelHeartbeat();
+            ws = webSocket;
+            webSocket = null;
+        }
+        if (ws != null) {
+            ws.sendClose(WebSocket.NORMAL_CLOSURE, "模拟结束");
+        }
+    }
+
+    @Override
+    public void onOpen(WebSocket ws) {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStartedAt);
+        String result;
+        synchronized (this) {
+            webSocket = ws;
+            sendChain = CompletableFuture.completedFuture(ws);
+            reconnectAttempts = 0;
+            switching = false;
+            result = pendingResult;
+            pendingResult = null;
+        }
+        stats.connectTime.record(elapsed);
+        stats.onConnected();
+        try {
+            send(Protocol.register(deviceId, GROUPS, 0, 0, System.currentTimeMillis()));
+            send(Protocol.status("connected"));
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        if (result != null) {
+            send(result);
+        }
+        startHeartbeat();
+        ws.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+        partial.append(data);
+        if (last) {
+            String message = partial.toString();
+            partial.setLength(0);
+            handleMessage(message);
+        }
+        ws.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket ws, int statusCode, String reason) {
+        onDisconnected(ws);
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket ws, Throwable error) {
+        onDisconnected(ws);
+    }
+
+    private void handleMessage(String message) {
+        JSONObject json = Protocol.parse(message);
+        Protocol.Command command = Protocol.classify(message, json, deviceId);
+        switch (command) {
+            case PONG:
+                // 服务器回显心跳中的时间戳
+                long echo = json.optLong("echo", 0);
+                if (echo > 0) {
+                    stats.pongRtt.record(System.currentTimeMillis() - echo);
+                }
+                break;
+            case SWITCH_NETWORK:
+                stats.commandsReceived.increment();
+                performNetworkSwitch(json);
+                break;
+            case TOGGLE_AIRPLANE:
+            case UNKNOWN:
+                // 与真机一样，不支持的指令直接上报失败
+                stats.commandsReceived.increment();
+                reportFailure(json, "不支持的指令: " + (json != null ? json.optString("action") : ""));
+                break;
+            default:
+                // 注册确认、分组和地址更新等系统消息，模拟时忽略
+                break;
+        }
+    }
+
+    private void performNetworkSwitch(JSONObject json) {
+        long receivedAt = System.currentTimeMillis();
+        String messageId = expectedResultId(json);
+        scheduler.schedule(() -> {
+            long toggledAt = System.currentTimeMillis();
+            if (!config.toggleReconnect) {
+                reportSuccess(messageId, receivedAt, toggledAt);
+                return;
+            }
+            // 飞行模式切换会断开连接，结果在重连后上报
+            WebSocket ws;
+            synchronized (this) {
+                ws = webSocket;
+                switching = true;
+                if (messageId != null) {
+                    pendingResult = buildResult(messageId, true, null, receivedAt, toggledAt);
+                }
+            }
+            if (ws != null) {
+                ws.abort();
+                onDisconnected(ws);
+            }
+        }, config.toggleMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void reportSuccess(String messageId, long receivedAt, long toggledAt) {
+        if (messageId != null) {
+            send(buildResult(messageId, true, null, receivedAt, toggledAt));
+        }
+    }
+
+    private void reportFailure(JSONObject json, String error) {
+        String messageId = expectedResultId(json);
+        if (messageId != null) {
+            long now = System.currentTimeMillis();
+            send(buildResult(messageId, false, error, now, now));
+        }
+    }
+
+    // 控制端使用wait模式时返回messageId，否则返回null
+    private static String expectedResultId(JSONObject json) {
+        if (json == null || !json.optBoolean("expectResult", false) || json.optString("messageId").isEmpty()) {
+            return null;
+        }
+        return json.optString("messageId");
+    }
+
+    private static String buildResult(String messageId, boolean success, String error, long receivedAt, long toggledAt) {
+        try {
+            return Protocol.result(messageId, success, error, receivedAt, toggledAt, System.currentTimeMillis());
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 按顺序排队发送，连接已断开时丢弃
+    private synchronized void send(String text) {
+        if (webSocket == null) {
+            return;
+        }
+        sendChain = sendChain
+                .thenCompose(ws -> ws.sendText(text, true))
+                .exceptionally(error -> null);
+        stats.framesSent.increment();
+    }
+
+    // 每台设备的心跳相位随机，避免所有连接在同一时刻发送
+    private synchronized void startHeartbeat() {
+        cancelHeartbeat();
+        long interval = config.heartbeatMillis;
+        heartbeat = scheduler.scheduleAtFixedRate(
+                () -> send(Protocol.ping(deviceId, System.currentTimeMillis())),
+                ThreadLocalRandom.current().nextLong(interval), interval, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void cancelHeartbeat() {
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+            heartbeat = null;
+        }
+    }
+
+    private void onDisconnected(WebSocket ws) {
+        synchronized (this) {
+            if (webSocket != ws) {
+                return; // 已经处理过，或者是旧连接
+            }
+            webSocket = null;
+            cancelHeartbeat();
+        }
+        stats.onDisconnected();
+        if (running) {
+            scheduleReconnect();
+        }
+    }
+
+    // 主动切换网络后按最短延迟重连，其余情况与真机一样按次数退避
+    private void scheduleReconnect() {
+        if (!running) {
+            return;
+        }
+        long delay;
+        synchronized (this) {
+            delay = switching
+                    ? config.reconnectMillis
+                    : ReconnectBackoff.autoReconnectDelay(reconnectAttempts);
+            reconnectAttempts++;
+        }
+        scheduler.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+    }
+}